@@ -0,0 +1,170 @@
+package com.mouseviator.fsuipc.example;
+
+import com.fazecast.jSerialComm.SerialPort;
+import java.nio.ByteBuffer;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * JMH benchmarks of the per-sample path, stage by stage and end to end: heading normalization, COM1 frequency to text, frame
+ * building as the writer does it (delta tracking and encoding) and writing the frame out.
+ *
+ * <p>
+ * Runs in throughput and sample time mode, so both ops/s and latency percentiles are reported. Run with {@code ant bench}, which
+ * adds the gc profiler for allocation rate. The samples come from {@link SyntheticDataSource}, so the values change like in
+ * flight and delta mode has something to do.</p>
+ *
+ * <p>
+ * Writes go to an in-memory wire by default. Set the {@code port} parameter to write to a real serial port instead, like one end
+ * of a pty pair ({@code socat -d -d pty,raw,echo=0 pty,raw,echo=0}) or a com0com loopback on Windows - somebody has to read the
+ * other end, or the writes block when the buffer fills.</p>
+ *
+ * @author Murdock
+ */
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Thread)
+public class DisplayPipelineBenchmark {
+
+    /**
+     * Number of distinct samples cycled through, one per 50 ms of the synthetic script, about 3.5 minutes of flight
+     */
+    private static final int SAMPLE_COUNT = 4096;
+    private static final int WIRE_SIZE = 64 * 1024;
+
+    /**
+     * Wire protocol, text or binary
+     */
+    @Param({"false", "true"})
+    public boolean binaryProtocol;
+    /**
+     * Send only changed fields
+     */
+    @Param({"false", "true"})
+    public boolean deltaMode;
+    /**
+     * Serial port to write to, empty for the in-memory wire
+     */
+    @Param({""})
+    public String port;
+
+    private final SimSample[] samples = new SimSample[SAMPLE_COUNT];
+    private final DisplayFrame frame = new DisplayFrame();
+    private final DeltaTracker deltaTracker = new DeltaTracker(ArduinoWriter.DEFAULT_KEYFRAME_INTERVAL_MS);
+    private FrameEncoder encoder;
+    private ByteBuffer frameBuffer;
+    private final ByteBuffer wire = ByteBuffer.allocate(WIRE_SIZE);
+    private SerialPort serialPort;
+    private int next = 0;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        SyntheticDataSource script = new SyntheticDataSource(SyntheticDataSource.MAX_RATE);
+        for (int i = 0; i < SAMPLE_COUNT; i++) {
+            samples[i] = new SimSample();
+            script.generate(samples[i], i * 0.05);
+        }
+        encoder = new DeviceProfile("Benchmark", port, DeviceProfile.DEFAULT_BAUD_RATE, DisplayField.LCD_FIELDS, deltaMode, binaryProtocol).createEncoder();
+        frameBuffer = ByteBuffer.allocate(encoder.getMaxFrameSize());
+        //full frame for writeFrame
+        DisplayPipeline.fillFrame(samples[0], frame);
+        encoder.encode(frame, DisplayField.ALL_MASK, true, frameBuffer);
+
+        if (!port.isEmpty()) {
+            serialPort = SerialPort.getCommPort(port);
+            serialPort.setComPortParameters(DeviceProfile.DEFAULT_BAUD_RATE, 8, 1, 0);
+            serialPort.setComPortTimeouts(SerialPort.TIMEOUT_WRITE_BLOCKING, 0, 0);
+            if (!serialPort.openPort()) {
+                throw new IllegalStateException("Failed to open " + port);
+            }
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        if (serialPort != null) {
+            serialPort.closePort();
+        }
+    }
+
+    private SimSample nextSample() {
+        SimSample sample = samples[next];
+        next = (next + 1) & (SAMPLE_COUNT - 1);
+        return sample;
+    }
+
+    @Benchmark
+    public int magneticHeading() {
+        return DisplayPipeline.magneticHeading(nextSample());
+    }
+
+    @Benchmark
+    public ByteBuffer comFrequencyText() {
+        DisplayPipeline.fillFrame(nextSample(), frame);
+        encoder.encode(frame, DisplayField.COM1_FREQUENCY.getMask(), true, frameBuffer);
+        return frameBuffer;
+    }
+
+    @Benchmark
+    public ByteBuffer buildFrame() {
+        DisplayPipeline.fillFrame(nextSample(), frame);
+        encodeFrame(System.nanoTime());
+        return frameBuffer;
+    }
+
+    @Benchmark
+    public int writeFrame() {
+        return write();
+    }
+
+    @Benchmark
+    public int endToEnd() {
+        DisplayPipeline.fillFrame(nextSample(), frame);
+        if (encodeFrame(System.nanoTime()) == 0) {
+            return 0;
+        }
+        return write();
+    }
+
+    /**
+     * Same steps as ArduinoWriter.sendToArduino, without the port.
+     */
+    private int encodeFrame(long now) {
+        boolean keyframe = !deltaMode || deltaTracker.isKeyframeDue(now);
+        int mask = keyframe ? DisplayField.ALL_MASK : deltaTracker.dirtyMask(frame);
+        if (mask == 0) {
+            frameBuffer.limit(0);
+            return 0;
+        }
+        encoder.encode(frame, mask, keyframe, frameBuffer);
+        deltaTracker.acknowledge(frame, mask, keyframe, now);
+        return mask;
+    }
+
+    private int write() {
+        int length = frameBuffer.limit();
+        if (serialPort != null) {
+            return serialPort.writeBytes(frameBuffer.array(), length);
+        }
+        if (wire.remaining() < length) {
+            wire.clear();
+        }
+        wire.put(frameBuffer.array(), 0, length);
+        return length;
+    }
+}
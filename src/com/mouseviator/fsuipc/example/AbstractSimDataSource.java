@@ -0,0 +1,94 @@
+package com.mouseviator.fsuipc.example;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * Listener handling and metrics shared by the {@link SimDataSource} implementations.
+ *
+ * @author Murdock
+ */
+public abstract class AbstractSimDataSource implements SimDataSource {
+
+    private final List<SimSampleListener> sampleListeners = new CopyOnWriteArrayList<>();
+    private final List<ConnectionListener> connectionListeners = new CopyOnWriteArrayList<>();
+    private volatile boolean connected = false;
+    protected final SourceMetrics metrics = new SourceMetrics();
+
+    @Override
+    public void addSampleListener(SimSampleListener listener) {
+        sampleListeners.add(listener);
+    }
+
+    @Override
+    public void removeSampleListener(SimSampleListener listener) {
+        sampleListeners.remove(listener);
+    }
+
+    @Override
+    public void addConnectionListener(ConnectionListener listener) {
+        connectionListeners.add(listener);
+    }
+
+    /**
+     * Sources that read everything anyway do not care about sinks.
+     */
+    @Override
+    public void attach(SimDataSink sink) {
+    }
+
+    @Override
+    public void detach(SimDataSink sink) {
+    }
+
+    /**
+     * Sources that cannot control the simulator ignore the commands.
+     */
+    @Override
+    public void send(SimCommand command, int count) {
+    }
+
+    @Override
+    public SourceMetrics getMetrics() {
+        return metrics;
+    }
+
+    @Override
+    public boolean isConnected() {
+        return connected;
+    }
+
+    /**
+     * Delivers the sample to all sample listeners.
+     *
+     * @param sample the sample
+     */
+    protected void fireSample(SimSample sample) {
+        long start = System.nanoTime();
+        for (SimSampleListener listener : sampleListeners) {
+            listener.onSample(sample);
+        }
+        metrics.sampleDelivered(sample.getTimeNanos(), System.nanoTime() - start);
+    }
+
+    /**
+     * Marks the source connected and notifies connection listeners.
+     */
+    protected void fireConnected() {
+        connected = true;
+        for (ConnectionListener listener : connectionListeners) {
+            listener.onConnected(this);
+        }
+    }
+
+    /**
+     * Marks the source disconnected and notifies connection listeners.
+     */
+    protected void fireDisconnected() {
+        connected = false;
+        metrics.disconnected();
+        for (ConnectionListener listener : connectionListeners) {
+            listener.onDisconnected(this);
+        }
+    }
+}
@@ -0,0 +1,30 @@
+package com.mouseviator.fsuipc.example;
+
+/**
+ * Alerts raised by the {@link AlertEngine}. Active alerts are shown on the devices as a bit mask in
+ * {@link DisplayField#ALERTS}, bit = ordinal, so new alerts must be added at the end.
+ *
+ * @author Murdock
+ */
+public enum Alert {
+    /**
+     * Any gear is neither fully down nor fully up
+     */
+    GEAR_UNSAFE,
+    ENG1_LOW_OIL_PRESSURE,
+    ENG2_LOW_OIL_PRESSURE,
+    PAUSED,
+    SLEW;
+
+    /**
+     * Cached values() array, so we do not copy it every time
+     */
+    static final Alert[] VALUES = values();
+
+    /**
+     * @return Bit of this alert in alert masks
+     */
+    public int getMask() {
+        return 1 << ordinal();
+    }
+}
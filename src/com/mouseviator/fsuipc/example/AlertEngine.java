@@ -0,0 +1,167 @@
+package com.mouseviator.fsuipc.example;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Evaluates {@link AlertRule}s as the values arrive. Rules are indexed by field, so each sample updates only the rules of the
+ * fields it carries, and the mask of active alerts is kept up to date by counting active rules per alert - nothing is scanned
+ * again. {@link DisplayPipeline} asks the engine about every sample, and publishes the frame in the priority lane when an alert
+ * was raised or cleared, so it reaches the devices without waiting behind routine frames.
+ *
+ * <p>
+ * Not thread safe, should be used from the thread delivering the samples only. The active mask can be read from any thread.</p>
+ *
+ * @author Murdock
+ */
+public class AlertEngine implements SimDataSink {
+
+    /**
+     * Oil pressure below which the low oil pressure alerts come on, PSI
+     */
+    public static final double LOW_OIL_PRESSURE_PSI = 20;
+    /**
+     * Oil pressure must rise this much above the limit for the alert to go off, PSI
+     */
+    public static final double OIL_PRESSURE_HYSTERESIS_PSI = 5;
+    /**
+     * Fuel flow above which the engine counts as running, for the low oil pressure alerts, pounds per hour
+     */
+    public static final double ENGINE_RUNNING_FUEL_FLOW = 0;
+
+    private static final AlertRule[] NO_RULES = new AlertRule[0];
+
+    private final List<AlertRule> rules;
+    private final Set<SimField> requiredFields;
+    private final long fieldMask;
+    /**
+     * Rules indexed by field ordinal, by their own field and by their gate field
+     */
+    private final AlertRule[][] rulesByField = new AlertRule[SimField.VALUES.length][];
+    /**
+     * Number of active rules per alert ordinal
+     */
+    private final int[] activeRules = new int[Alert.VALUES.length];
+    private volatile int activeMask = 0;
+
+    /**
+     * Creates engine with given rules.
+     *
+     * @param rules the rules, more rules may raise the same alert
+     */
+    public AlertEngine(List<AlertRule> rules) {
+        this.rules = Collections.unmodifiableList(new ArrayList<>(rules));
+        Set<SimField> fields = EnumSet.noneOf(SimField.class);
+        Arrays.fill(rulesByField, NO_RULES);
+        for (AlertRule rule : this.rules) {
+            index(rule, rule.getField(), fields);
+            if (rule.getGateField() != null) {
+                index(rule, rule.getGateField(), fields);
+            }
+        }
+        this.requiredFields = Collections.unmodifiableSet(fields);
+        this.fieldMask = SimField.mask(fields);
+    }
+
+    private void index(AlertRule rule, SimField field, Set<SimField> fields) {
+        fields.add(field);
+        AlertRule[] fieldRules = rulesByField[field.ordinal()];
+        fieldRules = Arrays.copyOf(fieldRules, fieldRules.length + 1);
+        fieldRules[fieldRules.length - 1] = rule;
+        rulesByField[field.ordinal()] = fieldRules;
+    }
+
+    /**
+     * @return Engine with the default rules - gear in transition, low oil pressure while the engine runs (fuel flows), pause and
+     * slew
+     */
+    public static AlertEngine defaults() {
+        List<AlertRule> rules = new ArrayList<>();
+        rules.add(AlertRule.gearInTransition(Alert.GEAR_UNSAFE, SimField.GEAR_NOSE));
+        rules.add(AlertRule.gearInTransition(Alert.GEAR_UNSAFE, SimField.GEAR_LEFT));
+        rules.add(AlertRule.gearInTransition(Alert.GEAR_UNSAFE, SimField.GEAR_RIGHT));
+        //engines that do not run (shut down, or the aircraft has one) have no oil pressure, that is no alert
+        rules.add(AlertRule.below(Alert.ENG1_LOW_OIL_PRESSURE, SimField.ENG1_OIL_PRESSURE, LOW_OIL_PRESSURE_PSI, OIL_PRESSURE_HYSTERESIS_PSI)
+                .onlyWhenAbove(SimField.ENG1_FUEL_FLOW, ENGINE_RUNNING_FUEL_FLOW));
+        rules.add(AlertRule.below(Alert.ENG2_LOW_OIL_PRESSURE, SimField.ENG2_OIL_PRESSURE, LOW_OIL_PRESSURE_PSI, OIL_PRESSURE_HYSTERESIS_PSI)
+                .onlyWhenAbove(SimField.ENG2_FUEL_FLOW, ENGINE_RUNNING_FUEL_FLOW));
+        rules.add(AlertRule.flag(Alert.PAUSED, SimField.PAUSE_INDICATOR));
+        rules.add(AlertRule.flag(Alert.SLEW, SimField.SLEW_MODE));
+        return new AlertEngine(rules);
+    }
+
+    @Override
+    public Set<SimField> getRequiredFields() {
+        return requiredFields;
+    }
+
+    /**
+     * @return The rules
+     */
+    public List<AlertRule> getRules() {
+        return rules;
+    }
+
+    /**
+     * Updates the rules of the fields present in the sample.
+     *
+     * @param sample new sample
+     * @return True if any rule became active or inactive - even if the alert mask stays the same, like when the second gear
+     * leg locks, the display has to show it
+     */
+    public boolean evaluate(SimSample sample) {
+        long fields = sample.getFieldMask() & fieldMask;
+        if (fields == 0) {
+            return false;
+        }
+        int mask = activeMask;
+        boolean fired = false;
+        while (fields != 0) {
+            int ordinal = Long.numberOfTrailingZeros(fields);
+            fields &= fields - 1;
+            double value = sample.getDouble(SimField.VALUES[ordinal]);
+            for (AlertRule rule : rulesByField[ordinal]) {
+                boolean changed = rule.getField().ordinal() == ordinal ? rule.update(value) : rule.updateGate(value);
+                if (changed) {
+                    int alert = rule.getAlert().ordinal();
+                    activeRules[alert] += rule.isActive() ? 1 : -1;
+                    int bit = 1 << alert;
+                    mask = activeRules[alert] > 0 ? mask | bit : mask & ~bit;
+                    fired = true;
+                }
+            }
+        }
+        activeMask = mask;
+        return fired;
+    }
+
+    /**
+     * @return Mask of active alerts, see {@link Alert#getMask()}
+     */
+    public int getActiveMask() {
+        return activeMask;
+    }
+
+    /**
+     * @param alert alert to check
+     * @return True if the alert is active
+     */
+    public boolean isActive(Alert alert) {
+        return (activeMask & alert.getMask()) != 0;
+    }
+
+    /**
+     * Clears all alerts, when the sim disconnects. Must not be called while a sample is evaluated.
+     */
+    public void reset() {
+        for (AlertRule rule : rules) {
+            rule.reset();
+        }
+        Arrays.fill(activeRules, 0);
+        activeMask = 0;
+    }
+}
@@ -0,0 +1,190 @@
+package com.mouseviator.fsuipc.example;
+
+/**
+ * Condition on one {@link SimField} that raises an {@link Alert}. Rules keep their own state and are updated with each new value
+ * of their field only, see {@link AlertEngine}. A rule may be gated by another field, see {@link #onlyWhenAbove(SimField, double)},
+ * then it is also updated with the values of that field.
+ *
+ * @author Murdock
+ */
+public abstract class AlertRule {
+
+    private final Alert alert;
+    private final SimField field;
+    private boolean active = false;
+    private SimField gateField = null;
+    private double gateThreshold;
+    private boolean gateOpen = true;
+    private boolean hasValue = false;
+    private double value;
+
+    /**
+     * @param alert alert raised by this rule
+     * @param field field the rule watches
+     */
+    protected AlertRule(Alert alert, SimField field) {
+        this.alert = alert;
+        this.field = field;
+    }
+
+    /**
+     * @return Alert raised by this rule
+     */
+    public Alert getAlert() {
+        return alert;
+    }
+
+    /**
+     * @return Field the rule watches
+     */
+    public SimField getField() {
+        return field;
+    }
+
+    /**
+     * Makes the rule active only while another field is above the threshold, like oil pressure alert only while the engine runs.
+     * The rule is inactive until the first value of the gate field comes.
+     *
+     * @param gateField field that gates the rule
+     * @param gateThreshold value the gate field must be above
+     * @return This rule
+     */
+    public AlertRule onlyWhenAbove(SimField gateField, double gateThreshold) {
+        this.gateField = gateField;
+        this.gateThreshold = gateThreshold;
+        this.gateOpen = false;
+        return this;
+    }
+
+    /**
+     * @return Field that gates the rule, null if none
+     */
+    public SimField getGateField() {
+        return gateField;
+    }
+
+    /**
+     * @return True if the condition holds
+     */
+    public boolean isActive() {
+        return active;
+    }
+
+    /**
+     * Updates the rule with new value of its field.
+     *
+     * @param value the value
+     * @return True if the rule became active or inactive
+     */
+    boolean update(double value) {
+        this.value = value;
+        this.hasValue = true;
+        return refresh();
+    }
+
+    /**
+     * Updates the rule with new value of its gate field.
+     *
+     * @param gateValue the value
+     * @return True if the rule became active or inactive
+     */
+    boolean updateGate(double gateValue) {
+        gateOpen = gateValue > gateThreshold;
+        return refresh();
+    }
+
+    private boolean refresh() {
+        boolean now = gateOpen && hasValue && evaluate(value, active);
+        if (now == active) {
+            return false;
+        }
+        active = now;
+        return true;
+    }
+
+    /**
+     * Forgets the state, like when the sim disconnects.
+     */
+    void reset() {
+        active = false;
+        hasValue = false;
+        gateOpen = gateField == null;
+    }
+
+    /**
+     * @param value new value of the field
+     * @param active whether the rule is active now
+     * @return Whether the rule should be active with the new value
+     */
+    protected abstract boolean evaluate(double value, boolean active);
+
+    /**
+     * Rule active while the value is not 0, like pause or slew indicator.
+     *
+     * @param alert alert to raise
+     * @param field field to watch
+     * @return The rule
+     */
+    public static AlertRule flag(Alert alert, SimField field) {
+        return new AlertRule(alert, field) {
+            @Override
+            protected boolean evaluate(double value, boolean active) {
+                return value != 0;
+            }
+        };
+    }
+
+    /**
+     * Rule active while the gear is moving - its position is neither {@link DisplayFrame#GEAR_MINIMUMVALUE} nor
+     * {@link DisplayFrame#GEAR_MAXIMUMVALUE}. Fires on the same polls the gear LEDs change state.
+     *
+     * @param alert alert to raise
+     * @param field gear position field
+     * @return The rule
+     */
+    public static AlertRule gearInTransition(Alert alert, SimField field) {
+        return new AlertRule(alert, field) {
+            @Override
+            protected boolean evaluate(double value, boolean active) {
+                return DisplayFrame.gearState((int) value) == DisplayFrame.GEAR_MOVING;
+            }
+        };
+    }
+
+    /**
+     * Rule active once the value drops below the threshold, and inactive only after it rises above threshold + hysteresis, so a
+     * value wobbling around the threshold does not flash the alert.
+     *
+     * @param alert alert to raise
+     * @param field field to watch
+     * @param threshold value below which the rule activates
+     * @param hysteresis how far above the threshold the value must go to deactivate it
+     * @return The rule
+     */
+    public static AlertRule below(Alert alert, SimField field, double threshold, double hysteresis) {
+        return new AlertRule(alert, field) {
+            @Override
+            protected boolean evaluate(double value, boolean active) {
+                return active ? value < threshold + hysteresis : value < threshold;
+            }
+        };
+    }
+
+    /**
+     * Rule active once the value rises above the threshold, and inactive only after it drops below threshold - hysteresis.
+     *
+     * @param alert alert to raise
+     * @param field field to watch
+     * @param threshold value above which the rule activates
+     * @param hysteresis how far below the threshold the value must go to deactivate it
+     * @return The rule
+     */
+    public static AlertRule above(Alert alert, SimField field, double threshold, double hysteresis) {
+        return new AlertRule(alert, field) {
+            @Override
+            protected boolean evaluate(double value, boolean active) {
+                return active ? value > threshold - hysteresis : value > threshold;
+            }
+        };
+    }
+}
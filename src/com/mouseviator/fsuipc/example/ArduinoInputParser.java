@@ -0,0 +1,160 @@
+package com.mouseviator.fsuipc.example;
+
+import com.fazecast.jSerialComm.SerialPort;
+import com.fazecast.jSerialComm.SerialPortDataListener;
+import com.fazecast.jSerialComm.SerialPortEvent;
+import java.nio.charset.StandardCharsets;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Reads button and encoder events and frame ACKs sent by the Arduino. Sends the bound {@link SimCommand}s to the
+ * {@link SimDataSource}, and the ACKs to the {@link SerialLink}. Registered as jSerialComm data listener, so it is called as soon
+ * as bytes arrive, there is no polling.
+ *
+ * <p>
+ * The sketch sends one event per line, terminated by {@code '\n'}:</p>
+ * <pre>
+ *   K              frame received and shown, with ACK flow control
+ *   B&lt;n&gt;          button n pressed, like "B0"
+ *   E&lt;n&gt;+&lt;d&gt;     encoder n turned d detents clockwise, like "E0+1"
+ *   E&lt;n&gt;-&lt;d&gt;     encoder n turned d detents counterclockwise, like "E1-3"
+ * </pre>
+ * Anything else is ignored, so the sketch may print debug lines too.
+ *
+ * @author Murdock
+ */
+public class ArduinoInputParser implements SerialPortDataListener {
+
+    private static final int MAX_LINE = 32;
+
+    /**
+     * logger
+     */
+    private static final Logger logger = Logger.getLogger(ArduinoInputParser.class.getName());
+
+    private final String deviceName;
+    private final SerialLink link;
+    private volatile InputBindings bindings;
+    private volatile SimDataSource target;
+    /**
+     * Current line, only touched by the jSerialComm event thread
+     */
+    private final byte[] line = new byte[MAX_LINE];
+    private int lineLength = 0;
+    private boolean overflow = false;
+
+    /**
+     * @param deviceName name of the device, for logging
+     * @param link link to pass the ACKs to
+     */
+    public ArduinoInputParser(String deviceName, SerialLink link) {
+        this.deviceName = deviceName;
+        this.link = link;
+    }
+
+    /**
+     * @param bindings what the inputs do, null to ignore the inputs
+     * @param target source to send the commands to
+     */
+    public void setBindings(InputBindings bindings, SimDataSource target) {
+        this.target = target;
+        this.bindings = bindings;
+    }
+
+    /**
+     * @return True if the inputs are bound
+     */
+    public boolean hasBindings() {
+        return bindings != null;
+    }
+
+    @Override
+    public int getListeningEvents() {
+        return SerialPort.LISTENING_EVENT_DATA_RECEIVED;
+    }
+
+    @Override
+    public void serialEvent(SerialPortEvent event) {
+        if (event.getEventType() != SerialPort.LISTENING_EVENT_DATA_RECEIVED) {
+            return;
+        }
+        byte[] data = event.getReceivedData();
+        parse(data, 0, data.length);
+    }
+
+    /**
+     * Parses received bytes, lines may be split across calls.
+     *
+     * @param data received bytes
+     * @param offset first byte
+     * @param length number of bytes
+     */
+    void parse(byte[] data, int offset, int length) {
+        for (int i = offset; i < offset + length; i++) {
+            byte b = data[i];
+            if (b == '\n') {
+                if (!overflow) {
+                    parseLine();
+                }
+                lineLength = 0;
+                overflow = false;
+            } else if (b != '\r') {
+                if (lineLength < MAX_LINE) {
+                    line[lineLength++] = b;
+                } else {
+                    overflow = true;
+                }
+            }
+        }
+    }
+
+    private void parseLine() {
+        if (lineLength == 1 && line[0] == 'K') {
+            link.acknowledged();
+            return;
+        }
+        InputBindings bindings = this.bindings;
+        if (lineLength < 2 || bindings == null) {
+            return;
+        }
+        int position = 1;
+        int input = 0;
+        int digits = 0;
+        while (position < lineLength && line[position] >= '0' && line[position] <= '9' && digits < 3) {
+            input = input * 10 + (line[position++] - '0');
+            digits++;
+        }
+        if (digits == 0) {
+            return;
+        }
+
+        SimCommand command;
+        int count = 1;
+        if (line[0] == 'B' && position == lineLength) {
+            command = bindings.getButton(input);
+        } else if (line[0] == 'E' && position < lineLength && (line[position] == '+' || line[position] == '-')) {
+            boolean up = line[position++] == '+';
+            count = 0;
+            digits = 0;
+            while (position < lineLength && line[position] >= '0' && line[position] <= '9' && digits < 3) {
+                count = count * 10 + (line[position++] - '0');
+                digits++;
+            }
+            if (digits == 0 || position != lineLength) {
+                return;
+            }
+            command = bindings.getEncoder(input, up);
+        } else {
+            return;
+        }
+
+        if (command != null && count > 0) {
+            if (logger.isLoggable(Level.FINE)) {
+                logger.fine(deviceName + ": " + new String(line, 0, lineLength, StandardCharsets.US_ASCII) + " -> "
+                        + command + " x" + count);
+            }
+            target.send(command, count);
+        }
+    }
+}
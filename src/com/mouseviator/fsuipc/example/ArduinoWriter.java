@@ -0,0 +1,587 @@
+package com.mouseviator.fsuipc.example;
+
+import com.fazecast.jSerialComm.SerialPort;
+import java.nio.ByteBuffer;
+import java.util.Set;
+import java.util.concurrent.locks.LockSupport;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Writes display frames to one Arduino serial port on its own thread.
+ *
+ * <p>
+ * The producer (FSUIPC processing thread) only calls {@link #publish(DisplayFrame)}, which copies the values into a single slot
+ * mailbox and returns immediately. The writer thread always sends the latest published frame. If the serial link is slower than
+ * the producer, frames that were not sent yet are overwritten (coalesced) instead of queued, so the display never lags behind
+ * with stale data.</p>
+ *
+ * <p>
+ * The port is opened by the writer thread too, including the wait for the Arduino auto-reset, so a slow or missing board delays
+ * nobody but itself. The wait ends as soon as the sketch sends its handshake (see {@link PortScanner}), sketches without it get
+ * the full {@link #ARDUINO_RESET_DELAY_MS}. The port stays open until the writer is stopped. When it fails (USB cable unplugged)
+ * or can not be opened, the writer keeps trying to reopen it. Devices with {@link DeviceProfile#AUTO_PORT} get their port from
+ * the {@link PortScanner}. Only the fields of the {@link DeviceProfile} are sent.</p>
+ *
+ * <p>
+ * In delta mode, only fields that changed since they were last written are sent. Full frame is sent as keyframe periodically and
+ * after write errors, so the Arduino can resync. Delta mode needs a sketch that understands delta updates, so it is off by
+ * default. The wire format is up to the {@link FrameEncoder}, see {@link AsciiFrameEncoder} and
+ * {@link BinaryFrameEncoder}. The changed fields are picked for each delta frame by the {@link FieldScheduler}, within the byte
+ * budget of the port: gear and alerts right away, the rest by weight, but never staler than their limit. Fields left out are
+ * sent by the writer when they are due, even if no new frame is published.</p>
+ *
+ * <p>
+ * The writes go through {@link SerialLink}, which bounds the bytes in flight, paces the frames to what the line can carry and
+ * gives up frames that can not be written before a deadline. Frames published while the link is busy are coalesced or dropped,
+ * per the profile.</p>
+ *
+ * <p>
+ * Frames published with {@link #publishUrgent(DisplayFrame)} (alerts, see {@link AlertEngine}) are the priority lane: they are
+ * never dropped, and are written as soon as the current write finishes, without waiting for the send window.</p>
+ *
+ * <p>
+ * Bytes coming from the Arduino (buttons, encoders, frame ACKs) are handled by {@link ArduinoInputParser}.</p>
+ *
+ * @author Murdock
+ */
+public class ArduinoWriter implements Runnable, SimDataSink {
+
+    /**
+     * How long to wait after opening the port - the Arduino resets when the port is opened, and is not listening until the
+     * sketch starts
+     */
+    public static final long ARDUINO_RESET_DELAY_MS = 4000;
+    /**
+     * Default interval of full frames in delta mode
+     */
+    public static final long DEFAULT_KEYFRAME_INTERVAL_MS = 5000;
+    /**
+     * How often to try to open missing port
+     */
+    public static final long REOPEN_INTERVAL_MS = 2000;
+    /**
+     * How often to check that the port is still there, while there is nothing to send
+     */
+    private static final long PORT_CHECK_INTERVAL_MS = 1000;
+
+    /**
+     * Notified when the writer opens or closes its port
+     */
+    public interface PortListener {
+
+        /**
+         * Called from the writer thread, after the port was opened and the Arduino is ready.
+         *
+         * @param writer writer whose port was opened
+         */
+        void portOpened(ArduinoWriter writer);
+
+        /**
+         * Called from the writer thread, after the port was closed or failed to open.
+         *
+         * @param writer writer whose port was closed
+         */
+        void portClosed(ArduinoWriter writer);
+    }
+
+    /**
+     * logger
+     */
+    private static final Logger logger = Logger.getLogger(ArduinoWriter.class.getName());
+
+    private final DeviceProfile profile;
+    private final PortListener portListener;
+    /**
+     * Finds ports of auto detected devices, may be null
+     */
+    private final PortScanner portScanner;
+    /**
+     * The port, only touched by the writer thread
+     */
+    private SerialPort sp;
+    /**
+     * True while the port is open and the sketch is running
+     */
+    private volatile boolean ready = false;
+    /**
+     * Sim fields the device needs
+     */
+    private final Set<SimField> requiredFields;
+    /**
+     * Mask of display fields the device shows
+     */
+    private final int fieldMask;
+
+    /**
+     * Lock guarding the mailbox
+     */
+    private final Object lock = new Object();
+    /**
+     * The mailbox - latest published frame, not yet sent
+     */
+    private final DisplayFrame pending = new DisplayFrame();
+    /**
+     * Frame being sent by the writer thread, only touched by the writer thread
+     */
+    private final DisplayFrame sending = new DisplayFrame();
+    private long sendingPublishedNanos;
+    /**
+     * True if the frame being sent is the last one again, for its deferred fields, not taken from the mailbox
+     */
+    private boolean sendingResend;
+    private boolean hasPending = false;
+    /**
+     * True if the pending frame, or one it replaced, was published to the priority lane
+     */
+    private boolean urgent = false;
+    /**
+     * When the pending frame was published
+     */
+    private long pendingPublishedNanos;
+    private volatile boolean running = false;
+    private Thread thread;
+    /**
+     * The running writer thread, to wake it up for urgent frames
+     */
+    private volatile Thread writerThread;
+
+    private final DeviceMetrics metrics;
+    /**
+     * Bounded, paced writes to the port
+     */
+    private final SerialLink link;
+    /**
+     * Reads what the Arduino sends
+     */
+    private final ArduinoInputParser inputParser;
+    /**
+     * True while the input parser is registered to the port
+     */
+    private boolean listening = false;
+
+    /**
+     * Encodes frames to bytes
+     */
+    private final FrameEncoder encoder;
+    /**
+     * Reused buffer for encoded frames, only touched by the writer thread
+     */
+    private final ByteBuffer frameBuffer;
+    /**
+     * Tracks what the Arduino has, only touched by the writer thread
+     */
+    private final DeltaTracker deltaTracker = new DeltaTracker(DEFAULT_KEYFRAME_INTERVAL_MS);
+    /**
+     * Picks the fields of delta frames, null if not in delta mode. Only touched by the writer thread.
+     */
+    private final FieldScheduler fieldScheduler;
+    /**
+     * True if the scheduler left changed fields out of the last frame, only touched by the writer thread
+     */
+    private boolean deferred = false;
+
+    /**
+     * Creates new writer for given device.
+     *
+     * @param profile device to write to, must not use {@link DeviceProfile#AUTO_PORT}
+     * @param portListener listener to notify when the port opens or closes, may be null
+     */
+    public ArduinoWriter(DeviceProfile profile, PortListener portListener) {
+        this(profile, portListener, null);
+    }
+
+    /**
+     * Creates new writer for given device.
+     *
+     * @param profile device to write to
+     * @param portListener listener to notify when the port opens or closes, may be null
+     * @param portScanner scanner to find the port with, needed for {@link DeviceProfile#AUTO_PORT}
+     */
+    public ArduinoWriter(DeviceProfile profile, PortListener portListener, PortScanner portScanner) {
+        if (profile.isAutoPort() && portScanner == null) {
+            throw new IllegalArgumentException("Port scanner is needed to find port of " + profile);
+        }
+        this.profile = profile;
+        this.portListener = portListener;
+        this.portScanner = portScanner;
+        this.requiredFields = DisplayField.requiredSimFields(profile.getFields());
+        this.fieldMask = DisplayField.mask(profile.getFields());
+        this.encoder = profile.createEncoder();
+        this.frameBuffer = ByteBuffer.allocate(encoder.getMaxFrameSize());
+        this.fieldScheduler = profile.isDeltaMode() ? FieldScheduler.forProfile(profile, encoder) : null;
+        this.link = new SerialLink(profile.getBaudRate(), SerialLink.DEFAULT_WINDOW_BYTES, profile.isAckFlowControl(),
+                SerialLink.DEFAULT_WRITE_TIMEOUT_MS);
+        this.inputParser = new ArduinoInputParser(profile.getName(), link);
+        this.metrics = new DeviceMetrics(profile, link);
+    }
+
+    @Override
+    public Set<SimField> getRequiredFields() {
+        return requiredFields;
+    }
+
+    /**
+     * @return Profile of the device this writer writes to
+     */
+    public DeviceProfile getProfile() {
+        return profile;
+    }
+
+    /**
+     * @return True if the port is open and the Arduino is ready
+     */
+    public boolean isOpen() {
+        return ready;
+    }
+
+    /**
+     * Starts the writer thread, which will open the port first and keep it open until stopped. Does nothing if already running.
+     */
+    public synchronized void start() {
+        if (running) {
+            return;
+        }
+        running = true;
+        thread = new Thread(this, "Arduino writer - " + profile.getName());
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * Stops the writer thread and waits for it to finish, the thread closes the port. Frame that was not sent yet is discarded.
+     */
+    public synchronized void stop() {
+        if (!running) {
+            return;
+        }
+        running = false;
+        thread.interrupt();
+        try {
+            thread.join(1000);
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        }
+        thread = null;
+        synchronized (lock) {
+            if (hasPending) {
+                metrics.frameDropped();
+            }
+            hasPending = false;
+            urgent = false;
+        }
+    }
+
+    /**
+     * Publishes new frame to be sent. The values are copied, so the caller may reuse the frame object. Never blocks on the serial
+     * port.
+     *
+     * @param frame frame to send
+     */
+    public void publish(DisplayFrame frame) {
+        long now = System.nanoTime();
+        synchronized (lock) {
+            metrics.framePublished(hasPending);
+            pending.copyFrom(frame);
+            pendingPublishedNanos = now;
+            hasPending = true;
+            lock.notify();
+        }
+    }
+
+    /**
+     * Publishes new frame to the priority lane. Like {@link #publish(DisplayFrame)}, but the frame is sent without waiting for the
+     * send window, and is not dropped. A routine frame published before it is sent replaces its values, but stays urgent.
+     *
+     * @param frame frame to send
+     */
+    public void publishUrgent(DisplayFrame frame) {
+        long now = System.nanoTime();
+        synchronized (lock) {
+            metrics.framePublished(hasPending);
+            metrics.urgentFramePublished();
+            pending.copyFrom(frame);
+            pendingPublishedNanos = now;
+            hasPending = true;
+            urgent = true;
+            lock.notify();
+        }
+        //the writer may be waiting for the window
+        Thread writer = writerThread;
+        if (writer != null) {
+            LockSupport.unpark(writer);
+        }
+    }
+
+    /**
+     * @return Number of frames published to this writer
+     */
+    public long getFramesPublished() {
+        return metrics.getFramesPublished();
+    }
+
+    /**
+     * @return Number of frames that were replaced by newer frame before they could be sent
+     */
+    public long getFramesCoalesced() {
+        return metrics.getFramesCoalesced();
+    }
+
+    /**
+     * Binds buttons and encoders of the device. Takes effect when the port is opened next time.
+     *
+     * @param bindings what the inputs do, null to ignore them
+     * @param target source to send the commands to
+     */
+    public void setInput(InputBindings bindings, SimDataSource target) {
+        inputParser.setBindings(bindings, target);
+    }
+
+    /**
+     * @return Metrics of this device
+     */
+    public DeviceMetrics getMetrics() {
+        return metrics;
+    }
+
+    @Override
+    public void run() {
+        writerThread = Thread.currentThread();
+        boolean openFailed = false;
+        while (running) {
+            if (!openPort(openFailed)) {
+                openFailed = true;
+                try {
+                    Thread.sleep(REOPEN_INTERVAL_MS);
+                } catch (InterruptedException ex) {
+                    //stop() interrupts us, the running flag will tell
+                }
+                continue;
+            }
+            openFailed = false;
+            ready = true;
+            connectionEvent(true);
+            if (portListener != null) {
+                portListener.portOpened(this);
+            }
+
+            writeFrames();
+
+            ready = false;
+            closePort();
+            connectionEvent(false);
+            if (portListener != null) {
+                portListener.portClosed(this);
+            }
+        }
+    }
+
+    /**
+     * Sends the published frames until the writer is stopped or the port fails.
+     */
+    private void writeFrames() {
+        while (running) {
+            synchronized (lock) {
+                while (!hasPending && running) {
+                    long waitMs = PORT_CHECK_INTERVAL_MS;
+                    if (deferred) {
+                        //fields left out of the last frame, send them when due even if nothing new comes
+                        long due = fieldScheduler.nanosUntilDue(System.nanoTime());
+                        if (due == 0) {
+                            break;
+                        }
+                        waitMs = Math.min(waitMs, Math.max(1, due / 1_000_000L));
+                    }
+                    try {
+                        lock.wait(waitMs);
+                    } catch (InterruptedException ex) {
+                        //stop() interrupts us, the running flag will tell
+                    }
+                    if (!hasPending && sp.bytesAvailable() < 0) {
+                        logger.warning("Lost port of " + profile);
+                        return;
+                    }
+                }
+            }
+            if (!awaitLink()) {
+                continue;
+            }
+            synchronized (lock) {
+                if (!running) {
+                    break;
+                }
+                //else resending the deferred fields of the last frame
+                sendingResend = !hasPending;
+                if (hasPending) {
+                    sending.copyFrom(pending);
+                    sendingPublishedNanos = pendingPublishedNanos;
+                    hasPending = false;
+                    urgent = false;
+                }
+            }
+
+            sendToArduino(sending);
+            deferred = fieldScheduler != null && fieldScheduler.getDeferredMask() != 0;
+            if (link.isPortFailed()) {
+                logger.warning("Lost port of " + profile);
+                return;
+            }
+        }
+    }
+
+    /**
+     * Waits until the link can take next frame. Frames published meanwhile replace the pending one, or are dropped. Urgent frames
+     * do not wait.
+     *
+     * @return True if the pending frame can be sent now, false if it was dropped or the writer is stopping
+     */
+    private boolean awaitLink() {
+        long wait;
+        while (running && (wait = link.nanosUntilReady(System.nanoTime())) > 0) {
+            synchronized (lock) {
+                if (urgent) {
+                    return true;
+                }
+                if (profile.getLinkPolicy() == SerialLink.Policy.DROP && hasPending) {
+                    hasPending = false;
+                    metrics.frameDropped();
+                    //nothing to do until the next frame, which may find the window open
+                    return false;
+                }
+            }
+            //publishUrgent() unparks us
+            LockSupport.parkNanos(this, wait);
+        }
+        return running;
+    }
+
+    /**
+     * Opens the port and waits for the sketch to start.
+     *
+     * @param retry true if the previous attempt failed, to not repeat the warning
+     * @return True if the port is open
+     */
+    private boolean openPort(boolean retry) {
+        if (profile.isAutoPort()) {
+            try {
+                sp = portScanner.await(profile.getName(), profile.getBaudRate());
+            } catch (InterruptedException ex) {
+                //stopped while waiting
+                return false;
+            }
+            //the scanner did the handshake already
+            sp.setComPortParameters(profile.getBaudRate(), 8, 1, 0);
+        } else {
+            //new handle every time, the old one is dead if the cable was unplugged
+            sp = SerialPort.getCommPort(profile.getPortName());
+            sp.setComPortParameters(profile.getBaudRate(), 8, 1, 0); // default connection settings for Arduino
+            sp.setComPortTimeouts(SerialPort.TIMEOUT_NONBLOCKING, 0, 0); // never block, SerialLink has its own write deadline
+            if (!sp.openPort()) {
+                logger.log(retry ? Level.FINE : Level.WARNING, "Failed to open port for " + profile + ", will keep trying");
+                return false;
+            }
+            //the Arduino resets when the port is opened, wait for the sketch to start
+            String name = PortScanner.handshake(sp, ARDUINO_RESET_DELAY_MS, false);
+            if (name != null && !name.equals(profile.getName())) {
+                logger.warning("Port of " + profile + " is connected to " + name);
+            }
+        }
+        if (!running) {
+            closePort();
+            return false;
+        }
+        logger.info("Port is open for " + profile);
+        //the Arduino was reset by opening the port
+        deltaTracker.reset();
+        if (fieldScheduler != null) {
+            fieldScheduler.reset(System.nanoTime());
+        }
+        deferred = false;
+        link.reset(sp);
+        if (profile.isAckFlowControl() || inputParser.hasBindings()) {
+            listening = sp.addDataListener(inputParser);
+            if (!listening) {
+                logger.warning("Failed to listen for input from " + profile);
+            }
+        }
+        return true;
+    }
+
+    private void closePort() {
+        if (listening) {
+            sp.removeDataListener();
+            listening = false;
+        }
+        if (sp.closePort()) {
+            logger.info("Port is closed for " + profile);
+        } else {
+            logger.warning("Failed to close port for " + profile);
+        }
+        if (profile.isAutoPort()) {
+            portScanner.release(sp);
+        }
+    }
+
+    private void connectionEvent(boolean connected) {
+        SimEvents.Connection event = new SimEvents.Connection();
+        if (event.shouldCommit()) {
+            event.target = profile.getName();
+            event.detail = sp.getSystemPortName();
+            event.connected = connected;
+            event.commit();
+        }
+    }
+
+    private void sendToArduino(DisplayFrame frame) {
+        if (link.takeResyncNeeded()) {
+            //frames were lost, the Arduino needs full frame
+            deltaTracker.reset();
+        }
+        long now = System.nanoTime();
+        boolean keyframe = !profile.isDeltaMode() || deltaTracker.isKeyframeDue(now);
+        int mask = keyframe ? fieldMask : deltaTracker.dirtyMask(frame) & fieldMask;
+        if (!keyframe && fieldScheduler != null) {
+            //even with nothing dirty, deferred fields may have gone back to what the device shows and must not stay due
+            mask = fieldScheduler.select(frame, mask, sendingPublishedNanos, now);
+        }
+        if (mask == 0) {
+            //nothing changed, or nothing fits the budget now
+            return;
+        }
+
+        SimEvents.FrameEncoded encodedEvent = new SimEvents.FrameEncoded();
+        encodedEvent.begin();
+        encoder.encode(frame, mask, keyframe, frameBuffer);
+        int length = frameBuffer.limit();
+        if (encodedEvent.shouldCommit()) {
+            encodedEvent.device = profile.getName();
+            encodedEvent.bytes = length;
+            encodedEvent.fieldMask = mask;
+            encodedEvent.keyframe = keyframe;
+            encodedEvent.commit();
+        }
+
+        long encoded = System.nanoTime();
+        SimEvents.SerialWrite writeEvent = new SimEvents.SerialWrite();
+        writeEvent.begin();
+        boolean written = link.write(frameBuffer.array(), length);
+        if (writeEvent.shouldCommit()) {
+            writeEvent.device = profile.getName();
+            writeEvent.bytes = length;
+            writeEvent.written = written;
+            writeEvent.commit();
+        }
+        if (written) {
+            deltaTracker.acknowledge(frame, mask, keyframe, now);
+            if (fieldScheduler != null) {
+                fieldScheduler.sent(mask, length, now);
+            }
+            //a resend was not handed off, its publish time is when the deferral started
+            metrics.frameSent(length, frame.getTimeNanos(), sendingResend ? 0 : sendingPublishedNanos, now, encoded, System.nanoTime());
+        } else {
+            logger.severe("Failed to write frame to " + profile);
+            deltaTracker.reset();
+            metrics.frameDropped();
+        }
+    }
+}
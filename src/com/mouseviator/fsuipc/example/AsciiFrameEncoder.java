@@ -0,0 +1,106 @@
+package com.mouseviator.fsuipc.example;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Encodes display frames into the original '#' delimited text format understood by the Arduino sketch:
+ * {@code 118.025#121.500#045#On#Off#Moving#}, followed by the alert mask ({@code 5#}) for devices that show alerts. When only some fields are encoded (delta update), each one is prefixed by its tag,
+ * like {@code H:045#N:Moving#}.
+ *
+ * <p>
+ * The text is rendered straight into the buffer with integer arithmetic, no strings or formatters are involved, so encoding
+ * does not produce any garbage.</p>
+ *
+ * @author Murdock
+ */
+public class AsciiFrameEncoder implements FrameEncoder {
+
+    /**
+     * Full frame with delta tags would be 7 * 2 bytes longer than the ~44 bytes of full frame, leave room for bigger numbers
+     */
+    private static final int MAX_FRAME_SIZE = 64;
+
+    private static final byte SEPARATOR = '#';
+    private static final byte TAG_SEPARATOR = ':';
+
+    private static final byte[] GEAR_ON_TEXT = {'O', 'n'};
+    private static final byte[] GEAR_OFF_TEXT = {'O', 'f', 'f'};
+    private static final byte[] GEAR_MOVING_TEXT = {'M', 'o', 'v', 'i', 'n', 'g'};
+
+    /**
+     * Scratch space for digits, int has at most 10 of them
+     */
+    private final byte[] digits = new byte[10];
+
+    @Override
+    public int getMaxFrameSize() {
+        return MAX_FRAME_SIZE;
+    }
+
+    @Override
+    public void encode(DisplayFrame frame, int mask, boolean keyframe, ByteBuffer buffer) {
+        buffer.clear();
+        for (DisplayField field : DisplayField.VALUES) {
+            if ((mask & field.getMask()) != 0) {
+                if (!keyframe) {
+                    buffer.put((byte) field.getTag());
+                    buffer.put(TAG_SEPARATOR);
+                }
+                putField(buffer, field, frame.get(field));
+                buffer.put(SEPARATOR);
+            }
+        }
+        buffer.flip();
+    }
+
+    private void putField(ByteBuffer buffer, DisplayField field, int value) {
+        switch (field) {
+            case COM1_FREQUENCY:
+            case COM1_STANDBY:
+                //kHz to MHz with 3 decimals, 118025 -> 118.025
+                if (value < 0) {
+                    buffer.put((byte) '-');
+                    value = -value;
+                }
+                putDigits(buffer, value / 1000, 1);
+                buffer.put((byte) '.');
+                putDigits(buffer, value % 1000, 3);
+                break;
+            case HEADING:
+                putDigits(buffer, value, 3);
+                break;
+            case ALERTS:
+                putDigits(buffer, value, 1);
+                break;
+            default:
+                switch (value) {
+                    case DisplayFrame.GEAR_ON:
+                        buffer.put(GEAR_ON_TEXT);
+                        break;
+                    case DisplayFrame.GEAR_OFF:
+                        buffer.put(GEAR_OFF_TEXT);
+                        break;
+                    default:
+                        buffer.put(GEAR_MOVING_TEXT);
+                        break;
+                }
+        }
+    }
+
+    /**
+     * Puts decimal digits of non negative value, left padded with zeros to at least minDigits.
+     */
+    private void putDigits(ByteBuffer buffer, int value, int minDigits) {
+        int count = 0;
+        do {
+            digits[count++] = (byte) ('0' + value % 10);
+            value /= 10;
+        } while (value > 0);
+        while (count < minDigits) {
+            digits[count++] = '0';
+        }
+        while (count > 0) {
+            buffer.put(digits[--count]);
+        }
+    }
+}
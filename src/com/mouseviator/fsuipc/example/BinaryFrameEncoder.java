@@ -0,0 +1,104 @@
+package com.mouseviator.fsuipc.example;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Encodes display frames into compact, versioned binary frames:
+ *
+ * <pre>
+ * offset  size  content
+ * 0       1     start marker 0xA5
+ * 1       1     protocol version (1)
+ * 2       1     flags, bit 0 set = keyframe (all fields the device shows are present)
+ * 3       1     number of fields that follow
+ * 4       n     fields: 1 byte field id + fixed size big endian payload
+ * 4+n     2     CRC-16/CCITT-FALSE of bytes 1 .. 3+n (everything but the start marker), big endian
+ *
+ * id    field           payload
+ * 0x01  COM1 frequency  3 bytes, kHz (118.025 MHz = 118025)
+ * 0x02  COM1 standby    3 bytes, kHz
+ * 0x03  heading         2 bytes, degrees 0 - 359
+ * 0x04  gear            1 byte, 2 bits per gear: bits 0-1 nose, 2-3 left, 4-5 right; 0 = On, 1 = Off, 2 = Moving
+ * 0x05  alerts          2 bytes, mask of active alerts, bit = {@link Alert} ordinal
+ * </pre>
+ *
+ * Full frame is 19 bytes (22 with alerts), heading change alone is 9 bytes, gear change alone 8 bytes. The Arduino should drop any
+ * frame with wrong CRC or unknown version.
+ *
+ * @author Murdock
+ */
+public class BinaryFrameEncoder implements FrameEncoder {
+
+    public static final byte START_MARKER = (byte) 0xA5;
+    public static final byte VERSION = 1;
+    public static final byte FLAG_KEYFRAME = 0x01;
+
+    public static final byte FIELD_COM1_FREQUENCY = 0x01;
+    public static final byte FIELD_COM1_STANDBY = 0x02;
+    public static final byte FIELD_HEADING = 0x03;
+    public static final byte FIELD_GEAR = 0x04;
+    public static final byte FIELD_ALERTS = 0x05;
+
+    private static final int GEAR_MASK = DisplayField.GEAR_NOSE.getMask() | DisplayField.GEAR_LEFT.getMask() | DisplayField.GEAR_RIGHT.getMask();
+
+    /**
+     * Header 4 bytes, fields 4 + 4 + 3 + 2 + 3, CRC 2 bytes
+     */
+    private static final int MAX_FRAME_SIZE = 4 + 16 + 2;
+
+    @Override
+    public int getMaxFrameSize() {
+        return MAX_FRAME_SIZE;
+    }
+
+    @Override
+    public void encode(DisplayFrame frame, int mask, boolean keyframe, ByteBuffer buffer) {
+        buffer.clear();
+        buffer.put(START_MARKER);
+        buffer.put(VERSION);
+        buffer.put(keyframe ? FLAG_KEYFRAME : 0);
+        int countPosition = buffer.position();
+        buffer.put((byte) 0);
+
+        int count = 0;
+        if ((mask & DisplayField.COM1_FREQUENCY.getMask()) != 0) {
+            buffer.put(FIELD_COM1_FREQUENCY);
+            putUInt24(buffer, frame.get(DisplayField.COM1_FREQUENCY));
+            count++;
+        }
+        if ((mask & DisplayField.COM1_STANDBY.getMask()) != 0) {
+            buffer.put(FIELD_COM1_STANDBY);
+            putUInt24(buffer, frame.get(DisplayField.COM1_STANDBY));
+            count++;
+        }
+        if ((mask & DisplayField.HEADING.getMask()) != 0) {
+            buffer.put(FIELD_HEADING);
+            buffer.putShort((short) frame.get(DisplayField.HEADING));
+            count++;
+        }
+        if ((mask & GEAR_MASK) != 0) {
+            buffer.put(FIELD_GEAR);
+            buffer.put((byte) ((frame.get(DisplayField.GEAR_NOSE) & 0x03)
+                    | (frame.get(DisplayField.GEAR_LEFT) & 0x03) << 2
+                    | (frame.get(DisplayField.GEAR_RIGHT) & 0x03) << 4));
+            count++;
+        }
+        if ((mask & DisplayField.ALERTS.getMask()) != 0) {
+            buffer.put(FIELD_ALERTS);
+            buffer.putShort((short) frame.get(DisplayField.ALERTS));
+            count++;
+        }
+        buffer.put(countPosition, (byte) count);
+
+        //ByteBuffer.allocate gives us heap buffer with backing array, so we can CRC the array directly
+        int crc = Crc16.compute(buffer.array(), buffer.arrayOffset() + 1, buffer.position() - 1);
+        buffer.putShort((short) crc);
+        buffer.flip();
+    }
+
+    private static void putUInt24(ByteBuffer buffer, int value) {
+        buffer.put((byte) (value >>> 16));
+        buffer.put((byte) (value >>> 8));
+        buffer.put((byte) value);
+    }
+}
@@ -0,0 +1,43 @@
+package com.mouseviator.fsuipc.example;
+
+import com.mouseviator.fsuipc.datarequest.DataRequest;
+import com.mouseviator.fsuipc.datarequest.RequestType;
+
+/**
+ * Read request for a range of FSUIPC offsets, as raw bytes. Used by {@link RequestPlanner} to read many adjacent values with one
+ * request.
+ *
+ * @author Murdock
+ */
+public class BlockRequest extends DataRequest<byte[]> {
+
+    /**
+     * @param offset first offset of the block
+     * @param size size of the block in bytes
+     */
+    public BlockRequest(int offset, int size) {
+        this.dataOffset = offset;
+        this.dataBuffer = new byte[size];
+        this.type = RequestType.READ;
+    }
+
+    /**
+     * @return The data buffer itself, not a copy
+     */
+    @Override
+    public byte[] getValue() {
+        return dataBuffer;
+    }
+
+    /**
+     * Not supported, block requests are read only. They are created by {@link RequestPlanner} as {@link RequestType#READ} and their
+     * values are taken from the buffer, nothing ever sets them.
+     *
+     * @param value not used
+     * @throws UnsupportedOperationException always
+     */
+    @Override
+    public void setValue(byte[] value) {
+        throw new UnsupportedOperationException("Block requests are read only");
+    }
+}
@@ -0,0 +1,92 @@
+package com.mouseviator.fsuipc.example;
+
+import java.util.Arrays;
+
+/**
+ * Bounded FIFO of {@link SimCommand}s with repeat counts, in the order they arrived. A command that repeats the last queued one
+ * only adds to its count, so an encoder turned by several detents takes one entry, while "tune, then swap" stays in that order.
+ *
+ * <p>
+ * Thread safe, {@link #add(SimCommand, int)} is called by the input threads and {@link #drainTo(SimCommand[], int[])} by the
+ * sender thread. Does not allocate.</p>
+ *
+ * @author Murdock
+ */
+class CommandQueue {
+
+    private final SimCommand[] commands;
+    private final int[] counts;
+    private int head = 0;
+    private int size = 0;
+    private long dropped = 0;
+
+    /**
+     * @param capacity most entries queued, commands that do not fit are dropped
+     */
+    CommandQueue(int capacity) {
+        this.commands = new SimCommand[capacity];
+        this.counts = new int[capacity];
+    }
+
+    /**
+     * Queues the command, or adds to the count of the last entry if it is the same command.
+     *
+     * @param command command to queue
+     * @param count how many times
+     * @return False if the queue is full and the command was dropped
+     */
+    synchronized boolean add(SimCommand command, int count) {
+        if (size > 0) {
+            int last = (head + size - 1) % commands.length;
+            if (commands[last] == command) {
+                counts[last] += count;
+                return true;
+            }
+        }
+        if (size == commands.length) {
+            dropped++;
+            return false;
+        }
+        int tail = (head + size) % commands.length;
+        commands[tail] = command;
+        counts[tail] = count;
+        size++;
+        return true;
+    }
+
+    /**
+     * Moves all queued entries to the arrays, oldest first, and empties the queue.
+     *
+     * @param toCommands array of at least the capacity to take the commands
+     * @param toCounts array of at least the capacity to take the counts
+     * @return Number of entries moved
+     */
+    synchronized int drainTo(SimCommand[] toCommands, int[] toCounts) {
+        int drained = size;
+        for (int i = 0; i < drained; i++) {
+            int index = (head + i) % commands.length;
+            toCommands[i] = commands[index];
+            toCounts[i] = counts[index];
+            commands[index] = null;
+        }
+        head = 0;
+        size = 0;
+        return drained;
+    }
+
+    /**
+     * Empties the queue.
+     */
+    synchronized void clear() {
+        Arrays.fill(commands, null);
+        head = 0;
+        size = 0;
+    }
+
+    /**
+     * @return Number of commands dropped because the queue was full
+     */
+    synchronized long getDropped() {
+        return dropped;
+    }
+}
@@ -0,0 +1,57 @@
+package com.mouseviator.fsuipc.example;
+
+/**
+ * CRC-16/CCITT-FALSE (polynomial 0x1021, initial value 0xFFFF, no reflection, no final xor), as used by the binary frame
+ * protocol. Table driven, no allocations.
+ *
+ * @author Murdock
+ */
+public final class Crc16 {
+
+    /**
+     * Initial CRC value
+     */
+    public static final int INITIAL = 0xFFFF;
+
+    private static final int[] TABLE = new int[256];
+
+    static {
+        for (int i = 0; i < 256; i++) {
+            int crc = i << 8;
+            for (int bit = 0; bit < 8; bit++) {
+                crc = (crc & 0x8000) != 0 ? (crc << 1) ^ 0x1021 : crc << 1;
+            }
+            TABLE[i] = crc & 0xFFFF;
+        }
+    }
+
+    private Crc16() {
+    }
+
+    /**
+     * Updates CRC with one byte.
+     *
+     * @param crc current CRC value
+     * @param b byte to add
+     * @return Updated CRC value
+     */
+    public static int update(int crc, byte b) {
+        return ((crc << 8) ^ TABLE[((crc >>> 8) ^ b) & 0xFF]) & 0xFFFF;
+    }
+
+    /**
+     * Computes CRC of part of an array.
+     *
+     * @param data data array
+     * @param offset first byte to include
+     * @param length number of bytes to include
+     * @return CRC value
+     */
+    public static int compute(byte[] data, int offset, int length) {
+        int crc = INITIAL;
+        for (int i = offset; i < offset + length; i++) {
+            crc = update(crc, data[i]);
+        }
+        return crc;
+    }
+}
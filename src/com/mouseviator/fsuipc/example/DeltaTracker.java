@@ -0,0 +1,87 @@
+package com.mouseviator.fsuipc.example;
+
+/**
+ * Tracks the last values the Arduino acknowledged (for now - successfully written to the port) per {@link DisplayField}, so only
+ * changed fields have to be sent. Every keyframe interval all fields are reported dirty, so the Arduino can resync after it was
+ * reset.
+ *
+ * @author Murdock
+ */
+public class DeltaTracker {
+
+    private final int[] acknowledged = new int[DisplayField.VALUES.length];
+    /**
+     * Whether we have anything acknowledged at all, if not, next frame must be a keyframe
+     */
+    private boolean synced = false;
+    private long keyframeIntervalNanos;
+    private long lastKeyframeNanos;
+
+    /**
+     * Creates new tracker.
+     *
+     * @param keyframeIntervalMs how often to send full frame, in milliseconds
+     */
+    public DeltaTracker(long keyframeIntervalMs) {
+        setKeyframeInterval(keyframeIntervalMs);
+    }
+
+    /**
+     * @param keyframeIntervalMs how often to send full frame, in milliseconds
+     */
+    public final void setKeyframeInterval(long keyframeIntervalMs) {
+        this.keyframeIntervalNanos = keyframeIntervalMs * 1_000_000L;
+    }
+
+    /**
+     * @param nowNanos current time as per {@link System#nanoTime()}
+     * @return True if full frame should be sent now
+     */
+    public boolean isKeyframeDue(long nowNanos) {
+        return !synced || nowNanos - lastKeyframeNanos >= keyframeIntervalNanos;
+    }
+
+    /**
+     * Returns mask of fields that differ from the acknowledged ones.
+     *
+     * @param frame frame to be sent
+     * @return Mask of dirty fields, 0 if nothing has to be sent
+     */
+    public int dirtyMask(DisplayFrame frame) {
+        int mask = 0;
+        for (DisplayField field : DisplayField.VALUES) {
+            if (frame.get(field) != acknowledged[field.ordinal()]) {
+                mask |= field.getMask();
+            }
+        }
+        return mask;
+    }
+
+    /**
+     * Marks the fields in mask as acknowledged with values from the frame.
+     *
+     * @param frame frame that was sent
+     * @param mask fields that were sent
+     * @param keyframe whether it was full frame
+     * @param nowNanos current time as per {@link System#nanoTime()}
+     */
+    public void acknowledge(DisplayFrame frame, int mask, boolean keyframe, long nowNanos) {
+        for (DisplayField field : DisplayField.VALUES) {
+            if ((mask & field.getMask()) != 0) {
+                acknowledged[field.ordinal()] = frame.get(field);
+            }
+        }
+        if (keyframe) {
+            synced = true;
+            lastKeyframeNanos = nowNanos;
+        }
+    }
+
+    /**
+     * Forgets all acknowledged values, next frame will be a keyframe. Should be called when the link was broken, or the
+     * Arduino was reset.
+     */
+    public void reset() {
+        synced = false;
+    }
+}
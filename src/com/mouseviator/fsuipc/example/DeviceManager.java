@@ -0,0 +1,140 @@
+package com.mouseviator.fsuipc.example;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.logging.Logger;
+
+/**
+ * Owns all Arduino panels. Every device has its own {@link ArduinoWriter} with its own thread, port and field profile, so one
+ * slow, disconnected or wedged board never delays the others. All of them are fed from the same {@link DisplayFrame}, built
+ * once per FSUIPC poll.
+ *
+ * <p>
+ * The devices live independently of the sim connection: they are started once, keep their ports open across sim reconnects and
+ * reopen them when the USB cable is replugged. Ports of devices with {@link DeviceProfile#AUTO_PORT} are found by the shared
+ * {@link PortScanner}. A device is attached to the {@link SimDataSource} only while its port is open, so the fields of missing
+ * devices are not polled.</p>
+ *
+ * @author Murdock
+ */
+public class DeviceManager implements ArduinoWriter.PortListener {
+
+    /**
+     * logger
+     */
+    private static final Logger logger = Logger.getLogger(DeviceManager.class.getName());
+
+    private final SimDataSource source;
+    private final List<ArduinoWriter> devices = new CopyOnWriteArrayList<>();
+    private final PortScanner portScanner = new PortScanner();
+
+    /**
+     * Creates new device manager.
+     *
+     * @param source source to attach open devices to, may be null if the samples are fed by other means
+     */
+    public DeviceManager(SimDataSource source) {
+        this.source = source;
+    }
+
+    /**
+     * Adds new device. The device is not started, see {@link #start()}.
+     *
+     * @param profile profile of the device
+     * @return Writer of the added device
+     */
+    public ArduinoWriter addDevice(DeviceProfile profile) {
+        if (!profile.isAutoPort()) {
+            //keep the scanner away from it
+            portScanner.reserve(profile.getPortName());
+        }
+        ArduinoWriter writer = new ArduinoWriter(profile, this, portScanner);
+        devices.add(writer);
+        return writer;
+    }
+
+    /**
+     * Adds new device with buttons or encoders, their commands are sent to the source of this manager. The device is not started,
+     * see {@link #start()}.
+     *
+     * @param profile profile of the device
+     * @param bindings what the inputs of the device do
+     * @return Writer of the added device
+     */
+    public ArduinoWriter addDevice(DeviceProfile profile, InputBindings bindings) {
+        ArduinoWriter writer = addDevice(profile);
+        if (source != null) {
+            writer.setInput(bindings, source);
+        }
+        return writer;
+    }
+
+    /**
+     * @return All devices
+     */
+    public List<ArduinoWriter> getDevices() {
+        return Collections.unmodifiableList(devices);
+    }
+
+    /**
+     * Starts all devices. Returns immediately, the ports are opened by the device threads.
+     */
+    public void start() {
+        for (ArduinoWriter device : devices) {
+            device.start();
+        }
+    }
+
+    /**
+     * Stops all devices and closes their ports. Needed only when the application exits, the devices do not care about the sim
+     * connection.
+     */
+    public void stop() {
+        for (ArduinoWriter device : devices) {
+            device.stop();
+        }
+    }
+
+    /**
+     * Publishes the frame to all devices. Never blocks on serial ports.
+     *
+     * @param frame frame to publish, values are copied
+     */
+    public void publish(DisplayFrame frame) {
+        for (ArduinoWriter device : devices) {
+            if (device.isOpen()) {
+                device.publish(frame);
+            }
+        }
+    }
+
+    /**
+     * Publishes the frame to the priority lane of all devices - it is sent as soon as the current write finishes, without waiting
+     * for the send window. For alerts, not for routine frames. Never blocks on serial ports.
+     *
+     * @param frame frame to publish, values are copied
+     */
+    public void publishUrgent(DisplayFrame frame) {
+        for (ArduinoWriter device : devices) {
+            if (device.isOpen()) {
+                device.publishUrgent(frame);
+            }
+        }
+    }
+
+    @Override
+    public void portOpened(ArduinoWriter writer) {
+        if (source != null) {
+            source.attach(writer);
+        }
+    }
+
+    @Override
+    public void portClosed(ArduinoWriter writer) {
+        if (source != null) {
+            source.detach(writer);
+        }
+        logger.info("Device " + writer.getProfile() + " detached");
+    }
+}
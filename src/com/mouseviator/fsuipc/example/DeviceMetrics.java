@@ -0,0 +1,223 @@
+package com.mouseviator.fsuipc.example;
+
+/**
+ * Metrics of one Arduino device: frame counts, bytes written and per-stage latency of the frames, from the sim sample to the
+ * bytes written to the port.
+ *
+ * <p>
+ * The counters have a single writer each - the publisher under the writer lock, or the writer thread - so they are plain volatile
+ * fields, no atomic operations on the hot path.</p>
+ *
+ * @author Murdock
+ */
+public class DeviceMetrics implements DeviceMetricsMXBean {
+
+    private static final long RATE_WINDOW_NANOS = 1_000_000_000L;
+
+    private final DeviceProfile profile;
+    private final SerialLink link;
+
+    private volatile long framesPublished = 0;
+    private volatile long framesCoalesced = 0;
+    private volatile long framesUrgent = 0;
+    private volatile long framesSent = 0;
+    private volatile long framesDropped = 0;
+    private volatile long bytesWritten = 0;
+    private volatile long bytesPerSecond = 0;
+    private long rateWindowStart = Long.MIN_VALUE;
+    private long rateWindowBytes = 0;
+
+    private final LatencyHistogram sampleToWire = new LatencyHistogram();
+    private final LatencyHistogram handoff = new LatencyHistogram();
+    private final LatencyHistogram format = new LatencyHistogram();
+    private final LatencyHistogram write = new LatencyHistogram();
+
+    /**
+     * @param profile device the metrics are for
+     * @param link link to the device
+     */
+    DeviceMetrics(DeviceProfile profile, SerialLink link) {
+        this.profile = profile;
+        this.link = link;
+    }
+
+    /**
+     * Called under the writer lock.
+     *
+     * @param coalesced true if the frame replaced frame that was not sent yet
+     */
+    void framePublished(boolean coalesced) {
+        framesPublished++;
+        if (coalesced) {
+            framesCoalesced++;
+        }
+    }
+
+    /**
+     * Called under the writer lock, after {@link #framePublished(boolean)}, for frames published to the priority lane.
+     */
+    void urgentFramePublished() {
+        framesUrgent++;
+    }
+
+    /**
+     * Called from the writer thread when a frame was written.
+     *
+     * @param bytes number of bytes written
+     * @param sampleNanos time of the sim sample the frame was made of, 0 if none
+     * @param publishedNanos time the frame was published to the writer, 0 if it was not (resend of deferred fields)
+     * @param takenNanos time the writer thread took the frame
+     * @param encodedNanos time the frame was encoded
+     * @param writtenNanos time the write returned
+     */
+    void frameSent(int bytes, long sampleNanos, long publishedNanos, long takenNanos, long encodedNanos, long writtenNanos) {
+        framesSent++;
+        bytesWritten += bytes;
+        if (sampleNanos != 0) {
+            sampleToWire.record(writtenNanos - sampleNanos);
+        }
+        if (publishedNanos != 0) {
+            handoff.record(takenNanos - publishedNanos);
+        }
+        format.record(encodedNanos - takenNanos);
+        write.record(writtenNanos - encodedNanos);
+
+        if (rateWindowStart == Long.MIN_VALUE) {
+            rateWindowStart = writtenNanos;
+        }
+        rateWindowBytes += bytes;
+        long elapsed = writtenNanos - rateWindowStart;
+        if (elapsed >= RATE_WINDOW_NANOS) {
+            bytesPerSecond = rateWindowBytes * 1_000_000_000L / elapsed;
+            rateWindowStart = writtenNanos;
+            rateWindowBytes = 0;
+        }
+    }
+
+    /**
+     * Called when a frame failed to write, or was discarded by stopping the writer.
+     */
+    void frameDropped() {
+        framesDropped++;
+    }
+
+    /**
+     * @return Device the metrics are for
+     */
+    public DeviceProfile getProfile() {
+        return profile;
+    }
+
+    /**
+     * @return Time from sim sample to frame written, frames with extrapolated heading are not counted
+     */
+    public LatencyHistogram getSampleToWire() {
+        return sampleToWire;
+    }
+
+    /**
+     * @return Time frames waited for the writer thread
+     */
+    public LatencyHistogram getHandoff() {
+        return handoff;
+    }
+
+    /**
+     * @return Frame encoding time
+     */
+    public LatencyHistogram getFormat() {
+        return format;
+    }
+
+    /**
+     * @return Serial write time
+     */
+    public LatencyHistogram getWrite() {
+        return write;
+    }
+
+    @Override
+    public String getPort() {
+        return profile.getPortName();
+    }
+
+    @Override
+    public long getFramesPublished() {
+        return framesPublished;
+    }
+
+    @Override
+    public long getFramesCoalesced() {
+        return framesCoalesced;
+    }
+
+    @Override
+    public long getFramesUrgent() {
+        return framesUrgent;
+    }
+
+    @Override
+    public long getFramesSent() {
+        return framesSent;
+    }
+
+    @Override
+    public long getFramesDropped() {
+        return framesDropped;
+    }
+
+    @Override
+    public long getBytesWritten() {
+        return bytesWritten;
+    }
+
+    @Override
+    public long getBytesPerSecond() {
+        return bytesPerSecond;
+    }
+
+    @Override
+    public long getLinkThroughputEstimate() {
+        return link.getThroughputEstimate();
+    }
+
+    @Override
+    public long getAckTimeouts() {
+        return link.getAckTimeouts();
+    }
+
+    @Override
+    public long getWriteDeadlineMisses() {
+        return link.getDeadlineMisses();
+    }
+
+    @Override
+    public long getSampleToWireP50Micros() {
+        return sampleToWire.getPercentileMicros(50);
+    }
+
+    @Override
+    public long getSampleToWireP99Micros() {
+        return sampleToWire.getPercentileMicros(99);
+    }
+
+    @Override
+    public long getSampleToWireMaxMicros() {
+        return sampleToWire.getMaxNanos() / 1000;
+    }
+
+    @Override
+    public long getHandoffP99Micros() {
+        return handoff.getPercentileMicros(99);
+    }
+
+    @Override
+    public long getFormatP99Micros() {
+        return format.getPercentileMicros(99);
+    }
+
+    @Override
+    public long getWriteP99Micros() {
+        return write.getPercentileMicros(99);
+    }
+}
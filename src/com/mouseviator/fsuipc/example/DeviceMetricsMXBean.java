@@ -0,0 +1,94 @@
+package com.mouseviator.fsuipc.example;
+
+/**
+ * JMX view of {@link DeviceMetrics}.
+ *
+ * @author Murdock
+ */
+public interface DeviceMetricsMXBean {
+
+    /**
+     * @return Serial port of the device
+     */
+    String getPort();
+
+    /**
+     * @return Number of frames published to the device
+     */
+    long getFramesPublished();
+
+    /**
+     * @return Number of frames replaced by newer frame before they could be sent
+     */
+    long getFramesCoalesced();
+
+    /**
+     * @return Number of frames published to the priority lane (alerts)
+     */
+    long getFramesUrgent();
+
+    /**
+     * @return Number of frames written to the port
+     */
+    long getFramesSent();
+
+    /**
+     * @return Number of frames that failed to write or were discarded
+     */
+    long getFramesDropped();
+
+    /**
+     * @return Number of bytes written to the port
+     */
+    long getBytesWritten();
+
+    /**
+     * @return Bytes written per second, over the last second or so
+     */
+    long getBytesPerSecond();
+
+    /**
+     * @return Estimated throughput of the link, bytes per second
+     */
+    long getLinkThroughputEstimate();
+
+    /**
+     * @return Number of frames the sketch did not acknowledge in time
+     */
+    long getAckTimeouts();
+
+    /**
+     * @return Number of frames not written before their deadline
+     */
+    long getWriteDeadlineMisses();
+
+    /**
+     * @return Median time from sim sample to frame written, microseconds
+     */
+    long getSampleToWireP50Micros();
+
+    /**
+     * @return 99th percentile of time from sim sample to frame written, microseconds
+     */
+    long getSampleToWireP99Micros();
+
+    /**
+     * @return Longest time from sim sample to frame written, microseconds
+     */
+    long getSampleToWireMaxMicros();
+
+    /**
+     * @return 99th percentile of time frames waited for the writer thread, microseconds
+     */
+    long getHandoffP99Micros();
+
+    /**
+     * @return 99th percentile of frame encoding time, microseconds
+     */
+    long getFormatP99Micros();
+
+    /**
+     * @return 99th percentile of serial write time, microseconds
+     */
+    long getWriteP99Micros();
+}
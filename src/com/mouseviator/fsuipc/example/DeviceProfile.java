@@ -0,0 +1,144 @@
+package com.mouseviator.fsuipc.example;
+
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.Set;
+
+/**
+ * Configuration of one Arduino panel - which serial port it is on, and what it shows.
+ *
+ * @author Murdock
+ */
+public class DeviceProfile {
+
+    /**
+     * Default connection speed of the Arduino sketches
+     */
+    public static final int DEFAULT_BAUD_RATE = 9600;
+    /**
+     * Port name of devices whose port is found by the {@link PortScanner}
+     */
+    public static final String AUTO_PORT = "auto";
+
+    private final String name;
+    private final String portName;
+    private final int baudRate;
+    private final Set<DisplayField> fields;
+    private final boolean deltaMode;
+    private final boolean binaryProtocol;
+    private final boolean ackFlowControl;
+    private final SerialLink.Policy linkPolicy;
+
+    /**
+     * Creates new device profile.
+     *
+     * @param name name of the device, used in logs and thread names
+     * @param portName serial port name, like COM5, or {@link #AUTO_PORT}
+     * @param baudRate serial port speed
+     * @param fields fields the device shows
+     * @param deltaMode true to send only changed fields, see {@link ArduinoWriter}
+     * @param binaryProtocol true to use {@link BinaryFrameEncoder}, false for {@link AsciiFrameEncoder}
+     */
+    public DeviceProfile(String name, String portName, int baudRate, Set<DisplayField> fields, boolean deltaMode, boolean binaryProtocol) {
+        this(name, portName, baudRate, fields, deltaMode, binaryProtocol, false, SerialLink.Policy.COALESCE);
+    }
+
+    /**
+     * Creates new device profile.
+     *
+     * @param name name of the device, used in logs and thread names
+     * @param portName serial port name, like COM5, or {@link #AUTO_PORT}
+     * @param baudRate serial port speed
+     * @param fields fields the device shows
+     * @param deltaMode true to send only changed fields, see {@link ArduinoWriter}
+     * @param binaryProtocol true to use {@link BinaryFrameEncoder}, false for {@link AsciiFrameEncoder}
+     * @param ackFlowControl true if the sketch acknowledges frames, see {@link SerialLink}
+     * @param linkPolicy what to do with frames while the link is busy
+     */
+    public DeviceProfile(String name, String portName, int baudRate, Set<DisplayField> fields, boolean deltaMode, boolean binaryProtocol,
+            boolean ackFlowControl, SerialLink.Policy linkPolicy) {
+        this.name = name;
+        this.portName = portName;
+        this.baudRate = baudRate;
+        this.fields = Collections.unmodifiableSet(EnumSet.copyOf(fields));
+        this.deltaMode = deltaMode;
+        this.binaryProtocol = binaryProtocol;
+        this.ackFlowControl = ackFlowControl;
+        this.linkPolicy = linkPolicy;
+    }
+
+    /**
+     * @return Name of the device
+     */
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * @return Serial port name
+     */
+    public String getPortName() {
+        return portName;
+    }
+
+    /**
+     * @return True if the port is found by the {@link PortScanner}
+     */
+    public boolean isAutoPort() {
+        return AUTO_PORT.equals(portName);
+    }
+
+    /**
+     * @return Serial port speed
+     */
+    public int getBaudRate() {
+        return baudRate;
+    }
+
+    /**
+     * @return Fields the device shows
+     */
+    public Set<DisplayField> getFields() {
+        return fields;
+    }
+
+    /**
+     * @return True if only changed fields are sent
+     */
+    public boolean isDeltaMode() {
+        return deltaMode;
+    }
+
+    /**
+     * @return True if binary protocol is used
+     */
+    public boolean isBinaryProtocol() {
+        return binaryProtocol;
+    }
+
+    /**
+     * @return True if the sketch acknowledges frames
+     */
+    public boolean isAckFlowControl() {
+        return ackFlowControl;
+    }
+
+    /**
+     * @return What to do with frames while the link is busy
+     */
+    public SerialLink.Policy getLinkPolicy() {
+        return linkPolicy;
+    }
+
+    /**
+     * @return New frame encoder for this device
+     */
+    public FrameEncoder createEncoder() {
+        return binaryProtocol ? new BinaryFrameEncoder() : new AsciiFrameEncoder();
+    }
+
+    @Override
+    public String toString() {
+        return name + " (" + portName + ")";
+    }
+}
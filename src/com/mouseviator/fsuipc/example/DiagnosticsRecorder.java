@@ -0,0 +1,124 @@
+package com.mouseviator.fsuipc.example;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.nio.file.Paths;
+import java.text.ParseException;
+import java.time.Duration;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import javax.management.JMException;
+import javax.management.ObjectName;
+import jdk.jfr.Configuration;
+import jdk.jfr.Recording;
+
+/**
+ * Always-on, low overhead flight recorder: a Java Flight Recorder recording of the {@link SimEvents} plus the JDK "default"
+ * profile (GC, threads, I/O), kept as a ring of the last {@link #DEFAULT_MAX_AGE} in the JFR repository. Nothing is written out
+ * until asked for, by {@link #dump(String)} or through JMX ({@code com.mouseviator.fsuipc.example:type=FlightRecorder}).
+ *
+ * @author Murdock
+ */
+public class DiagnosticsRecorder implements DiagnosticsRecorderMXBean {
+
+    /**
+     * How far back the ring reaches
+     */
+    public static final Duration DEFAULT_MAX_AGE = Duration.ofMinutes(15);
+    /**
+     * Upper bound of the ring on disk
+     */
+    public static final long DEFAULT_MAX_SIZE = 64L * 1024 * 1024;
+
+    /**
+     * logger
+     */
+    private static final Logger logger = Logger.getLogger(DiagnosticsRecorder.class.getName());
+
+    private final Duration maxAge;
+    private Recording recording;
+
+    /**
+     * Creates recorder with the default ring length.
+     */
+    public DiagnosticsRecorder() {
+        this(DEFAULT_MAX_AGE);
+    }
+
+    /**
+     * @param maxAge how far back the ring reaches
+     */
+    public DiagnosticsRecorder(Duration maxAge) {
+        this.maxAge = maxAge;
+    }
+
+    /**
+     * Starts the recording.
+     *
+     * @return False if the JVM has no flight recorder or the recording cannot be started
+     */
+    public synchronized boolean start() {
+        if (recording != null) {
+            return true;
+        }
+        try {
+            Recording newRecording = new Recording(Configuration.getConfiguration("default"));
+            newRecording.setName("FSUIPC flight recorder");
+            newRecording.setToDisk(true);
+            newRecording.setMaxAge(maxAge);
+            newRecording.setMaxSize(DEFAULT_MAX_SIZE);
+            newRecording.enable(SimEvents.PollCycle.class);
+            newRecording.enable(SimEvents.FsuipcFailure.class);
+            newRecording.enable(SimEvents.Connection.class);
+            newRecording.enable(SimEvents.FrameEncoded.class);
+            newRecording.enable(SimEvents.SerialWrite.class);
+            newRecording.start();
+            recording = newRecording;
+            return true;
+        } catch (IOException | ParseException | IllegalStateException | SecurityException ex) {
+            logger.log(Level.WARNING, "Failed to start flight recording", ex);
+            return false;
+        }
+    }
+
+    /**
+     * Stops and discards the recording.
+     */
+    public synchronized void stop() {
+        if (recording != null) {
+            recording.close();
+            recording = null;
+        }
+    }
+
+    /**
+     * Registers the recorder to the platform MBean server, so the recording can be dumped from JConsole.
+     */
+    public void registerJmx() {
+        try {
+            ManagementFactory.getPlatformMBeanServer().registerMBean(this,
+                    new ObjectName(MetricsServer.JMX_DOMAIN + ":type=FlightRecorder"));
+        } catch (JMException ex) {
+            logger.log(Level.WARNING, "Failed to register flight recorder MBean", ex);
+        }
+    }
+
+    @Override
+    public synchronized boolean isRecording() {
+        return recording != null;
+    }
+
+    @Override
+    public long getMaxAgeSeconds() {
+        return maxAge.getSeconds();
+    }
+
+    @Override
+    public synchronized void dump(String file) throws IOException {
+        if (recording == null) {
+            throw new IOException("Flight recording is not running");
+        }
+        recording.dump(Paths.get(file));
+        logger.info("Flight recording dumped to " + file);
+    }
+}
@@ -0,0 +1,29 @@
+package com.mouseviator.fsuipc.example;
+
+import java.io.IOException;
+
+/**
+ * JMX view of {@link DiagnosticsRecorder}.
+ *
+ * @author Murdock
+ */
+public interface DiagnosticsRecorderMXBean {
+
+    /**
+     * @return True if the recording is running
+     */
+    boolean isRecording();
+
+    /**
+     * @return How far back the recording reaches, in seconds
+     */
+    long getMaxAgeSeconds();
+
+    /**
+     * Writes what the recording has to a file, for JDK Mission Control.
+     *
+     * @param file file to write, .jfr
+     * @throws IOException when the file cannot be written
+     */
+    void dump(String file) throws IOException;
+}
@@ -0,0 +1,51 @@
+package com.mouseviator.fsuipc.example;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+
+/**
+ * {@link TileStore} reading tiles from a directory tree in the usual {@code <zoom>/<x>/<y>.png} layout, as written by most tile
+ * downloaders (or an unpacked MBTiles export). No network is ever touched, tiles that are not there are shown blank.
+ *
+ * @author Murdock
+ */
+public class DirectoryTileStore implements TileStore {
+
+    private final Path root;
+    private final String extension;
+
+    /**
+     * Creates store of PNG tiles.
+     *
+     * @param root directory containing the zoom level directories
+     */
+    public DirectoryTileStore(Path root) {
+        this(root, ".png");
+    }
+
+    /**
+     * @param root directory containing the zoom level directories
+     * @param extension extension of the tile files, with the dot
+     */
+    public DirectoryTileStore(Path root, String extension) {
+        this.root = root;
+        this.extension = extension;
+    }
+
+    @Override
+    public byte[] read(int zoom, int x, int y) throws IOException {
+        Path file = root.resolve(Integer.toString(zoom)).resolve(Integer.toString(x)).resolve(y + extension);
+        try {
+            return Files.readAllBytes(file);
+        } catch (NoSuchFileException ex) {
+            return null;
+        }
+    }
+
+    @Override
+    public String toString() {
+        return root.toString();
+    }
+}
@@ -0,0 +1,101 @@
+package com.mouseviator.fsuipc.example;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.Set;
+
+/**
+ * Fields shown on the Arduino display, in the order they are sent in a full frame.
+ *
+ * @author Murdock
+ */
+public enum DisplayField {
+    /**
+     * COM1 active frequency in kHz
+     */
+    COM1_FREQUENCY('F', SimField.COM1_FREQUENCY_HZ),
+    /**
+     * COM1 standby frequency in kHz
+     */
+    COM1_STANDBY('S', SimField.COM1_STANDBY_HZ),
+    /**
+     * Magnetic heading in whole degrees, 0 - 359
+     */
+    HEADING('H', SimField.HEADING, SimField.MAGNETIC_VARIATION),
+    /**
+     * Nose gear state, one of the DisplayFrame.GEAR_* constants
+     */
+    GEAR_NOSE('N', SimField.GEAR_NOSE),
+    /**
+     * Left gear state, one of the DisplayFrame.GEAR_* constants
+     */
+    GEAR_LEFT('L', SimField.GEAR_LEFT),
+    /**
+     * Right gear state, one of the DisplayFrame.GEAR_* constants
+     */
+    GEAR_RIGHT('R', SimField.GEAR_RIGHT),
+    /**
+     * Mask of active {@link Alert}s, bit = alert ordinal. Set from the {@link AlertEngine}, not from sim fields directly.
+     */
+    ALERTS('A');
+
+    /**
+     * Cached values() array, so we do not copy it every time
+     */
+    static final DisplayField[] VALUES = values();
+    /**
+     * Bit mask with bits of all fields set
+     */
+    static final int ALL_MASK = (1 << VALUES.length) - 1;
+    /**
+     * Fields of the original 16x2 LCD sketch, all but the alerts
+     */
+    public static final Set<DisplayField> LCD_FIELDS = Collections.unmodifiableSet(EnumSet.range(COM1_FREQUENCY, GEAR_RIGHT));
+
+    private final char tag;
+    private final SimField[] sources;
+
+    private DisplayField(char tag, SimField... sources) {
+        this.tag = tag;
+        this.sources = sources;
+    }
+
+    /**
+     * @return Character identifying the field in delta updates
+     */
+    public char getTag() {
+        return tag;
+    }
+
+    /**
+     * @return Bit of this field in field masks
+     */
+    public int getMask() {
+        return 1 << ordinal();
+    }
+
+    /**
+     * @param fields display fields
+     * @return Mask with bits of all the fields set
+     */
+    public static int mask(Set<DisplayField> fields) {
+        int mask = 0;
+        for (DisplayField field : fields) {
+            mask |= field.getMask();
+        }
+        return mask;
+    }
+
+    /**
+     * @param fields display fields
+     * @return Sim fields that have to be read to show the display fields
+     */
+    public static Set<SimField> requiredSimFields(Set<DisplayField> fields) {
+        Set<SimField> simFields = EnumSet.noneOf(SimField.class);
+        for (DisplayField field : fields) {
+            simFields.addAll(Arrays.asList(field.sources));
+        }
+        return simFields;
+    }
+}
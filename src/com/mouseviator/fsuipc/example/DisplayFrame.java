@@ -0,0 +1,104 @@
+package com.mouseviator.fsuipc.example;
+
+/**
+ * One snapshot of the values shown on the Arduino display. Values are kept as display level integers (see {@link DisplayField}),
+ * the text formatting is done by the {@link ArduinoWriter} on its own thread.
+ *
+ * @author Murdock
+ */
+public class DisplayFrame {
+
+    /**
+     * Gear position when fully extended/retracted as reported by FSUIPC
+     */
+    public static final int GEAR_MINIMUMVALUE = 0;
+    public static final int GEAR_MAXIMUMVALUE = 16383;
+
+    /**
+     * Gear states as sent to display. Position 0 is displayed as "On", 16383 as "Off", anything in between as "Moving".
+     */
+    public static final int GEAR_ON = 0;
+    public static final int GEAR_OFF = 1;
+    public static final int GEAR_MOVING = 2;
+
+    private final int[] values = new int[DisplayField.VALUES.length];
+    /**
+     * Time of the sim sample the values come from, System.nanoTime(), 0 if unknown
+     */
+    private long timeNanos = 0;
+
+    /**
+     * Sets all values of this frame from raw sim values.
+     *
+     * @param com1FrequencyHz COM1 active frequency in Hz
+     * @param com1StandbyHz COM1 standby frequency in Hz
+     * @param heading magnetic heading in degrees
+     * @param gearNose nose gear position
+     * @param gearLeft left gear position
+     * @param gearRight right gear position
+     */
+    public void set(int com1FrequencyHz, int com1StandbyHz, int heading, int gearNose, int gearLeft, int gearRight) {
+        values[DisplayField.COM1_FREQUENCY.ordinal()] = com1FrequencyHz / 1000;
+        values[DisplayField.COM1_STANDBY.ordinal()] = com1StandbyHz / 1000;
+        values[DisplayField.HEADING.ordinal()] = heading;
+        values[DisplayField.GEAR_NOSE.ordinal()] = gearState(gearNose);
+        values[DisplayField.GEAR_LEFT.ordinal()] = gearState(gearLeft);
+        values[DisplayField.GEAR_RIGHT.ordinal()] = gearState(gearRight);
+    }
+
+    /**
+     * @param field field to get
+     * @return Display value of the field
+     */
+    public int get(DisplayField field) {
+        return values[field.ordinal()];
+    }
+
+    /**
+     * @param field field to set
+     * @param value display value of the field
+     */
+    public void set(DisplayField field, int value) {
+        values[field.ordinal()] = value;
+    }
+
+    /**
+     * @return Time of the sim sample the values come from, System.nanoTime(), 0 if unknown or the heading is extrapolated
+     */
+    public long getTimeNanos() {
+        return timeNanos;
+    }
+
+    /**
+     * @param timeNanos time of the sim sample the values come from, System.nanoTime()
+     */
+    public void setTimeNanos(long timeNanos) {
+        this.timeNanos = timeNanos;
+    }
+
+    /**
+     * Copies all values and the time from other frame to this one.
+     *
+     * @param other the frame to copy values from
+     */
+    public void copyFrom(DisplayFrame other) {
+        System.arraycopy(other.values, 0, values, 0, values.length);
+        timeNanos = other.timeNanos;
+    }
+
+    /**
+     * Converts gear position as reported by FSUIPC to display gear state.
+     *
+     * @param gearPos gear position, 0 - 16383
+     * @return One of GEAR_ON, GEAR_OFF, GEAR_MOVING
+     */
+    public static int gearState(int gearPos) {
+        if (gearPos == GEAR_MINIMUMVALUE) {
+            return GEAR_ON;
+        } else if (gearPos == GEAR_MAXIMUMVALUE) {
+            return GEAR_OFF;
+        } else {
+            return GEAR_MOVING;
+        }
+    }
+}
@@ -0,0 +1,258 @@
+package com.mouseviator.fsuipc.example;
+
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Turns simulator samples into {@link DisplayFrame}s and publishes them to the Arduino devices. Each device shows different
+ * fields, so the frame is filled with what is in the sample, the devices send only what they show.
+ *
+ * <p>
+ * When the {@link AlertEngine} reports that an alert was raised or cleared (gear leg started or stopped moving, oil pressure
+ * dropped, pause or slew toggled), the frame goes to the devices' priority lane, so it is sent right away instead of waiting for
+ * the link to open or being coalesced with routine frames.</p>
+ *
+ * <p>
+ * With heading refresh on, the pipeline has its own thread that, between polls, republishes the last frame with the heading
+ * extrapolated by {@link HeadingExtrapolator}, every {@link #getHeadingRefreshMs()}, whenever the displayed degree changes. Each
+ * polled sample then snaps the heading back to the true value. Start the thread with {@link #start()}.</p>
+ *
+ * @author Murdock
+ */
+public class DisplayPipeline implements SimSampleListener, Runnable {
+
+    /**
+     * Default interval of extrapolated heading updates, a few per poll of the FAST group
+     */
+    public static final long DEFAULT_HEADING_REFRESH_MS = 100;
+
+    private final DeviceManager deviceManager;
+    /**
+     * Alerts to watch, may be null
+     */
+    private final AlertEngine alertEngine;
+    /**
+     * Lock guarding the frame and the extrapolator, the samples and the refresh thread both publish
+     */
+    private final Object lock = new Object();
+    /**
+     * Frame reused for publishing values to the devices
+     */
+    private final DisplayFrame displayFrame = new DisplayFrame();
+    /**
+     * All values seen so far, samples carry only the fields polled in their cycle
+     */
+    private final SimSample latest = new SimSample();
+    /**
+     * Heading between polls, null if heading refresh is off
+     */
+    private final HeadingExtrapolator headingExtrapolator;
+    private final long headingRefreshMs;
+
+    private volatile boolean running = false;
+    private Thread thread;
+
+    /**
+     * Creates new pipeline.
+     *
+     * @param deviceManager devices to publish the frames to
+     */
+    public DisplayPipeline(DeviceManager deviceManager) {
+        this(deviceManager, null);
+    }
+
+    /**
+     * Creates new pipeline with alerts. The alert engine must be attached to the source separately, so its fields are polled.
+     *
+     * @param deviceManager devices to publish the frames to
+     * @param alertEngine alerts to watch and show, may be null
+     */
+    public DisplayPipeline(DeviceManager deviceManager, AlertEngine alertEngine) {
+        this(deviceManager, alertEngine, 0);
+    }
+
+    /**
+     * Creates new pipeline with alerts and heading refresh between polls.
+     *
+     * @param deviceManager devices to publish the frames to
+     * @param alertEngine alerts to watch and show, may be null
+     * @param headingRefreshMs interval of extrapolated heading updates, 0 for none
+     */
+    public DisplayPipeline(DeviceManager deviceManager, AlertEngine alertEngine, long headingRefreshMs) {
+        this.deviceManager = deviceManager;
+        this.alertEngine = alertEngine;
+        this.headingRefreshMs = headingRefreshMs;
+        this.headingExtrapolator = headingRefreshMs > 0 ? new HeadingExtrapolator() : null;
+    }
+
+    /**
+     * @return Interval of extrapolated heading updates, 0 if off
+     */
+    public long getHeadingRefreshMs() {
+        return headingRefreshMs;
+    }
+
+    @Override
+    public void onSample(SimSample sample) {
+        synchronized (lock) {
+            //slow fields (magnetic variation) are not in every sample, the heading needs the last one
+            latest.merge(sample);
+            fillFrame(latest, displayFrame);
+            displayFrame.setTimeNanos(sample.getTimeNanos());
+            if (headingExtrapolator != null && sample.has(SimField.HEADING)) {
+                headingExtrapolator.update(magneticHeadingDegrees(latest), sample.getTimeNanos(), isFrozen(latest));
+            }
+            if (alertEngine != null && alertEngine.evaluate(sample)) {
+                displayFrame.set(DisplayField.ALERTS, alertEngine.getActiveMask());
+                deviceManager.publishUrgent(displayFrame);
+            } else {
+                deviceManager.publish(displayFrame);
+            }
+        }
+    }
+
+    /**
+     * Clears the alerts and shows it on the devices right away, when the sim disconnects - nothing would clear them otherwise.
+     */
+    public void resetAlerts() {
+        if (alertEngine == null) {
+            return;
+        }
+        synchronized (lock) {
+            alertEngine.reset();
+            displayFrame.set(DisplayField.ALERTS, 0);
+            displayFrame.setTimeNanos(0);
+            deviceManager.publishUrgent(displayFrame);
+        }
+    }
+
+    /**
+     * Starts the heading refresh thread, if heading refresh is on.
+     */
+    public synchronized void start() {
+        if (running || headingExtrapolator == null) {
+            return;
+        }
+        running = true;
+        thread = new Thread(this, "Heading refresh");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * Stops the heading refresh thread.
+     */
+    public synchronized void stop() {
+        if (!running) {
+            return;
+        }
+        running = false;
+        thread.interrupt();
+        try {
+            thread.join(1000);
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        }
+        thread = null;
+    }
+
+    @Override
+    public void run() {
+        long periodNanos = headingRefreshMs * 1_000_000L;
+        long next = System.nanoTime();
+        while (running) {
+            long wait;
+            while ((wait = next - System.nanoTime()) > 0 && running) {
+                LockSupport.parkNanos(wait);
+            }
+            next += periodNanos;
+            if (running) {
+                refreshHeading(System.nanoTime());
+            }
+        }
+    }
+
+    /**
+     * Publishes the last frame with extrapolated heading, if it shows different degree than what was published last.
+     */
+    private void refreshHeading(long nowNanos) {
+        synchronized (lock) {
+            if (!headingExtrapolator.hasHeading()) {
+                return;
+            }
+            int heading = displayHeading(headingExtrapolator.predict(nowNanos));
+            if (heading == displayFrame.get(DisplayField.HEADING)) {
+                return;
+            }
+            displayFrame.set(DisplayField.HEADING, heading);
+            //not made of a sample, must not count as sample to wire latency, next sample sets the time again
+            displayFrame.setTimeNanos(0);
+            deviceManager.publish(displayFrame);
+        }
+    }
+
+    /**
+     * Copies the display values present in the sample to the frame, values missing in the sample are left as they were.
+     *
+     * @param sample sample to take the values from
+     * @param frame frame to fill
+     */
+    static void fillFrame(SimSample sample, DisplayFrame frame) {
+        if (sample.has(SimField.HEADING)) {
+            frame.set(DisplayField.HEADING, magneticHeading(sample));
+        }
+        if (sample.has(SimField.COM1_FREQUENCY_HZ)) {
+            frame.set(DisplayField.COM1_FREQUENCY, sample.getInt(SimField.COM1_FREQUENCY_HZ) / 1000);
+        }
+        if (sample.has(SimField.COM1_STANDBY_HZ)) {
+            frame.set(DisplayField.COM1_STANDBY, sample.getInt(SimField.COM1_STANDBY_HZ) / 1000);
+        }
+        if (sample.has(SimField.GEAR_NOSE)) {
+            frame.set(DisplayField.GEAR_NOSE, DisplayFrame.gearState(sample.getInt(SimField.GEAR_NOSE)));
+        }
+        if (sample.has(SimField.GEAR_LEFT)) {
+            frame.set(DisplayField.GEAR_LEFT, DisplayFrame.gearState(sample.getInt(SimField.GEAR_LEFT)));
+        }
+        if (sample.has(SimField.GEAR_RIGHT)) {
+            frame.set(DisplayField.GEAR_RIGHT, DisplayFrame.gearState(sample.getInt(SimField.GEAR_RIGHT)));
+        }
+    }
+
+    /**
+     * @param sample sample with heading and magnetic variation
+     * @return Magnetic heading in whole degrees, 0 - 359
+     */
+    static int magneticHeading(SimSample sample) {
+        return displayHeading(magneticHeadingDegrees(sample));
+    }
+
+    /**
+     * @param sample sample with heading and magnetic variation
+     * @return Magnetic heading in degrees, not rounded, may be out of 0 - 360
+     */
+    static double magneticHeadingDegrees(SimSample sample) {
+        return sample.getFloat(SimField.HEADING) - sample.getFloat(SimField.MAGNETIC_VARIATION);
+    }
+
+    /**
+     * @param degrees heading in degrees, -360 - 720
+     * @return Heading in whole degrees, 0 - 359
+     */
+    static int displayHeading(double degrees) {
+        int heading = (int) Math.round(degrees);
+        if (heading > 359) {
+            heading = heading - 360;
+        } else if (heading < 0) {
+            heading = heading + 360;
+        }
+        return heading;
+    }
+
+    /**
+     * @param sample the sample
+     * @return True if the sample says the sim is paused or slewing, the aircraft does not turn on its own then
+     */
+    private static boolean isFrozen(SimSample sample) {
+        return (sample.has(SimField.PAUSE_INDICATOR) && sample.getInt(SimField.PAUSE_INDICATOR) != 0)
+                || (sample.has(SimField.SLEW_MODE) && sample.getInt(SimField.SLEW_MODE) != 0);
+    }
+}
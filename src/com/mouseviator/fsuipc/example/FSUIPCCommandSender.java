@@ -0,0 +1,205 @@
+package com.mouseviator.fsuipc.example;
+
+import com.mouseviator.fsuipc.FSUIPC;
+import com.mouseviator.fsuipc.datarequest.IDataRequest;
+import com.mouseviator.fsuipc.datarequest.advanced.FSControlRequest;
+import com.mouseviator.fsuipc.datarequest.primitives.IntRequest;
+import java.util.concurrent.locks.LockSupport;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Carries out {@link SimCommand}s through FSUIPC on its own thread, in the order they came. Commands are queued in a
+ * {@link CommandQueue}, where repeats of the same command are counted, so an encoder turned by several detents while the previous
+ * batch was being processed becomes one batch of requests. The thread wakes up as soon as a
+ * command arrives and sends everything pending with single {@code processRequestsOnce} call, so a knob reaches the sim in
+ * milliseconds, not after the next poll.
+ *
+ * <p>
+ * The thread also restarts FSUIPC continual processing when the {@link PollScheduler} wants another period, the processing
+ * thread cannot restart itself from its own callback.</p>
+ *
+ * @author Murdock
+ */
+class FSUIPCCommandSender implements Runnable {
+
+    /**
+     * FS controls, see "List of FSX and P3D controls" in FSUIPC documentation
+     */
+    private static final int CONTROL_SLEW_TOGGLE = 65557;
+    private static final int CONTROL_GEAR_TOGGLE = 65570;
+    private static final int CONTROL_COM_RADIO_WHOLE_DEC = 65636;
+    private static final int CONTROL_COM_RADIO_WHOLE_INC = 65637;
+    private static final int CONTROL_COM_RADIO_FRACT_DEC = 65638;
+    private static final int CONTROL_COM_RADIO_FRACT_INC = 65639;
+    private static final int CONTROL_COM_STBY_RADIO_SWAP = 66372;
+    /**
+     * Gear control offset, 0 = up, 16383 = down
+     */
+    private static final int OFFSET_GEAR_CONTROL = 0x0BE8;
+    /**
+     * At most this many repeats of one command in a batch, a runaway encoder should not flood the sim
+     */
+    private static final int MAX_REPEAT = 50;
+    /**
+     * Most runs of different commands waiting for the sender
+     */
+    private static final int QUEUE_CAPACITY = 64;
+
+    /**
+     * logger
+     */
+    private static final Logger logger = Logger.getLogger(FSUIPCCommandSender.class.getName());
+
+    private final FSUIPC fsuipc;
+    private final CommandQueue pending = new CommandQueue(QUEUE_CAPACITY);
+    /**
+     * Batch being sent, only touched by the sender thread
+     */
+    private final SimCommand[] batchCommands = new SimCommand[QUEUE_CAPACITY];
+    private final int[] batchCounts = new int[QUEUE_CAPACITY];
+    private volatile int requestedPeriodMs;
+    /**
+     * Period continual processing runs at, only touched by the sender thread once started
+     */
+    private int processingPeriodMs;
+    private volatile boolean running = false;
+    private volatile Thread thread;
+
+    /**
+     * @param fsuipc FSUIPC to send the commands through
+     */
+    FSUIPCCommandSender(FSUIPC fsuipc) {
+        this.fsuipc = fsuipc;
+    }
+
+    /**
+     * Starts the sender thread. Does nothing if already running.
+     *
+     * @param processingPeriodMs period continual processing was started at
+     */
+    synchronized void start(int processingPeriodMs) {
+        if (running) {
+            return;
+        }
+        pending.clear();
+        this.processingPeriodMs = processingPeriodMs;
+        this.requestedPeriodMs = processingPeriodMs;
+        running = true;
+        thread = new Thread(this, "FSUIPC commands");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * Stops the sender thread, pending commands are discarded.
+     */
+    synchronized void stop() {
+        if (!running) {
+            return;
+        }
+        running = false;
+        Thread t = thread;
+        LockSupport.unpark(t);
+        try {
+            t.join(1000);
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        }
+        thread = null;
+    }
+
+    /**
+     * Queues the command, never blocks. Ignored when not running.
+     *
+     * @param command command to send
+     * @param count how many times
+     */
+    void send(SimCommand command, int count) {
+        Thread t = thread;
+        if (!running || t == null || count <= 0) {
+            return;
+        }
+        if (!pending.add(command, count)) {
+            logger.warning("Too many commands waiting, dropped " + command);
+        }
+        LockSupport.unpark(t);
+    }
+
+    /**
+     * Restarts continual processing at new period, soon, from the sender thread. Never blocks. Ignored when not running.
+     *
+     * @param periodMs new period
+     */
+    void reschedule(int periodMs) {
+        Thread t = thread;
+        if (!running || t == null || periodMs == requestedPeriodMs) {
+            return;
+        }
+        requestedPeriodMs = periodMs;
+        LockSupport.unpark(t);
+    }
+
+    @Override
+    public void run() {
+        while (running) {
+            int periodMs = requestedPeriodMs;
+            if (periodMs != processingPeriodMs) {
+                processingPeriodMs = periodMs;
+                fsuipc.processRequests(periodMs, true);
+                if (logger.isLoggable(Level.FINE)) {
+                    logger.fine("Continual processing every " + periodMs + " ms");
+                }
+            }
+            int queued = 0;
+            int entries = pending.drainTo(batchCommands, batchCounts);
+            for (int entry = 0; entry < entries; entry++) {
+                SimCommand command = batchCommands[entry];
+                int count = Math.min(batchCounts[entry], MAX_REPEAT);
+                batchCommands[entry] = null;
+                for (int i = 0; i < count; i++) {
+                    fsuipc.addOneTimeRequest(createRequest(command));
+                    queued++;
+                    if (command == SimCommand.GEAR_UP || command == SimCommand.GEAR_DOWN) {
+                        //setting the lever more than once does nothing more
+                        break;
+                    }
+                }
+            }
+            if (queued > 0) {
+                long start = System.nanoTime();
+                fsuipc.processRequestsOnce();
+                if (logger.isLoggable(Level.FINE)) {
+                    logger.fine("Sent " + queued + " commands in " + (System.nanoTime() - start) / 1000 + " us");
+                }
+            } else if (requestedPeriodMs == processingPeriodMs) {
+                LockSupport.park(this);
+            }
+        }
+    }
+
+    private static IDataRequest<Integer> createRequest(SimCommand command) {
+        switch (command) {
+            case COM1_SWAP:
+                return new FSControlRequest(CONTROL_COM_STBY_RADIO_SWAP);
+            case COM1_WHOLE_INC:
+                return new FSControlRequest(CONTROL_COM_RADIO_WHOLE_INC);
+            case COM1_WHOLE_DEC:
+                return new FSControlRequest(CONTROL_COM_RADIO_WHOLE_DEC);
+            case COM1_FRACT_INC:
+                return new FSControlRequest(CONTROL_COM_RADIO_FRACT_INC);
+            case COM1_FRACT_DEC:
+                return new FSControlRequest(CONTROL_COM_RADIO_FRACT_DEC);
+            case GEAR_UP:
+                return new IntRequest(OFFSET_GEAR_CONTROL, DisplayFrame.GEAR_MINIMUMVALUE);
+            case GEAR_DOWN:
+                return new IntRequest(OFFSET_GEAR_CONTROL, DisplayFrame.GEAR_MAXIMUMVALUE);
+            case GEAR_TOGGLE:
+                return new FSControlRequest(CONTROL_GEAR_TOGGLE);
+            case SLEW_TOGGLE:
+                return new FSControlRequest(CONTROL_SLEW_TOGGLE);
+            default:
+                throw new IllegalArgumentException("Unknown command: " + command);
+        }
+    }
+}
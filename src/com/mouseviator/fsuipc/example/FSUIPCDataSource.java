@@ -0,0 +1,219 @@
+package com.mouseviator.fsuipc.example;
+
+import com.mouseviator.fsuipc.FSUIPC;
+import com.mouseviator.fsuipc.FSUIPCWrapper;
+import com.mouseviator.fsuipc.IFSUIPCListener;
+import com.mouseviator.fsuipc.datarequest.IDataRequest;
+import com.mouseviator.fsuipc.helpers.SimHelper;
+import java.util.AbstractQueue;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * {@link SimDataSource} reading the simulator through FSUIPC. Loads the native library, waits for connection, polls the fields
+ * attached sinks need (see {@link SimRequestRegistry} and {@link PollScheduler}) and delivers one {@link SimSample} per poll.
+ *
+ * @author Murdock
+ */
+public class FSUIPCDataSource extends AbstractSimDataSource {
+
+    /**
+     * logger
+     */
+    private static final Logger logger = Logger.getLogger(FSUIPCDataSource.class.getName());
+
+    /**
+     * FSUIPC Instance
+     */
+    private final FSUIPC fsuipc = FSUIPC.getInstance();
+    /**
+     * FSUIPC listener
+     */
+    private IFSUIPCListener fsuipcListener;
+
+    private final SimHelper simHelper = new SimHelper();
+    /**
+     * Registers only the continual requests the attached sinks need
+     */
+    private final SimRequestRegistry requestRegistry = new SimRequestRegistry(fsuipc);
+    /**
+     * Decides which rate groups are polled in each processing cycle
+     */
+    private final PollScheduler pollScheduler = new PollScheduler();
+    /**
+     * Sample reused for every poll, only touched by FSUIPC processing thread
+     */
+    private final SimSample simSample = new SimSample();
+    /**
+     * Sends commands from the panels to the sim
+     */
+    private final FSUIPCCommandSender commandSender = new FSUIPCCommandSender(fsuipc);
+
+    private boolean libFileLogging = false;
+    private volatile String simVersion = "N/A";
+    private volatile String interfaceVersion = "N/A";
+
+    /**
+     * Creates new FSUIPC data source. The native library is not loaded until {@link #start()}.
+     */
+    public FSUIPCDataSource() {
+        requestRegistry.attach(pollScheduler);
+    }
+
+    /**
+     * The pipeline is traced by {@link SimEvents}, the native file logging is for debugging the FSUIPC library itself. Off by
+     * default.
+     *
+     * @param libFileLogging true to enable FSUIPC library DEBUG file logging (fsuipc_java.log), takes effect on {@link #start()}
+     */
+    public void setLibFileLogging(boolean libFileLogging) {
+        this.libFileLogging = libFileLogging;
+    }
+
+    @Override
+    public void attach(SimDataSink sink) {
+        requestRegistry.attach(sink);
+    }
+
+    @Override
+    public void detach(SimDataSink sink) {
+        requestRegistry.detach(sink);
+    }
+
+    @Override
+    public void send(SimCommand command, int count) {
+        commandSender.send(command, count);
+    }
+
+    @Override
+    public String getSimVersion() {
+        return simVersion;
+    }
+
+    @Override
+    public String getInterfaceVersion() {
+        return interfaceVersion;
+    }
+
+    @Override
+    public boolean start() {
+        // First of all, load the native library. The default load function will try to determine if we are running under 32 or 64 bit JVM
+        // and load 32/64 bit native library respectively
+        byte result = FSUIPC.load();
+        if (result != FSUIPC.LIB_LOAD_RESULT_OK) {
+            logger.severe("Failed to load native library. NO JOY! This is all folks!!!");
+            return false;
+        }
+
+        FSUIPCWrapper.setupLogging(libFileLogging, "fsuipc_java.log", FSUIPCWrapper.LogSeverity.DEBUG.getValue(), 20 * 1024 * 1024);
+        logger.info("Trying to connect....");
+
+        fsuipcListener = new IFSUIPCListener() {
+            @Override
+            public void onConnected() {
+                logger.info("FSUIPC connected!");
+
+                //register one time requests
+                IDataRequest<String> fsxp3dVersion = (IDataRequest<String>) fsuipc.addOneTimeRequest(simHelper.getFSXP3DVersion());
+                fsuipc.processRequestsOnce();
+                simVersion = fsuipc.getFSVersion() + " (" + fsxp3dVersion.getValue() + ")";
+                interfaceVersion = fsuipc.getVersion();
+
+                //clear all previous continual requests, it will also stop processing thread
+                fsuipc.clearContinualRequests();
+
+                //register continual requests the sinks need
+                pollScheduler.reset();
+                requestRegistry.connected();
+
+                //start continual request processing at the shortest group period, the poll scheduler decides which requests
+                //are processed in each cycle, and the period as the groups speed up or slow down
+                fsuipc.processRequests(pollScheduler.getTickMs(), true);
+                commandSender.start(pollScheduler.getTickMs());
+                connectionEvent(true);
+
+                fireConnected();
+            }
+
+            @Override
+            public void onDisconnected() {
+                logger.info("FSUIPC disconnected!");
+
+                //cancel continual request processing
+                //not needed anymore, the fsuipc class will do it while it discovers that FSUIPC disconnected, before the listener is called
+                //fsuipc.cancelRequestsProcessing();
+                commandSender.stop();
+                requestRegistry.disconnected();
+                simVersion = "N/A";
+                interfaceVersion = "N/A";
+                connectionEvent(false);
+
+                fireDisconnected();
+            }
+
+            @Override
+            public void onProcess(AbstractQueue<IDataRequest> arRequests) {
+                //nothing may block here - the sample listeners hand the values over to their own threads
+                SimEvents.PollCycle event = new SimEvents.PollCycle();
+                event.begin();
+                long now = System.nanoTime();
+                int polledGroups = requestRegistry.getActiveGroups();
+                if (polledGroups != 0) {
+                    requestRegistry.fillSample(simSample, polledGroups);
+                    simSample.setTimeNanos(now);
+                    fireSample(simSample);
+                }
+                if (event.shouldCommit()) {
+                    event.polledGroups = polledGroups;
+                    event.fields = polledGroups != 0 ? Long.bitCount(simSample.getFieldMask()) : 0;
+                    event.commit();
+                }
+                //choose which requests will be processed in the next cycle
+                requestRegistry.setActiveGroups(pollScheduler.onProcessed(requestRegistry, polledGroups, now));
+                commandSender.reschedule(pollScheduler.getTickMs());
+            }
+
+            @Override
+            public void onFail(int lastResult) {
+                metrics.failed();
+                String message = FSUIPC.FSUIPC_ERROR_MESSAGES.get(FSUIPCWrapper.FSUIPCResult.get(lastResult));
+                SimEvents.FsuipcFailure event = new SimEvents.FsuipcFailure();
+                if (event.shouldCommit()) {
+                    event.resultCode = lastResult;
+                    event.message = message;
+                    event.commit();
+                }
+                logger.log(Level.INFO, "Last FSUIPC function call ended with error code: {0}, message: {1}",
+                        new Object[]{lastResult, message});
+            }
+        };
+
+        //add the listener to fsuipc
+        fsuipc.addListener(fsuipcListener);
+
+        //start the thread that will wait for successful fsuipc connection, will try every 5 seconds
+        fsuipc.waitForConnection(FSUIPCWrapper.FSUIPCSimVersion.SIM_ANY, 5);
+        return true;
+    }
+
+    private void connectionEvent(boolean connected) {
+        SimEvents.Connection event = new SimEvents.Connection();
+        if (event.shouldCommit()) {
+            event.target = "FSUIPC";
+            event.detail = connected ? simVersion + ", FSUIPC " + interfaceVersion : null;
+            event.connected = connected;
+            event.commit();
+        }
+    }
+
+    @Override
+    public void stop() {
+        commandSender.stop();
+        //disconnect fsuipc, no nned to cancel processing tasks, the diconnect method will do it for us
+        fsuipc.disconnect();
+        if (fsuipcListener != null) {
+            fsuipc.removeListener(fsuipcListener);
+            fsuipcListener = null;
+        }
+    }
+}
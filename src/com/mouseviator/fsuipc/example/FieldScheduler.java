@@ -0,0 +1,426 @@
+package com.mouseviator.fsuipc.example;
+
+import java.nio.ByteBuffer;
+import java.util.EnumMap;
+import java.util.Map;
+
+/**
+ * Chooses which changed fields go into the next delta frame of one port, so the port stays within its byte budget and every field
+ * still reaches the display within its maximum staleness.
+ *
+ * <p>
+ * Every field has a {@link FieldPolicy}: a weight, a minimum interval between updates and a maximum staleness. The fields of each
+ * frame are picked in this order:</p>
+ * <ol>
+ * <li>preempting fields (gear, alerts) - always, whatever the budget,</li>
+ * <li>fields about to miss their maximum staleness - earliest deadline first, whatever the budget,</li>
+ * <li>the other changed fields past their minimum interval, by weighted fair queuing: each field has a virtual finish time that
+ * grows by its bytes divided by its weight, the lowest goes first, while the frame fits the budget,</li>
+ * <li>fields with weight 0 (standby frequency) - only with budget left over.</li>
+ * </ol>
+ *
+ * <p>
+ * The budget is a token bucket of bytes, refilled at the budget rate up to one full frame. Preempting and overdue fields may take
+ * it below zero, the debt is paid by the routine fields. The cost of a field is measured by encoding the frame with and without
+ * it, so fields that share bytes (binary gear) are accounted right. The bounds hold as long as the overdue traffic alone, the sum
+ * of field size / maximum staleness, fits the line, and the bound is longer than the minimum interval plus the time to drain a
+ * full send window and one frame (about 130 ms at 9600 baud, which is why the default bounds do not hold at 1200 baud).</p>
+ *
+ * <p>
+ * Not thread safe, used by the {@link ArduinoWriter} thread only.</p>
+ *
+ * @author Murdock
+ */
+public class FieldScheduler {
+
+    /**
+     * Share of the line speed the routine fields may use, the rest is headroom for preempting fields and keyframes
+     */
+    public static final double DEFAULT_BUDGET_SHARE = 0.8;
+    /**
+     * Serial frame of 8N1 has 10 bits per byte
+     */
+    private static final int BITS_PER_BYTE = 10;
+
+    /**
+     * How one field is scheduled
+     */
+    public static final class FieldPolicy {
+
+        private final int weight;
+        private final long minIntervalMs;
+        private final long maxStalenessMs;
+        private final boolean preempt;
+
+        /**
+         * @param weight share of the budget relative to other fields, 0 for leftover capacity only
+         * @param minIntervalMs shortest time between two updates of the field, not applied to preempting fields
+         * @param maxStalenessMs longest time a changed value may wait for update
+         * @param preempt true to send every change right away, whatever the budget
+         */
+        public FieldPolicy(int weight, long minIntervalMs, long maxStalenessMs, boolean preempt) {
+            if (weight < 0 || minIntervalMs < 0 || maxStalenessMs <= minIntervalMs) {
+                throw new IllegalArgumentException("Invalid field policy");
+            }
+            this.weight = weight;
+            this.minIntervalMs = minIntervalMs;
+            this.maxStalenessMs = maxStalenessMs;
+            this.preempt = preempt;
+        }
+
+        public int getWeight() {
+            return weight;
+        }
+
+        public long getMinIntervalMs() {
+            return minIntervalMs;
+        }
+
+        public long getMaxStalenessMs() {
+            return maxStalenessMs;
+        }
+
+        public boolean isPreempt() {
+            return preempt;
+        }
+
+        @Override
+        public String toString() {
+            return "weight " + weight + ", min interval " + minIntervalMs + " ms, max staleness " + maxStalenessMs + " ms"
+                    + (preempt ? ", preempts" : "");
+        }
+    }
+
+    /**
+     * @param field display field
+     * @return Default policy of the field: gear and alerts preempt, heading has priority over the active frequency, standby
+     * frequency takes what is left
+     */
+    public static FieldPolicy defaultPolicy(DisplayField field) {
+        switch (field) {
+            case COM1_FREQUENCY:
+                return new FieldPolicy(2, 200, 1000, false);
+            case COM1_STANDBY:
+                return new FieldPolicy(0, 500, 3000, false);
+            case HEADING:
+                return new FieldPolicy(4, 100, 500, false);
+            default:
+                //gear and alerts
+                return new FieldPolicy(8, 0, 250, true);
+        }
+    }
+
+    /**
+     * @return Default policies of all fields
+     */
+    public static Map<DisplayField, FieldPolicy> defaultPolicies() {
+        Map<DisplayField, FieldPolicy> policies = new EnumMap<>(DisplayField.class);
+        for (DisplayField field : DisplayField.VALUES) {
+            policies.put(field, defaultPolicy(field));
+        }
+        return policies;
+    }
+
+    /**
+     * @param profile device profile
+     * @param encoder encoder of the device, to measure the fields with
+     * @return Scheduler with the default policies and {@link #DEFAULT_BUDGET_SHARE} of the device line speed
+     */
+    public static FieldScheduler forProfile(DeviceProfile profile, FrameEncoder encoder) {
+        double lineBytesPerSecond = profile.getBaudRate() / (double) BITS_PER_BYTE;
+        return new FieldScheduler(defaultPolicies(), lineBytesPerSecond * DEFAULT_BUDGET_SHARE, lineBytesPerSecond, encoder);
+    }
+
+    private final FieldPolicy[] policies = new FieldPolicy[DisplayField.VALUES.length];
+    private final double budgetBytesPerNano;
+    private final int bucketBytes;
+    /**
+     * How long before its deadline a field counts as overdue - the frame may wait for a full send window to drain, and then take
+     * time to transmit
+     */
+    private final long lookaheadNanos;
+    private final FrameEncoder encoder;
+    private final ByteBuffer scratch;
+
+    private double tokens;
+    private long refilledNanos;
+    /**
+     * WFQ virtual time, start time of the last field sent
+     */
+    private double virtualTime = 0;
+    private final double[] finishTime = new double[DisplayField.VALUES.length];
+    private final long[] lastSentNanos = new long[DisplayField.VALUES.length];
+    private final long[] dirtySinceNanos = new long[DisplayField.VALUES.length];
+    /**
+     * Bytes each field took in the last frame that was measured, for estimates
+     */
+    private final int[] cost = new int[DisplayField.VALUES.length];
+    /**
+     * Fields that differed from what the device shows at the last selection
+     */
+    private int dirtyMask = 0;
+    private int deferredMask = 0;
+    private int selectedSize = 0;
+
+    private long preempted = 0;
+    private long overdue = 0;
+
+    /**
+     * Creates new scheduler.
+     *
+     * @param policies policies of the fields, fields without one get {@link #defaultPolicy(DisplayField)}
+     * @param budgetBytesPerSecond bytes per second the routine fields may take
+     * @param lineBytesPerSecond bytes per second the line carries
+     * @param encoder encoder of the device, to measure the fields with
+     */
+    public FieldScheduler(Map<DisplayField, FieldPolicy> policies, double budgetBytesPerSecond, double lineBytesPerSecond,
+            FrameEncoder encoder) {
+        for (DisplayField field : DisplayField.VALUES) {
+            FieldPolicy policy = policies.get(field);
+            this.policies[field.ordinal()] = policy != null ? policy : defaultPolicy(field);
+            cost[field.ordinal()] = 1;
+        }
+        this.budgetBytesPerNano = budgetBytesPerSecond / 1e9;
+        this.encoder = encoder;
+        this.bucketBytes = encoder.getMaxFrameSize();
+        this.scratch = ByteBuffer.allocate(encoder.getMaxFrameSize());
+        this.lookaheadNanos = (long) ((SerialLink.DEFAULT_WINDOW_BYTES + bucketBytes) / lineBytesPerSecond * 1e9);
+        reset(System.nanoTime());
+    }
+
+    /**
+     * Starts over with full budget and nothing sent, called when the port is (re)opened.
+     *
+     * @param nowNanos current time
+     */
+    public void reset(long nowNanos) {
+        tokens = bucketBytes;
+        refilledNanos = nowNanos;
+        for (int i = 0; i < lastSentNanos.length; i++) {
+            lastSentNanos[i] = Long.MIN_VALUE / 2;
+        }
+        dirtyMask = 0;
+        deferredMask = 0;
+    }
+
+    /**
+     * Picks the fields for the next delta frame.
+     *
+     * @param frame frame to be sent
+     * @param dirty mask of fields that differ from what the device shows, may be 0 to drop fields that are no longer dirty
+     * @param publishedNanos when the frame was published, changes seen first in this frame count as stale since then
+     * @param nowNanos current time
+     * @return Mask of fields to send now, 0 if none, see {@link #getDeferredMask()} for the rest
+     */
+    public int select(DisplayFrame frame, int dirty, long publishedNanos, long nowNanos) {
+        refill(nowNanos);
+        int newlyDirty = dirty & ~dirtyMask;
+        for (int bits = newlyDirty; bits != 0; bits &= bits - 1) {
+            dirtySinceNanos[Integer.numberOfTrailingZeros(bits)] = Math.min(publishedNanos, nowNanos);
+        }
+        dirtyMask = dirty;
+
+        int mask = 0;
+        selectedSize = measure(frame, 0);
+        //preempting fields, and the fields about to go over their staleness, earliest deadline first
+        int forced = 0;
+        for (int bits = dirty; bits != 0; bits &= bits - 1) {
+            int ordinal = Integer.numberOfTrailingZeros(bits);
+            if (policies[ordinal].preempt) {
+                forced |= 1 << ordinal;
+                preempted++;
+            } else if (nowNanos + lookaheadNanos >= deadline(ordinal) && intervalPassed(ordinal, nowNanos)) {
+                forced |= 1 << ordinal;
+                overdue++;
+            }
+        }
+        while (forced != 0) {
+            int next = earliestDeadline(forced);
+            forced &= ~(1 << next);
+            mask = add(frame, mask, next);
+        }
+
+        //weighted fair queuing among the rest, while the frame fits the budget
+        int eligible = 0;
+        int leftover = 0;
+        for (int bits = dirty & ~mask; bits != 0; bits &= bits - 1) {
+            int ordinal = Integer.numberOfTrailingZeros(bits);
+            if (intervalPassed(ordinal, nowNanos)) {
+                if (policies[ordinal].weight > 0) {
+                    eligible |= 1 << ordinal;
+                } else {
+                    leftover |= 1 << ordinal;
+                }
+            }
+        }
+        while (eligible != 0) {
+            int next = lowestFinish(eligible);
+            eligible &= ~(1 << next);
+            mask = addIfFits(frame, mask, next);
+        }
+        //leftover capacity
+        for (int bits = leftover; bits != 0; bits &= bits - 1) {
+            mask = addIfFits(frame, mask, Integer.numberOfTrailingZeros(bits));
+        }
+
+        deferredMask = dirty & ~mask;
+        return mask;
+    }
+
+    /**
+     * Accounts the frame that was written - the fields in it are fresh now, and its bytes are taken from the budget. Called for
+     * keyframes too.
+     *
+     * @param mask fields that were sent
+     * @param bytes length of the frame
+     * @param nowNanos current time
+     */
+    public void sent(int mask, int bytes, long nowNanos) {
+        refill(nowNanos);
+        tokens -= bytes;
+        for (int bits = mask; bits != 0; bits &= bits - 1) {
+            int ordinal = Integer.numberOfTrailingZeros(bits);
+            lastSentNanos[ordinal] = nowNanos;
+            int weight = policies[ordinal].weight;
+            if (weight > 0) {
+                double start = Math.max(virtualTime, finishTime[ordinal]);
+                finishTime[ordinal] = start + cost[ordinal] / (double) weight;
+                virtualTime = Math.max(virtualTime, start);
+            }
+        }
+        dirtyMask &= ~mask;
+        deferredMask &= ~mask;
+    }
+
+    /**
+     * @return Fields that changed but were not sent in the last frame
+     */
+    public int getDeferredMask() {
+        return deferredMask;
+    }
+
+    /**
+     * @param nowNanos current time
+     * @return Nanoseconds until some of the deferred fields can be sent, 0 if now, Long.MAX_VALUE if nothing is deferred
+     */
+    public long nanosUntilDue(long nowNanos) {
+        if (deferredMask == 0) {
+            return Long.MAX_VALUE;
+        }
+        refill(nowNanos);
+        long due = Long.MAX_VALUE;
+        for (int bits = deferredMask; bits != 0; bits &= bits - 1) {
+            int ordinal = Integer.numberOfTrailingZeros(bits);
+            FieldPolicy policy = policies[ordinal];
+            long fieldDue;
+            if (policy.preempt) {
+                fieldDue = nowNanos;
+            } else {
+                long intervalDue = lastSentNanos[ordinal] + policy.minIntervalMs * 1_000_000L;
+                double missing = selectedSize + cost[ordinal] - tokens;
+                long budgetDue = missing <= 0 ? nowNanos : nowNanos + (long) (missing / budgetBytesPerNano);
+                fieldDue = Math.max(intervalDue, Math.min(budgetDue, deadline(ordinal) - lookaheadNanos));
+            }
+            due = Math.min(due, fieldDue);
+        }
+        return Math.max(0, due - nowNanos);
+    }
+
+    /**
+     * @param field display field
+     * @return Policy of the field
+     */
+    public FieldPolicy getPolicy(DisplayField field) {
+        return policies[field.ordinal()];
+    }
+
+    /**
+     * @return Budget of the port, bytes per second
+     */
+    public double getBudgetBytesPerSecond() {
+        return budgetBytesPerNano * 1e9;
+    }
+
+    /**
+     * @return Number of times a field was sent ahead of the budget because it preempts
+     */
+    public long getPreempted() {
+        return preempted;
+    }
+
+    /**
+     * @return Number of times a field was sent ahead of the budget because it was about to go stale
+     */
+    public long getOverdue() {
+        return overdue;
+    }
+
+    private void refill(long nowNanos) {
+        long elapsed = nowNanos - refilledNanos;
+        if (elapsed > 0) {
+            tokens = Math.min(bucketBytes, tokens + elapsed * budgetBytesPerNano);
+            refilledNanos = nowNanos;
+        }
+    }
+
+    private boolean intervalPassed(int ordinal, long nowNanos) {
+        return nowNanos - lastSentNanos[ordinal] >= policies[ordinal].minIntervalMs * 1_000_000L;
+    }
+
+    private long deadline(int ordinal) {
+        return dirtySinceNanos[ordinal] + policies[ordinal].maxStalenessMs * 1_000_000L;
+    }
+
+    private int earliestDeadline(int mask) {
+        int best = -1;
+        for (int bits = mask; bits != 0; bits &= bits - 1) {
+            int ordinal = Integer.numberOfTrailingZeros(bits);
+            if (best < 0 || deadline(ordinal) < deadline(best)) {
+                best = ordinal;
+            }
+        }
+        return best;
+    }
+
+    private int lowestFinish(int mask) {
+        int best = -1;
+        double bestFinish = 0;
+        for (int bits = mask; bits != 0; bits &= bits - 1) {
+            int ordinal = Integer.numberOfTrailingZeros(bits);
+            double finish = Math.max(virtualTime, finishTime[ordinal]) + cost[ordinal] / (double) policies[ordinal].weight;
+            if (best < 0 || finish < bestFinish) {
+                best = ordinal;
+                bestFinish = finish;
+            }
+        }
+        return best;
+    }
+
+    /**
+     * Adds the field to the frame whatever the budget.
+     */
+    private int add(DisplayFrame frame, int mask, int ordinal) {
+        int size = measure(frame, mask | 1 << ordinal);
+        cost[ordinal] = Math.max(1, size - selectedSize);
+        selectedSize = size;
+        return mask | 1 << ordinal;
+    }
+
+    /**
+     * Adds the field to the frame if the frame still fits the budget.
+     */
+    private int addIfFits(DisplayFrame frame, int mask, int ordinal) {
+        int size = measure(frame, mask | 1 << ordinal);
+        cost[ordinal] = Math.max(1, size - selectedSize);
+        if (size > tokens) {
+            return mask;
+        }
+        selectedSize = size;
+        return mask | 1 << ordinal;
+    }
+
+    private int measure(DisplayFrame frame, int mask) {
+        encoder.encode(frame, mask, false, scratch);
+        return scratch.limit();
+    }
+}
@@ -0,0 +1,27 @@
+package com.mouseviator.fsuipc.example;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Encodes {@link DisplayFrame} into bytes sent to the Arduino.
+ *
+ * @author Murdock
+ */
+public interface FrameEncoder {
+
+    /**
+     * @return Maximum number of bytes one encoded frame can take
+     */
+    int getMaxFrameSize();
+
+    /**
+     * Encodes fields of the frame into the buffer. The buffer is cleared first, and flipped after encoding, so it is ready to be
+     * written out.
+     *
+     * @param frame frame to encode
+     * @param mask mask of fields to encode, see {@link DisplayField#getMask()}
+     * @param keyframe true if this is full frame - all fields the device shows, false if it is delta update
+     * @param buffer buffer to encode to, must have at least {@link #getMaxFrameSize()} bytes capacity
+     */
+    void encode(DisplayFrame frame, int mask, boolean keyframe, ByteBuffer buffer);
+}
@@ -0,0 +1,123 @@
+package com.mouseviator.fsuipc.example;
+
+/**
+ * Dead-reckons the heading between polls, so the display can turn smoothly without polling the sim faster.
+ *
+ * <p>
+ * The turn rate is estimated from consecutive polled headings, the shorter way around the compass (359 to 1 is a 2 degree turn
+ * right, not 358 left), smoothed and limited to {@link #MAX_TURN_RATE}. {@link #predict(long)} extrapolates from the last polled
+ * heading, at most {@link #MAX_EXTRAPOLATION_NANOS} ahead, so a stalled source does not keep the display spinning. Every new poll
+ * replaces the prediction with the true heading.</p>
+ *
+ * <p>
+ * Not thread safe, the caller synchronizes.</p>
+ *
+ * @author Murdock
+ */
+public class HeadingExtrapolator {
+
+    /**
+     * Highest believable turn rate, degrees per second
+     */
+    public static final double MAX_TURN_RATE = 30;
+    /**
+     * Longest time to extrapolate past the last poll
+     */
+    public static final long MAX_EXTRAPOLATION_NANOS = 1_000_000_000L;
+    /**
+     * Polls further apart do not give a turn rate, the aircraft may have done anything in between
+     */
+    private static final long MAX_POLL_GAP_NANOS = 2_000_000_000L;
+    /**
+     * Weight of the newest rate in the smoothed one
+     */
+    private static final double SMOOTHING = 0.5;
+    /**
+     * Slower turns are not extrapolated, keeps the digits from flickering on straight flight
+     */
+    private static final double MIN_TURN_RATE = 0.2;
+
+    private boolean hasHeading = false;
+    private double heading;
+    private long timeNanos;
+    private double turnRate = 0;
+
+    /**
+     * Takes new polled heading.
+     *
+     * @param heading heading in degrees, any range
+     * @param timeNanos time of the poll, as per {@link System#nanoTime()}
+     * @param frozen true if the aircraft does not fly on its own (paused, slewed), no turn rate then
+     */
+    public void update(double heading, long timeNanos, boolean frozen) {
+        heading = normalize(heading);
+        long gap = timeNanos - this.timeNanos;
+        if (!hasHeading || frozen || gap <= 0 || gap > MAX_POLL_GAP_NANOS) {
+            turnRate = 0;
+        } else {
+            double rate = difference(this.heading, heading) / (gap / 1e9);
+            rate = Math.max(-MAX_TURN_RATE, Math.min(MAX_TURN_RATE, rate));
+            turnRate += SMOOTHING * (rate - turnRate);
+        }
+        this.heading = heading;
+        this.timeNanos = timeNanos;
+        hasHeading = true;
+    }
+
+    /**
+     * @return True once a heading was polled
+     */
+    public boolean hasHeading() {
+        return hasHeading;
+    }
+
+    /**
+     * @return Estimated turn rate, degrees per second, positive to the right
+     */
+    public double getTurnRate() {
+        return turnRate;
+    }
+
+    /**
+     * @param nowNanos time to predict the heading for, as per {@link System#nanoTime()}
+     * @return Predicted heading, 0 - 360 (exclusive)
+     */
+    public double predict(long nowNanos) {
+        if (Math.abs(turnRate) < MIN_TURN_RATE) {
+            return heading;
+        }
+        long ahead = Math.max(0, Math.min(MAX_EXTRAPOLATION_NANOS, nowNanos - timeNanos));
+        return normalize(heading + turnRate * (ahead / 1e9));
+    }
+
+    /**
+     * Forgets the heading and turn rate, for example after reconnect.
+     */
+    public void reset() {
+        hasHeading = false;
+        turnRate = 0;
+    }
+
+    /**
+     * @param degrees angle in degrees, any range
+     * @return The same angle, 0 - 360 (exclusive)
+     */
+    static double normalize(double degrees) {
+        double result = degrees % 360;
+        if (result < 0) {
+            result += 360;
+        }
+        //-1e-15 % 360 + 360 rounds to 360
+        return result >= 360 ? 0 : result;
+    }
+
+    /**
+     * @param from first heading
+     * @param to second heading
+     * @return Turn from the first heading to the second the shorter way, -180 - 180 degrees, positive to the right
+     */
+    static double difference(double from, double to) {
+        double turn = normalize(to - from);
+        return turn > 180 ? turn - 360 : turn;
+    }
+}
@@ -0,0 +1,73 @@
+package com.mouseviator.fsuipc.example;
+
+/**
+ * Maps buttons and rotary encoders of an Arduino panel to {@link SimCommand}s. Inputs are numbered by the sketch, 0 - 15.
+ *
+ * @author Murdock
+ */
+public class InputBindings {
+
+    /**
+     * Number of buttons and encoders that can be bound
+     */
+    public static final int MAX_INPUTS = 16;
+
+    private final SimCommand[] buttons = new SimCommand[MAX_INPUTS];
+    private final SimCommand[] encodersUp = new SimCommand[MAX_INPUTS];
+    private final SimCommand[] encodersDown = new SimCommand[MAX_INPUTS];
+
+    /**
+     * @return Bindings of the companion sketch: button 0 swaps COM1, button 1 toggles the gear, encoder 0 tunes the COM1 standby
+     * channel, encoder 1 the whole MHz
+     */
+    public static InputBindings defaults() {
+        InputBindings bindings = new InputBindings();
+        bindings.bindButton(0, SimCommand.COM1_SWAP);
+        bindings.bindButton(1, SimCommand.GEAR_TOGGLE);
+        bindings.bindEncoder(0, SimCommand.COM1_FRACT_INC, SimCommand.COM1_FRACT_DEC);
+        bindings.bindEncoder(1, SimCommand.COM1_WHOLE_INC, SimCommand.COM1_WHOLE_DEC);
+        return bindings;
+    }
+
+    /**
+     * @param button button number
+     * @param command command to send when pressed, null to unbind
+     * @return This bindings
+     */
+    public InputBindings bindButton(int button, SimCommand command) {
+        buttons[button] = command;
+        return this;
+    }
+
+    /**
+     * @param encoder encoder number
+     * @param up command to send for each detent clockwise, null to unbind
+     * @param down command to send for each detent counterclockwise, null to unbind
+     * @return This bindings
+     */
+    public InputBindings bindEncoder(int encoder, SimCommand up, SimCommand down) {
+        encodersUp[encoder] = up;
+        encodersDown[encoder] = down;
+        return this;
+    }
+
+    /**
+     * @param button button number
+     * @return Command bound to the button, null if none or out of range
+     */
+    public SimCommand getButton(int button) {
+        return button >= 0 && button < MAX_INPUTS ? buttons[button] : null;
+    }
+
+    /**
+     * @param encoder encoder number
+     * @param up true for clockwise
+     * @return Command bound to the encoder direction, null if none or out of range
+     */
+    public SimCommand getEncoder(int encoder, boolean up) {
+        if (encoder < 0 || encoder >= MAX_INPUTS) {
+            return null;
+        }
+        return up ? encodersUp[encoder] : encodersDown[encoder];
+    }
+}
@@ -0,0 +1,103 @@
+package com.mouseviator.fsuipc.example;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Lock free, allocation free latency histogram with power of two buckets, from 1 microsecond to about 17 seconds. Recording is
+ * one array increment, so it can be done on every sample. Percentiles are estimated as the upper bound of the bucket they fall
+ * into, which is good enough to tell 1 ms from 100 ms.
+ *
+ * @author Murdock
+ */
+public class LatencyHistogram {
+
+    /**
+     * Bucket i counts values below 2^i microseconds, the last bucket counts everything bigger
+     */
+    static final int BUCKET_COUNT = 26;
+
+    private final AtomicLongArray buckets = new AtomicLongArray(BUCKET_COUNT);
+    private final AtomicLongArray totals = new AtomicLongArray(3);
+    private static final int COUNT = 0;
+    private static final int SUM = 1;
+    private static final int MAX = 2;
+
+    /**
+     * Records one value.
+     *
+     * @param nanos the latency, in nanoseconds
+     */
+    public void record(long nanos) {
+        if (nanos < 0) {
+            nanos = 0;
+        }
+        long micros = nanos / 1000;
+        int bucket = Math.min(64 - Long.numberOfLeadingZeros(micros), BUCKET_COUNT - 1);
+        buckets.incrementAndGet(bucket);
+        totals.incrementAndGet(COUNT);
+        totals.addAndGet(SUM, nanos);
+        long max;
+        while (nanos > (max = totals.get(MAX)) && !totals.compareAndSet(MAX, max, nanos)) {
+            //retry
+        }
+    }
+
+    /**
+     * @return Number of recorded values
+     */
+    public long getCount() {
+        return totals.get(COUNT);
+    }
+
+    /**
+     * @return Sum of recorded values, in nanoseconds
+     */
+    public long getSumNanos() {
+        return totals.get(SUM);
+    }
+
+    /**
+     * @return Biggest recorded value, in nanoseconds
+     */
+    public long getMaxNanos() {
+        return totals.get(MAX);
+    }
+
+    /**
+     * @param bucket bucket index
+     * @return Number of values in the bucket
+     */
+    long getBucketCount(int bucket) {
+        return buckets.get(bucket);
+    }
+
+    /**
+     * @param bucket bucket index
+     * @return Upper bound of the bucket in microseconds, Long.MAX_VALUE for the last one
+     */
+    static long getBucketBoundMicros(int bucket) {
+        return bucket == BUCKET_COUNT - 1 ? Long.MAX_VALUE : 1L << bucket;
+    }
+
+    /**
+     * Estimates percentile of recorded values.
+     *
+     * @param percentile the percentile, 0 - 100
+     * @return Upper bound of the bucket the percentile falls into, in microseconds, 0 if nothing was recorded
+     */
+    public long getPercentileMicros(double percentile) {
+        long count = getCount();
+        if (count == 0) {
+            return 0;
+        }
+        long rank = (long) Math.ceil(count * percentile / 100);
+        long seen = 0;
+        for (int i = 0; i < BUCKET_COUNT - 1; i++) {
+            seen += buckets.get(i);
+            if (seen >= rank) {
+                return getBucketBoundMicros(i);
+            }
+        }
+        return getMaxNanos() / 1000;
+    }
+}
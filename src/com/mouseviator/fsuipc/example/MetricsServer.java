@@ -0,0 +1,235 @@
+package com.mouseviator.fsuipc.example;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.lang.management.ManagementFactory;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Locale;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+/**
+ * Publishes the source and device metrics through JMX (domain {@code com.mouseviator.fsuipc.example}, see JConsole/VisualVM) and
+ * as Prometheus text on {@code http://localhost:<port>/metrics}. The metrics are only read when asked for, nothing is done on the
+ * sample path.
+ *
+ * @author Murdock
+ */
+public class MetricsServer {
+
+    /**
+     * Default HTTP port
+     */
+    public static final int DEFAULT_PORT = 9404;
+
+    static final String JMX_DOMAIN = "com.mouseviator.fsuipc.example";
+
+    /**
+     * logger
+     */
+    private static final Logger logger = Logger.getLogger(MetricsServer.class.getName());
+
+    private final SimDataSource source;
+    private final DeviceManager deviceManager;
+    private HttpServer httpServer;
+
+    /**
+     * @param source source to publish metrics of
+     * @param deviceManager devices to publish metrics of
+     */
+    public MetricsServer(SimDataSource source, DeviceManager deviceManager) {
+        this.source = source;
+        this.deviceManager = deviceManager;
+    }
+
+    /**
+     * Registers the source and all devices added so far to the platform MBean server.
+     */
+    public void registerJmx() {
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        try {
+            server.registerMBean(source.getMetrics(), new ObjectName(JMX_DOMAIN + ":type=Source"));
+            for (ArduinoWriter device : deviceManager.getDevices()) {
+                server.registerMBean(device.getMetrics(),
+                        new ObjectName(JMX_DOMAIN + ":type=Device,name=" + ObjectName.quote(device.getProfile().getName())));
+            }
+        } catch (JMException ex) {
+            logger.log(Level.WARNING, "Failed to register metrics MBeans", ex);
+        }
+    }
+
+    /**
+     * Starts the HTTP endpoint, on the loopback interface only.
+     *
+     * @param port port to listen on
+     * @return False if the server could not be started
+     */
+    public synchronized boolean startHttp(int port) {
+        if (httpServer != null) {
+            return true;
+        }
+        try {
+            httpServer = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), port), 0);
+        } catch (IOException ex) {
+            logger.log(Level.WARNING, "Failed to start metrics endpoint on port " + port, ex);
+            return false;
+        }
+        httpServer.createContext("/metrics", this::handle);
+        httpServer.start();
+        logger.info("Metrics on http://localhost:" + port + "/metrics");
+        return true;
+    }
+
+    /**
+     * Stops the HTTP endpoint.
+     */
+    public synchronized void stopHttp() {
+        if (httpServer != null) {
+            httpServer.stop(0);
+            httpServer = null;
+        }
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        byte[] body = scrape().getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", "text/plain; version=0.0.4; charset=utf-8");
+        exchange.sendResponseHeaders(200, body.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(body);
+        }
+    }
+
+    /**
+     * @return All metrics in Prometheus text format
+     */
+    String scrape() {
+        StringBuilder sb = new StringBuilder(8192);
+        SourceMetrics sourceMetrics = source.getMetrics();
+        gauge(sb, "fsuipc_connected", "1 if the source is connected", "", source.isConnected() ? 1 : 0);
+        counter(sb, "fsuipc_samples_total", "Samples delivered to the pipeline", "", sourceMetrics.getSamples());
+        counter(sb, "fsuipc_failures_total", "Failed FSUIPC calls (onFail)", "", sourceMetrics.getFailures());
+        histogramHeader(sb, "fsuipc_poll_interval_seconds", "Time between two polls");
+        histogram(sb, "fsuipc_poll_interval_seconds", "", sourceMetrics.getPollInterval());
+        histogramHeader(sb, "fsuipc_dispatch_seconds", "Time spent delivering one sample to the listeners");
+        histogram(sb, "fsuipc_dispatch_seconds", "", sourceMetrics.getDispatchTime());
+
+        List<ArduinoWriter> devices = deviceManager.getDevices();
+        counterHeader(sb, "arduino_frames_published_total", "Frames published to the device");
+        for (ArduinoWriter device : devices) {
+            value(sb, "arduino_frames_published_total", labels(device), device.getMetrics().getFramesPublished());
+        }
+        counterHeader(sb, "arduino_frames_coalesced_total", "Frames replaced by newer frame before they could be sent");
+        for (ArduinoWriter device : devices) {
+            value(sb, "arduino_frames_coalesced_total", labels(device), device.getMetrics().getFramesCoalesced());
+        }
+        counterHeader(sb, "arduino_frames_urgent_total", "Frames published to the priority lane (alerts)");
+        for (ArduinoWriter device : devices) {
+            value(sb, "arduino_frames_urgent_total", labels(device), device.getMetrics().getFramesUrgent());
+        }
+        counterHeader(sb, "arduino_frames_sent_total", "Frames written to the port");
+        for (ArduinoWriter device : devices) {
+            value(sb, "arduino_frames_sent_total", labels(device), device.getMetrics().getFramesSent());
+        }
+        counterHeader(sb, "arduino_frames_dropped_total", "Frames that failed to write or were discarded");
+        for (ArduinoWriter device : devices) {
+            value(sb, "arduino_frames_dropped_total", labels(device), device.getMetrics().getFramesDropped());
+        }
+        counterHeader(sb, "arduino_bytes_written_total", "Bytes written to the port");
+        for (ArduinoWriter device : devices) {
+            value(sb, "arduino_bytes_written_total", labels(device), device.getMetrics().getBytesWritten());
+        }
+        counterHeader(sb, "arduino_write_deadline_misses_total", "Frames not written before their deadline");
+        for (ArduinoWriter device : devices) {
+            value(sb, "arduino_write_deadline_misses_total", labels(device), device.getMetrics().getWriteDeadlineMisses());
+        }
+        counterHeader(sb, "arduino_ack_timeouts_total", "Frames the sketch did not acknowledge in time");
+        for (ArduinoWriter device : devices) {
+            value(sb, "arduino_ack_timeouts_total", labels(device), device.getMetrics().getAckTimeouts());
+        }
+        gaugeHeader(sb, "arduino_link_throughput_bytes_per_second", "Estimated throughput of the link");
+        for (ArduinoWriter device : devices) {
+            value(sb, "arduino_link_throughput_bytes_per_second", labels(device), device.getMetrics().getLinkThroughputEstimate());
+        }
+        histogramHeader(sb, "arduino_sample_to_wire_seconds", "Time from sim sample to frame written to the port");
+        for (ArduinoWriter device : devices) {
+            histogram(sb, "arduino_sample_to_wire_seconds", labels(device), device.getMetrics().getSampleToWire());
+        }
+        histogramHeader(sb, "arduino_handoff_seconds", "Time frames waited for the writer thread");
+        for (ArduinoWriter device : devices) {
+            histogram(sb, "arduino_handoff_seconds", labels(device), device.getMetrics().getHandoff());
+        }
+        histogramHeader(sb, "arduino_format_seconds", "Frame encoding time");
+        for (ArduinoWriter device : devices) {
+            histogram(sb, "arduino_format_seconds", labels(device), device.getMetrics().getFormat());
+        }
+        histogramHeader(sb, "arduino_write_seconds", "Serial write time");
+        for (ArduinoWriter device : devices) {
+            histogram(sb, "arduino_write_seconds", labels(device), device.getMetrics().getWrite());
+        }
+        return sb.toString();
+    }
+
+    private static String labels(ArduinoWriter device) {
+        return "device=\"" + escape(device.getProfile().getName()) + "\",port=\"" + escape(device.getProfile().getPortName()) + "\"";
+    }
+
+    private static String escape(String value) {
+        return value.replace("\\", "\\\\").replace("\"", "\\\"").replace("\n", "\\n");
+    }
+
+    private static void gauge(StringBuilder sb, String name, String help, String labels, long value) {
+        gaugeHeader(sb, name, help);
+        value(sb, name, labels, value);
+    }
+
+    private static void gaugeHeader(StringBuilder sb, String name, String help) {
+        sb.append("# HELP ").append(name).append(' ').append(help).append('\n');
+        sb.append("# TYPE ").append(name).append(" gauge\n");
+    }
+
+    private static void counter(StringBuilder sb, String name, String help, String labels, long value) {
+        counterHeader(sb, name, help);
+        value(sb, name, labels, value);
+    }
+
+    private static void counterHeader(StringBuilder sb, String name, String help) {
+        sb.append("# HELP ").append(name).append(' ').append(help).append('\n');
+        sb.append("# TYPE ").append(name).append(" counter\n");
+    }
+
+    private static void histogramHeader(StringBuilder sb, String name, String help) {
+        sb.append("# HELP ").append(name).append(' ').append(help).append('\n');
+        sb.append("# TYPE ").append(name).append(" histogram\n");
+    }
+
+    private static void value(StringBuilder sb, String name, String labels, long value) {
+        sb.append(name);
+        if (!labels.isEmpty()) {
+            sb.append('{').append(labels).append('}');
+        }
+        sb.append(' ').append(value).append('\n');
+    }
+
+    private static void histogram(StringBuilder sb, String name, String labels, LatencyHistogram histogram) {
+        String prefix = labels.isEmpty() ? "" : labels + ",";
+        long cumulative = 0;
+        for (int i = 0; i < LatencyHistogram.BUCKET_COUNT; i++) {
+            cumulative += histogram.getBucketCount(i);
+            long bound = LatencyHistogram.getBucketBoundMicros(i);
+            String le = bound == Long.MAX_VALUE ? "+Inf" : String.format(Locale.ROOT, "%.6f", bound / 1e6);
+            sb.append(name).append("_bucket{").append(prefix).append("le=\"").append(le).append("\"} ").append(cumulative).append('\n');
+        }
+        String suffixLabels = labels.isEmpty() ? "" : "{" + labels + "}";
+        sb.append(name).append("_sum").append(suffixLabels).append(' ')
+                .append(String.format(Locale.ROOT, "%.6f", histogram.getSumNanos() / 1e9)).append('\n');
+        sb.append(name).append("_count").append(suffixLabels).append(' ').append(cumulative).append('\n');
+    }
+}
@@ -0,0 +1,237 @@
+package com.mouseviator.fsuipc.example;
+
+import java.awt.geom.Point2D;
+import java.util.EnumSet;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.LockSupport;
+import javax.swing.SwingUtilities;
+import org.jxmapviewer.JXMapKit;
+import org.jxmapviewer.viewer.GeoPosition;
+
+/**
+ * Keeps the {@link JXMapKit} centered on the aircraft, with tiles from {@link OfflineTileFactory}.
+ *
+ * <p>
+ * The position is read from the shared {@link SimState}, the samples are not delivered to the map at all. The map has its own
+ * thread that, at most every {@link #getUpdateIntervalMs()}, works out where the aircraft is in map pixels, prefetches the tiles ahead of it along its track into the
+ * {@link TileImageCache}, and moves the map only if the aircraft moved at least a pixel. The EDT gets nothing but the final
+ * {@code setAddressLocation}, and never more than one of them queued, so a busy EDT skips positions instead of falling behind.
+ * </p>
+ *
+ * @author Murdock
+ */
+public class MovingMap implements SimDataSink, Runnable {
+
+    /**
+     * Default interval of map updates
+     */
+    public static final long DEFAULT_UPDATE_INTERVAL_MS = 500;
+    /**
+     * How far ahead along the track to prefetch
+     */
+    private static final long PREFETCH_AHEAD_MS = 30000;
+    /**
+     * Tiles around the current and predicted position to prefetch, 1 = 3x3 tiles
+     */
+    private static final int PREFETCH_RADIUS_TILES = 1;
+    /**
+     * Most positions along the track to prefetch around, keeps the prefetched tiles well within the cache
+     */
+    private static final int MAX_PREFETCH_TILES = 4;
+    /**
+     * Smaller moves do not redraw the map
+     */
+    private static final double MIN_MOVE_PIXELS = 1;
+
+    private static final Set<SimField> REQUIRED_FIELDS = EnumSet.of(SimField.LATITUDE, SimField.LONGITUDE);
+
+    private final JXMapKit mapKit;
+    private final OfflineTileFactory tileFactory;
+    private final SimState simState;
+    private final long updateIntervalMs;
+
+    /**
+     * Map zoom, tracked from the map so the thread does not have to ask the EDT
+     */
+    private volatile int zoom;
+    /**
+     * Position to show, handed over to the EDT
+     */
+    private volatile GeoPosition shownPosition;
+    private final AtomicBoolean updatePending = new AtomicBoolean(false);
+    private final Runnable updateMap = new Runnable() {
+        @Override
+        public void run() {
+            updatePending.set(false);
+            mapKit.setAddressLocation(shownPosition);
+        }
+    };
+
+    /**
+     * Only touched by the map thread
+     */
+    private final SimSample state = new SimSample();
+    private long lastSequence = -1;
+    private Point2D shownPixel;
+    private Point2D lastPixel;
+    private int lastZoom = -1;
+
+    private volatile boolean running = false;
+    private Thread thread;
+
+    /**
+     * Creates new moving map with the default update interval. Must be called on the EDT.
+     *
+     * @param mapKit map to move, its tile factory is replaced
+     * @param tileFactory factory with the local tiles
+     * @param simState state to read the position from
+     */
+    public MovingMap(JXMapKit mapKit, OfflineTileFactory tileFactory, SimState simState) {
+        this(mapKit, tileFactory, simState, DEFAULT_UPDATE_INTERVAL_MS);
+    }
+
+    /**
+     * Creates new moving map. Must be called on the EDT.
+     *
+     * @param mapKit map to move, its tile factory is replaced
+     * @param tileFactory factory with the local tiles
+     * @param simState state to read the position from
+     * @param updateIntervalMs how often to move the map at most
+     */
+    public MovingMap(JXMapKit mapKit, OfflineTileFactory tileFactory, SimState simState, long updateIntervalMs) {
+        this.mapKit = mapKit;
+        this.tileFactory = tileFactory;
+        this.simState = simState;
+        this.updateIntervalMs = updateIntervalMs;
+        mapKit.setTileFactory(tileFactory);
+        zoom = mapKit.getMainMap().getZoom();
+        mapKit.getMainMap().addPropertyChangeListener("zoom", e -> zoom = (Integer) e.getNewValue());
+    }
+
+    /**
+     * @return How often the map is moved at most
+     */
+    public long getUpdateIntervalMs() {
+        return updateIntervalMs;
+    }
+
+    @Override
+    public Set<SimField> getRequiredFields() {
+        return REQUIRED_FIELDS;
+    }
+
+    /**
+     * Starts the map thread.
+     */
+    public synchronized void start() {
+        if (running) {
+            return;
+        }
+        running = true;
+        thread = new Thread(this, "Moving map");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * Stops the map thread.
+     */
+    public synchronized void stop() {
+        if (!running) {
+            return;
+        }
+        running = false;
+        thread.interrupt();
+        try {
+            thread.join(1000);
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        }
+        thread = null;
+    }
+
+    @Override
+    public void run() {
+        long periodNanos = updateIntervalMs * 1_000_000L;
+        long next = System.nanoTime();
+        while (running) {
+            long wait;
+            while ((wait = next - System.nanoTime()) > 0 && running) {
+                LockSupport.parkNanos(wait);
+            }
+            next += periodNanos;
+            if (running) {
+                update();
+            }
+        }
+    }
+
+    /**
+     * One map update, on the map thread.
+     */
+    private void update() {
+        if (simState.getSequence() == lastSequence) {
+            return;
+        }
+        lastSequence = simState.read(state);
+        if (!state.has(SimField.LATITUDE) || !state.has(SimField.LONGITUDE)) {
+            return;
+        }
+        double lat = state.getDouble(SimField.LATITUDE);
+        double lon = state.getDouble(SimField.LONGITUDE);
+
+        int mapZoom = zoom;
+        GeoPosition position = new GeoPosition(lat, lon);
+        Point2D pixel = tileFactory.geoToPixel(position, mapZoom);
+        if (mapZoom != lastZoom) {
+            //no track to follow across zoom change
+            lastZoom = mapZoom;
+            lastPixel = null;
+            shownPixel = null;
+        }
+
+        prefetch(pixel, mapZoom);
+        lastPixel = pixel;
+
+        if (shownPixel != null && shownPixel.distance(pixel) < MIN_MOVE_PIXELS) {
+            return;
+        }
+        shownPixel = pixel;
+        shownPosition = position;
+        if (updatePending.compareAndSet(false, true)) {
+            SwingUtilities.invokeLater(updateMap);
+        }
+    }
+
+    /**
+     * Loads the tiles around the aircraft and around where it will be, extrapolated from its movement since the last update.
+     */
+    private void prefetch(Point2D pixel, int mapZoom) {
+        TileImageCache cache = tileFactory.getCache();
+        int tileSize = tileFactory.getTileSize(mapZoom);
+        int tileZoom = OfflineTileFactory.tileZoom(mapZoom);
+        prefetchAround(cache, pixel.getX(), pixel.getY(), tileSize, tileZoom);
+        if (lastPixel == null) {
+            return;
+        }
+        double steps = (double) PREFETCH_AHEAD_MS / updateIntervalMs;
+        double dx = (pixel.getX() - lastPixel.getX()) * steps;
+        double dy = (pixel.getY() - lastPixel.getY()) * steps;
+        //one tile at a time along the track, so no tile on the way is skipped
+        int tiles = (int) Math.min(Math.ceil(Math.hypot(dx, dy) / tileSize), MAX_PREFETCH_TILES);
+        for (int i = 1; i <= tiles; i++) {
+            prefetchAround(cache, pixel.getX() + dx * i / tiles, pixel.getY() + dy * i / tiles, tileSize, tileZoom);
+        }
+    }
+
+    private static void prefetchAround(TileImageCache cache, double x, double y, int tileSize, int tileZoom) {
+        int tileX = (int) Math.floor(x / tileSize);
+        int tileY = (int) Math.floor(y / tileSize);
+        for (int ty = tileY - PREFETCH_RADIUS_TILES; ty <= tileY + PREFETCH_RADIUS_TILES; ty++) {
+            for (int tx = tileX - PREFETCH_RADIUS_TILES; tx <= tileX + PREFETCH_RADIUS_TILES; tx++) {
+                cache.prefetch(tileZoom, tx, ty);
+            }
+        }
+    }
+}
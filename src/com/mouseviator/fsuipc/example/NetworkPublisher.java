@@ -0,0 +1,870 @@
+package com.mouseviator.fsuipc.example;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.StandardProtocolFamily;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.DatagramChannel;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Publishes sim values to panels on the local network - tablets, second PC - from a single NIO selector thread, next to the serial
+ * devices.
+ *
+ * <p>
+ * The samples are only merged into a mailbox on the source thread, and the selector thread is woken up. It takes the latest
+ * values, formats each changed field once, and fans them out:</p>
+ * <ul>
+ * <li>UDP multicast (default {@code 239.255.77.77:9406}): one datagram with all published fields per snapshot, so lost datagrams
+ * do not matter. Layout, big endian: int magic 0x46534E31 ("FSN1"), int sequence, long mask of fields present (bit = ordinal of
+ * {@link SimField}), then one double per present field, in ordinal order.</li>
+ * <li>WebSocket (default {@code ws://<host>:9405/}): JSON text messages with the fields that changed, like
+ * {@code {"seq":42,"HEADING":271.5,"GEAR_NOSE":16383}}, the first message has all values. Clients choose the fields by sending
+ * {@code subscribe HEADING,COM1_FREQUENCY_HZ} (or {@code subscribe *}, the default), newly subscribed fields are sent at once.</li>
+ * </ul>
+ *
+ * <p>
+ * Nothing is queued for slow clients. A client has room for one message; while it is not written out, the changes for that client
+ * are only marked, and sent with their latest values once the socket takes the previous message. A client that does not read
+ * anything for {@link #CLIENT_STALL_TIMEOUT_MS} is dropped.</p>
+ *
+ * @author Murdock
+ */
+public class NetworkPublisher implements SimSampleListener, SimDataSink, Runnable {
+
+    /**
+     * Default WebSocket port
+     */
+    public static final int DEFAULT_WEBSOCKET_PORT = 9405;
+    /**
+     * Default multicast group, organization local scope
+     */
+    public static final String DEFAULT_MULTICAST_GROUP = "239.255.77.77";
+    public static final int DEFAULT_MULTICAST_PORT = 9406;
+    public static final int DATAGRAM_MAGIC = 0x46534E31;
+    /**
+     * Client that does not take a message for this long is dropped
+     */
+    public static final long CLIENT_STALL_TIMEOUT_MS = 10000;
+    /**
+     * Fields published by default - what the panels show
+     */
+    public static final Set<SimField> DEFAULT_FIELDS = Collections.unmodifiableSet(EnumSet.of(
+            SimField.HEADING, SimField.MAGNETIC_VARIATION, SimField.COM1_FREQUENCY_HZ, SimField.COM1_STANDBY_HZ,
+            SimField.GEAR_NOSE, SimField.GEAR_LEFT, SimField.GEAR_RIGHT, SimField.IAS, SimField.VERTICAL_SPEED,
+            SimField.GPS_ALTITUDE, SimField.ENG1_OIL_TEMPERATURE, SimField.ENG1_OIL_PRESSURE, SimField.ENG1_FUEL_FLOW,
+            SimField.ENG2_OIL_TEMPERATURE, SimField.ENG2_OIL_PRESSURE, SimField.ENG2_FUEL_FLOW));
+
+    private static final String WEBSOCKET_GUID = "258EAFA5-E914-47DA-95CA-C5AB0DC85B11";
+    private static final int MAX_REQUEST_SIZE = 4096;
+    private static final int MAX_CLIENT_FRAME = 1024;
+    /**
+     * Control frame payload is at most 125 bytes, RFC 6455
+     */
+    private static final int MAX_CONTROL_PAYLOAD = 125;
+    private static final String HANDSHAKE_RESPONSE = "HTTP/1.1 101 Switching Protocols\r\nUpgrade: websocket\r\n"
+            + "Connection: Upgrade\r\nSec-WebSocket-Accept: ";
+    /**
+     * Base64 of SHA-1
+     */
+    private static final int ACCEPT_KEY_LENGTH = 28;
+    private static final byte[] BAD_REQUEST_RESPONSE = "HTTP/1.1 400 Bad Request\r\nConnection: close\r\n\r\n"
+            .getBytes(StandardCharsets.ISO_8859_1);
+    /**
+     * Longest JSON value: sign, 10 digits, dot, 3 decimals
+     */
+    private static final int MAX_VALUE_LENGTH = 16;
+    private static final int OPCODE_TEXT = 0x1;
+    private static final int OPCODE_CLOSE = 0x8;
+    private static final int OPCODE_PING = 0x9;
+    private static final int OPCODE_PONG = 0xA;
+
+    /**
+     * logger
+     */
+    private static final Logger logger = Logger.getLogger(NetworkPublisher.class.getName());
+
+    /**
+     * One WebSocket client, only touched by the selector thread
+     */
+    private static class Client {
+
+        final SocketChannel channel;
+        final SelectionKey key;
+        /**
+         * Remote address, for the log - the channel does not know it anymore once closed
+         */
+        final String address;
+        final ByteBuffer in = ByteBuffer.allocate(MAX_REQUEST_SIZE);
+        /**
+         * Room for one message, written out before next one is made
+         */
+        final ByteBuffer out;
+        boolean upgraded = false;
+        boolean closing = false;
+        long subscribed;
+        /**
+         * Fields changed since the last message, waiting for the socket
+         */
+        long dirty = 0;
+        long stalledSince = 0;
+
+        Client(SocketChannel channel, SelectionKey key, String address, int outSize, long subscribed) {
+            this.channel = channel;
+            this.key = key;
+            this.address = address;
+            this.out = ByteBuffer.allocate(outSize);
+            this.subscribed = subscribed;
+        }
+    }
+
+    private final Set<SimField> fields;
+    private final long fieldMask;
+    private final InetSocketAddress webSocketAddress;
+    private final InetSocketAddress multicastGroup;
+
+    /**
+     * Lock guarding the mailbox
+     */
+    private final Object lock = new Object();
+    /**
+     * Values merged from the samples since the selector thread took them last
+     */
+    private final SimSample incoming = new SimSample();
+    private boolean hasIncoming = false;
+
+    /**
+     * Latest values and their formatted JSON fragments ({@code "NAME":value}), only touched by the selector thread
+     */
+    private final SimSample working = new SimSample();
+    private final double[] current = new double[SimField.VALUES.length];
+    private final byte[][] fragments = new byte[SimField.VALUES.length][];
+    private final int[] fragmentLengths = new int[SimField.VALUES.length];
+    private long knownMask = 0;
+    private int sequence = 0;
+    private final byte[] digits = new byte[20];
+
+    private final List<Client> clients = new ArrayList<>();
+    private final ByteBuffer datagram;
+    private final int maxMessageSize;
+    private final int clientBufferSize;
+
+    private Selector selector;
+    private ServerSocketChannel serverChannel;
+    private DatagramChannel datagramChannel;
+    private volatile boolean running = false;
+    private Thread thread;
+
+    private volatile int clientCount = 0;
+    private volatile long messagesSent = 0;
+    private volatile long messagesCoalesced = 0;
+    private volatile long clientsDropped = 0;
+    private volatile long datagramsSent = 0;
+
+    /**
+     * Creates publisher of the {@link #DEFAULT_FIELDS} on the default ports.
+     */
+    public NetworkPublisher() {
+        this(DEFAULT_FIELDS, new InetSocketAddress(DEFAULT_WEBSOCKET_PORT),
+                new InetSocketAddress(DEFAULT_MULTICAST_GROUP, DEFAULT_MULTICAST_PORT));
+    }
+
+    /**
+     * @param fields fields to publish
+     * @param webSocketAddress address to listen for WebSocket clients on, null for no WebSocket
+     * @param multicastGroup multicast group and port to send datagrams to, null for no multicast
+     */
+    public NetworkPublisher(Set<SimField> fields, InetSocketAddress webSocketAddress, InetSocketAddress multicastGroup) {
+        this.fields = Collections.unmodifiableSet(EnumSet.copyOf(fields));
+        this.fieldMask = SimField.mask(fields);
+        this.webSocketAddress = webSocketAddress;
+        this.multicastGroup = multicastGroup;
+        int messageSize = 32;
+        for (SimField field : this.fields) {
+            byte[] name = field.name().getBytes(StandardCharsets.US_ASCII);
+            byte[] fragment = new byte[name.length + 4 + MAX_VALUE_LENGTH];
+            //"NAME":
+            fragment[0] = '"';
+            System.arraycopy(name, 0, fragment, 1, name.length);
+            fragment[name.length + 1] = '"';
+            fragment[name.length + 2] = ':';
+            fragments[field.ordinal()] = fragment;
+            messageSize += fragment.length + 1;
+        }
+        //WebSocket header is at most 4 bytes for messages this size
+        this.maxMessageSize = messageSize + 4;
+        //the handshake response or one message, and a control frame answered meanwhile
+        int handshakeSize = Math.max(HANDSHAKE_RESPONSE.length() + ACCEPT_KEY_LENGTH + 4, BAD_REQUEST_RESPONSE.length);
+        this.clientBufferSize = Math.max(handshakeSize, maxMessageSize) + 2 + MAX_CONTROL_PAYLOAD;
+        this.datagram = ByteBuffer.allocate(16 + 8 * this.fields.size());
+    }
+
+    @Override
+    public Set<SimField> getRequiredFields() {
+        return fields;
+    }
+
+    @Override
+    public void onSample(SimSample sample) {
+        if ((sample.getFieldMask() & fieldMask) == 0) {
+            return;
+        }
+        synchronized (lock) {
+            for (SimField field : fields) {
+                if (sample.has(field)) {
+                    incoming.set(field, sample.getDouble(field));
+                }
+            }
+            incoming.setTimeNanos(sample.getTimeNanos());
+            hasIncoming = true;
+        }
+        Selector s = selector;
+        if (s != null) {
+            s.wakeup();
+        }
+    }
+
+    /**
+     * Opens the sockets and starts the selector thread.
+     *
+     * @return False if the sockets could not be opened
+     */
+    public synchronized boolean start() {
+        if (running) {
+            return true;
+        }
+        try {
+            selector = Selector.open();
+            if (webSocketAddress != null) {
+                serverChannel = ServerSocketChannel.open();
+                serverChannel.configureBlocking(false);
+                serverChannel.bind(webSocketAddress);
+                serverChannel.register(selector, SelectionKey.OP_ACCEPT);
+                logger.info("Publishing sim data on ws://" + webSocketAddress.getHostString() + ":" + webSocketAddress.getPort() + "/");
+            }
+            if (multicastGroup != null) {
+                datagramChannel = DatagramChannel.open(StandardProtocolFamily.INET);
+                datagramChannel.configureBlocking(false);
+                //LAN only
+                datagramChannel.setOption(StandardSocketOptions.IP_MULTICAST_TTL, 1);
+                logger.info("Publishing sim data to udp://" + multicastGroup.getHostString() + ":" + multicastGroup.getPort());
+            }
+        } catch (IOException ex) {
+            logger.log(Level.WARNING, "Failed to open network publisher sockets", ex);
+            closeAll();
+            return false;
+        }
+        running = true;
+        thread = new Thread(this, "Network publisher");
+        thread.setDaemon(true);
+        thread.start();
+        return true;
+    }
+
+    /**
+     * Stops the selector thread and closes all connections.
+     */
+    public synchronized void stop() {
+        if (!running) {
+            return;
+        }
+        running = false;
+        selector.wakeup();
+        try {
+            thread.join(1000);
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        }
+        thread = null;
+    }
+
+    /**
+     * @return Port the WebSocket clients connect to, -1 if not listening
+     */
+    public int getWebSocketPort() {
+        ServerSocketChannel channel = serverChannel;
+        if (channel == null || !channel.isOpen()) {
+            return -1;
+        }
+        return channel.socket().getLocalPort();
+    }
+
+    /**
+     * @return Number of connected WebSocket clients
+     */
+    public int getClientCount() {
+        return clientCount;
+    }
+
+    /**
+     * @return Number of WebSocket messages sent
+     */
+    public long getMessagesSent() {
+        return messagesSent;
+    }
+
+    /**
+     * @return Number of times changes were held back because the client did not take the previous message yet
+     */
+    public long getMessagesCoalesced() {
+        return messagesCoalesced;
+    }
+
+    /**
+     * @return Number of clients dropped for not reading
+     */
+    public long getClientsDropped() {
+        return clientsDropped;
+    }
+
+    /**
+     * @return Number of multicast datagrams sent
+     */
+    public long getDatagramsSent() {
+        return datagramsSent;
+    }
+
+    @Override
+    public void run() {
+        try {
+            while (running) {
+                selector.select(1000);
+                Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+                while (keys.hasNext()) {
+                    SelectionKey key = keys.next();
+                    keys.remove();
+                    if (!key.isValid()) {
+                        continue;
+                    }
+                    if (key.isAcceptable()) {
+                        accept();
+                    } else {
+                        Client client = (Client) key.attachment();
+                        try {
+                            if (key.isReadable()) {
+                                read(client);
+                            }
+                            if (key.isValid() && key.isWritable()) {
+                                flush(client);
+                            }
+                        } catch (RuntimeException ex) {
+                            //one misbehaving client must not stop publishing to the others
+                            dropFailed(client, ex);
+                        }
+                    }
+                }
+                boolean publish;
+                synchronized (lock) {
+                    publish = hasIncoming;
+                    if (publish) {
+                        working.copyFrom(incoming);
+                        incoming.clear();
+                        hasIncoming = false;
+                    }
+                }
+                if (publish) {
+                    publish(working);
+                }
+                dropStalled(System.nanoTime());
+            }
+        } catch (IOException ex) {
+            logger.log(Level.SEVERE, "Network publisher failed", ex);
+        } finally {
+            closeAll();
+        }
+    }
+
+    /**
+     * Formats the changed fields and sends them to everybody.
+     */
+    private void publish(SimSample snapshot) {
+        long changed = 0;
+        long present = snapshot.getFieldMask() & fieldMask;
+        for (long bits = present; bits != 0; bits &= bits - 1) {
+            int ordinal = Long.numberOfTrailingZeros(bits);
+            double value = snapshot.getDouble(SimField.VALUES[ordinal]);
+            if ((knownMask & (1L << ordinal)) == 0 || value != current[ordinal]) {
+                current[ordinal] = value;
+                formatFragment(ordinal, value);
+                changed |= 1L << ordinal;
+            }
+        }
+        knownMask |= present;
+        if (changed == 0) {
+            return;
+        }
+        sequence++;
+
+        if (datagramChannel != null) {
+            sendDatagram();
+        }
+        for (int i = clients.size() - 1; i >= 0; i--) {
+            Client client = clients.get(i);
+            if (client.upgraded && !client.closing) {
+                try {
+                    send(client, changed & client.subscribed);
+                } catch (RuntimeException ex) {
+                    dropFailed(client, ex);
+                }
+            }
+        }
+    }
+
+    private void sendDatagram() {
+        datagram.clear();
+        datagram.putInt(DATAGRAM_MAGIC);
+        datagram.putInt(sequence);
+        datagram.putLong(knownMask);
+        for (long bits = knownMask; bits != 0; bits &= bits - 1) {
+            datagram.putDouble(current[Long.numberOfTrailingZeros(bits)]);
+        }
+        datagram.flip();
+        try {
+            //non-blocking, a datagram that does not fit is simply lost, the next one has everything again
+            if (datagramChannel.send(datagram, multicastGroup) > 0) {
+                datagramsSent++;
+            }
+        } catch (IOException ex) {
+            logger.log(Level.FINE, "Failed to send datagram", ex);
+        }
+    }
+
+    /**
+     * Sends the fields to the client, or marks them for later if the client has not taken the previous message yet.
+     */
+    private void send(Client client, long mask) {
+        mask &= knownMask;
+        if (mask == 0) {
+            return;
+        }
+        if (client.out.position() > 0) {
+            //still writing the previous message, send the latest values when it is done
+            client.dirty |= mask;
+            messagesCoalesced++;
+            return;
+        }
+        mask |= client.dirty;
+        client.dirty = 0;
+
+        //payload length first, the header needs it
+        int length = 8 + countDigits(sequence);
+        for (long bits = mask; bits != 0; bits &= bits - 1) {
+            length += 1 + fragmentLengths[Long.numberOfTrailingZeros(bits)];
+        }
+        ByteBuffer out = client.out;
+        putFrameHeader(out, OPCODE_TEXT, length);
+        out.put((byte) '{');
+        out.put((byte) '"');
+        out.put((byte) 's');
+        out.put((byte) 'e');
+        out.put((byte) 'q');
+        out.put((byte) '"');
+        out.put((byte) ':');
+        putDigits(out, sequence);
+        for (long bits = mask; bits != 0; bits &= bits - 1) {
+            int ordinal = Long.numberOfTrailingZeros(bits);
+            out.put((byte) ',');
+            out.put(fragments[ordinal], 0, fragmentLengths[ordinal]);
+        }
+        out.put((byte) '}');
+        messagesSent++;
+        flush(client);
+    }
+
+    /**
+     * Writes what the socket takes, and waits for OP_WRITE for the rest.
+     */
+    private void flush(Client client) {
+        ByteBuffer out = client.out;
+        try {
+            out.flip();
+            client.channel.write(out);
+            out.compact();
+        } catch (IOException ex) {
+            close(client);
+            return;
+        }
+        if (out.position() > 0) {
+            if (client.stalledSince == 0) {
+                client.stalledSince = System.nanoTime();
+            }
+            client.key.interestOps(SelectionKey.OP_READ | SelectionKey.OP_WRITE);
+            return;
+        }
+        client.stalledSince = 0;
+        client.key.interestOps(SelectionKey.OP_READ);
+        if (client.closing) {
+            close(client);
+        } else if (client.dirty != 0) {
+            send(client, client.dirty);
+        }
+    }
+
+    private void dropFailed(Client client, RuntimeException ex) {
+        logger.log(Level.WARNING, "Dropping network client " + client.address + ", it failed", ex);
+        clientsDropped++;
+        close(client);
+    }
+
+    private void dropStalled(long now) {
+        for (int i = clients.size() - 1; i >= 0; i--) {
+            Client client = clients.get(i);
+            if (client.stalledSince != 0 && now - client.stalledSince > CLIENT_STALL_TIMEOUT_MS * 1_000_000L) {
+                logger.info("Dropping network client " + client.address + ", it does not read");
+                clientsDropped++;
+                close(client);
+            }
+        }
+    }
+
+    private void accept() throws IOException {
+        SocketChannel channel = serverChannel.accept();
+        if (channel == null) {
+            return;
+        }
+        SelectionKey key;
+        String address;
+        try {
+            address = String.valueOf(channel.getRemoteAddress());
+            channel.configureBlocking(false);
+            channel.setOption(StandardSocketOptions.TCP_NODELAY, true);
+            key = channel.register(selector, SelectionKey.OP_READ);
+        } catch (IOException ex) {
+            //gone already
+            channel.close();
+            return;
+        }
+        Client client = new Client(channel, key, address, clientBufferSize, fieldMask);
+        key.attach(client);
+        clients.add(client);
+        clientCount = clients.size();
+    }
+
+    private void read(Client client) {
+        int count;
+        try {
+            count = client.channel.read(client.in);
+        } catch (IOException ex) {
+            close(client);
+            return;
+        }
+        if (count < 0) {
+            close(client);
+            return;
+        }
+        if (client.upgraded) {
+            readFrames(client);
+        } else {
+            readHandshake(client);
+        }
+    }
+
+    /**
+     * Reads the HTTP upgrade request and answers it, when it is complete.
+     */
+    private void readHandshake(Client client) {
+        ByteBuffer in = client.in;
+        String request = new String(in.array(), 0, in.position(), StandardCharsets.ISO_8859_1);
+        int end = request.indexOf("\r\n\r\n");
+        if (end < 0) {
+            if (!in.hasRemaining()) {
+                close(client);
+            }
+            return;
+        }
+        String key = null;
+        for (String line : request.substring(0, end).split("\r\n")) {
+            int colon = line.indexOf(':');
+            if (colon > 0 && line.substring(0, colon).trim().toLowerCase(Locale.ROOT).equals("sec-websocket-key")) {
+                key = line.substring(colon + 1).trim();
+            }
+        }
+        //keep whatever came after the request
+        in.flip();
+        in.position(end + 4);
+        in.compact();
+
+        ByteBuffer out = client.out;
+        if (key == null) {
+            out.put(BAD_REQUEST_RESPONSE);
+            client.closing = true;
+            flush(client);
+            return;
+        }
+        String response = HANDSHAKE_RESPONSE + acceptKey(key) + "\r\n\r\n";
+        out.put(response.getBytes(StandardCharsets.ISO_8859_1));
+        client.upgraded = true;
+        //everything we know, as soon as the response is out
+        client.dirty = knownMask & client.subscribed;
+        logger.info("Network client " + client.address + " connected");
+        flush(client);
+        readFrames(client);
+    }
+
+    /**
+     * Reads complete frames from the client. Only single frame text, close and ping are expected.
+     */
+    private void readFrames(Client client) {
+        ByteBuffer in = client.in;
+        in.flip();
+        while (!client.closing && in.remaining() >= 2) {
+            int start = in.position();
+            int first = in.get() & 0xFF;
+            int second = in.get() & 0xFF;
+            int opcode = first & 0x0F;
+            boolean fin = (first & 0x80) != 0;
+            boolean masked = (second & 0x80) != 0;
+            int length = second & 0x7F;
+            if (length == 126) {
+                if (in.remaining() < 2) {
+                    in.position(start);
+                    break;
+                }
+                length = in.getShort() & 0xFFFF;
+            } else if (length == 127 || !fin || !masked) {
+                //clients must mask, and we do not take anything big or fragmented
+                close(client);
+                return;
+            }
+            if (length > ((opcode & 0x8) != 0 ? MAX_CONTROL_PAYLOAD : MAX_CLIENT_FRAME)) {
+                close(client);
+                return;
+            }
+            if (in.remaining() < 4 + length) {
+                in.position(start);
+                break;
+            }
+            byte[] mask = new byte[4];
+            in.get(mask);
+            byte[] payload = new byte[length];
+            in.get(payload);
+            for (int i = 0; i < length; i++) {
+                payload[i] ^= mask[i & 3];
+            }
+            switch (opcode) {
+                case OPCODE_TEXT:
+                    command(client, new String(payload, StandardCharsets.UTF_8).trim());
+                    break;
+                case OPCODE_PING:
+                    control(client, OPCODE_PONG, payload);
+                    break;
+                case OPCODE_PONG:
+                    break;
+                case OPCODE_CLOSE:
+                    control(client, OPCODE_CLOSE, new byte[0]);
+                    break;
+                default:
+                    close(client);
+                    return;
+            }
+        }
+        in.compact();
+    }
+
+    /**
+     * Handles {@code subscribe FIELD,FIELD...} and {@code subscribe *}.
+     */
+    private void command(Client client, String command) {
+        if (!command.startsWith("subscribe ")) {
+            logger.fine("Unknown command from " + client.address + ": " + command);
+            return;
+        }
+        String list = command.substring("subscribe ".length()).trim();
+        long subscribed = 0;
+        if (list.equals("*")) {
+            subscribed = fieldMask;
+        } else {
+            for (String name : list.split(",")) {
+                try {
+                    subscribed |= SimField.valueOf(name.trim()).getMask() & fieldMask;
+                } catch (IllegalArgumentException ex) {
+                    logger.fine("Unknown field from " + client.address + ": " + name);
+                }
+            }
+        }
+        long added = subscribed & ~client.subscribed;
+        client.subscribed = subscribed;
+        client.dirty &= subscribed;
+        send(client, added);
+    }
+
+    /**
+     * Sends control frame right away. Goes after the pending message, if it fits, else the client is not reading and is dropped.
+     */
+    private void control(Client client, int opcode, byte[] payload) {
+        ByteBuffer out = client.out;
+        if (out.remaining() < 4 + payload.length) {
+            close(client);
+            return;
+        }
+        putFrameHeader(out, opcode, payload.length);
+        out.put(payload);
+        if (opcode == OPCODE_CLOSE) {
+            client.closing = true;
+        }
+        flush(client);
+    }
+
+    private void close(Client client) {
+        if (!client.key.isValid() && !clients.contains(client)) {
+            return;
+        }
+        client.closing = true;
+        client.key.cancel();
+        try {
+            client.channel.close();
+        } catch (IOException ex) {
+            //closing anyway
+        }
+        if (clients.remove(client) && client.upgraded) {
+            logger.info("Network client " + client.address + " disconnected");
+        }
+        clientCount = clients.size();
+    }
+
+    private void closeAll() {
+        for (int i = clients.size() - 1; i >= 0; i--) {
+            close(clients.get(i));
+        }
+        try {
+            if (serverChannel != null) {
+                serverChannel.close();
+                serverChannel = null;
+            }
+            if (datagramChannel != null) {
+                datagramChannel.close();
+                datagramChannel = null;
+            }
+            if (selector != null) {
+                selector.close();
+            }
+        } catch (IOException ex) {
+            logger.log(Level.WARNING, "Failed to close network publisher sockets", ex);
+        }
+    }
+
+    /**
+     * Formats {@code "NAME":value} of the field into its fragment. Ints without decimals, the rest with 3 decimals.
+     */
+    private void formatFragment(int ordinal, double value) {
+        byte[] fragment = fragments[ordinal];
+        int position = SimField.VALUES[ordinal].name().length() + 3;
+        if (SimField.VALUES[ordinal].getValueType() == SimField.ValueType.INT) {
+            position = putNumber(fragment, position, (long) value, 0);
+        } else {
+            position = putNumber(fragment, position, Math.round(value * 1000), 3);
+        }
+        fragmentLengths[ordinal] = position;
+    }
+
+    /**
+     * Puts fixed point number, scaled by 10^decimals, as decimal text.
+     *
+     * @return Position after the number
+     */
+    private int putNumber(byte[] target, int position, long scaled, int decimals) {
+        if (scaled < 0) {
+            target[position++] = '-';
+            scaled = -scaled;
+        }
+        int count = 0;
+        do {
+            digits[count++] = (byte) ('0' + scaled % 10);
+            scaled /= 10;
+        } while (scaled > 0 || count <= decimals);
+        while (count > 0) {
+            if (count == decimals) {
+                target[position++] = '.';
+            }
+            target[position++] = digits[--count];
+        }
+        return position;
+    }
+
+    private void putDigits(ByteBuffer out, int value) {
+        int count = 0;
+        do {
+            digits[count++] = (byte) ('0' + value % 10);
+            value /= 10;
+        } while (value > 0);
+        while (count > 0) {
+            out.put(digits[--count]);
+        }
+    }
+
+    private static int countDigits(int value) {
+        int count = 1;
+        while (value >= 10) {
+            value /= 10;
+            count++;
+        }
+        return count;
+    }
+
+    private static void putFrameHeader(ByteBuffer out, int opcode, int length) {
+        out.put((byte) (0x80 | opcode));
+        if (length < 126) {
+            out.put((byte) length);
+        } else {
+            out.put((byte) 126);
+            out.putShort((short) length);
+        }
+    }
+
+    private static String acceptKey(String key) {
+        try {
+            MessageDigest sha1 = MessageDigest.getInstance("SHA-1");
+            byte[] digest = sha1.digest((key + WEBSOCKET_GUID).getBytes(StandardCharsets.ISO_8859_1));
+            return Base64.getEncoder().encodeToString(digest);
+        } catch (NoSuchAlgorithmException ex) {
+            //every JVM has SHA-1
+            throw new IllegalStateException(ex);
+        }
+    }
+
+    /**
+     * Publishes synthetic sim data on localhost, for testing network panels without the sim.
+     *
+     * @param args optional test length in seconds (default 60), optional WebSocket port, optional multicast group
+     */
+    public static void main(String args[]) throws InterruptedException {
+        int seconds = args.length > 0 ? Integer.parseInt(args[0]) : 60;
+        int port = args.length > 1 ? Integer.parseInt(args[1]) : DEFAULT_WEBSOCKET_PORT;
+        String group = args.length > 2 ? args[2] : DEFAULT_MULTICAST_GROUP;
+
+        SyntheticDataSource source = new SyntheticDataSource(4);
+        NetworkPublisher publisher = new NetworkPublisher(DEFAULT_FIELDS,
+                new InetSocketAddress(InetAddress.getLoopbackAddress(), port), new InetSocketAddress(group, DEFAULT_MULTICAST_PORT));
+        source.addSampleListener(publisher);
+        if (!publisher.start()) {
+            return;
+        }
+        source.start();
+        for (int i = 0; i < seconds; i++) {
+            Thread.sleep(1000);
+            System.out.println(String.format("%d clients, %d messages, %d coalesced, %d dropped, %d datagrams",
+                    publisher.getClientCount(), publisher.getMessagesSent(), publisher.getMessagesCoalesced(),
+                    publisher.getClientsDropped(), publisher.getDatagramsSent()));
+        }
+        source.stop();
+        publisher.stop();
+    }
+}
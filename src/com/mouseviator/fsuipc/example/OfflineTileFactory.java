@@ -0,0 +1,76 @@
+package com.mouseviator.fsuipc.example;
+
+import org.jxmapviewer.viewer.AbstractTileFactory;
+import org.jxmapviewer.viewer.TileFactoryInfo;
+
+/**
+ * Map tile factory reading OpenStreetMap style tiles from a local {@link TileStore} through a size bounded
+ * {@link TileImageCache}, instead of downloading them. Uses the same zoom levels as the jxmapviewer OSM factory, so it can
+ * replace it in the {@link org.jxmapviewer.JXMapKit}.
+ *
+ * @author Murdock
+ */
+public class OfflineTileFactory extends AbstractTileFactory {
+
+    /**
+     * Highest OpenStreetMap zoom level, jxmapviewer zoom 0
+     */
+    public static final int TOTAL_MAP_ZOOM = 17;
+    public static final int TILE_SIZE = 256;
+    /**
+     * Tiles are read from disk, no need for many threads
+     */
+    private static final int LOADER_THREADS = 2;
+
+    /**
+     * jxmapviewer describes tiles by URL, ours are resolved by the cache
+     */
+    private static class Info extends TileFactoryInfo {
+
+        Info() {
+            super("Offline", 1, TOTAL_MAP_ZOOM - 2, TOTAL_MAP_ZOOM, TILE_SIZE, true, true, TileImageCache.SCHEME, "x", "y", "z");
+        }
+
+        @Override
+        public String getTileUrl(int x, int y, int zoom) {
+            return TileImageCache.tileUri(TOTAL_MAP_ZOOM - zoom, x, y);
+        }
+    }
+
+    private final TileImageCache cache;
+
+    /**
+     * Creates new factory with the default memory limit.
+     *
+     * @param store store to read the tiles from
+     */
+    public OfflineTileFactory(TileStore store) {
+        this(store, TileImageCache.DEFAULT_MAX_BYTES);
+    }
+
+    /**
+     * @param store store to read the tiles from
+     * @param maxCacheBytes limit of decoded images kept in memory
+     */
+    public OfflineTileFactory(TileStore store, long maxCacheBytes) {
+        super(new Info());
+        this.cache = new TileImageCache(store, maxCacheBytes, TILE_SIZE);
+        setTileCache(cache);
+        setThreadPoolSize(LOADER_THREADS);
+    }
+
+    /**
+     * @return The cache, for prefetching
+     */
+    public TileImageCache getCache() {
+        return cache;
+    }
+
+    /**
+     * @param mapZoom jxmapviewer zoom level
+     * @return OpenStreetMap zoom level of the tiles shown at that map zoom
+     */
+    public static int tileZoom(int mapZoom) {
+        return TOTAL_MAP_ZOOM - mapZoom;
+    }
+}
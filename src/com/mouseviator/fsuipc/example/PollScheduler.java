@@ -0,0 +1,186 @@
+package com.mouseviator.fsuipc.example;
+
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.Set;
+
+/**
+ * Decides which {@link RateGroup}s are polled in each FSUIPC processing cycle.
+ *
+ * <p>
+ * After each FSUIPC processing cycle this scheduler tells which groups are due for the next one, so the
+ * {@link SimRequestRegistry} keeps only their requests in the continual list. Each group is polled at its normal period, faster
+ * while its values are changing (gear in transition, heading turning, COM being tuned, slew) and much slower while the sim is
+ * paused. Continual processing runs at the shortest current period of the groups (see {@link #getTickMs()}), so there is no
+ * cycle without a group due, and the sim is asked 4 times a second when idle and once a second while paused.</p>
+ *
+ * <p>
+ * Not thread safe, should be called only from the FSUIPC processing thread.</p>
+ *
+ * @author Murdock
+ */
+public class PollScheduler implements SimDataSink {
+
+    /**
+     * Shortest period of FSUIPC continual processing, all group periods are multiples of this
+     */
+    public static final int BASE_TICK_MS = 50;
+    /**
+     * How long the group stays active after last detected change, so we do not flip between rates on every other poll
+     */
+    private static final long ACTIVE_HOLD_NANOS = 2_000_000_000L;
+
+    /**
+     * Fields the scheduler itself needs
+     */
+    private static final Set<SimField> REQUIRED_FIELDS = Collections.unmodifiableSet(EnumSet.of(
+            SimField.PAUSE_INDICATOR, SimField.SLEW_MODE));
+
+    private final long[] nextDueNanos = new long[RateGroup.VALUES.length];
+    private final long[] activeUntilNanos = new long[RateGroup.VALUES.length];
+    private boolean paused = false;
+    private int tickMs = initialTickMs();
+
+    private int lastHeading = Integer.MIN_VALUE;
+    private int lastCom1Frequency = Integer.MIN_VALUE;
+    private int lastCom1Standby = Integer.MIN_VALUE;
+
+    @Override
+    public Set<SimField> getRequiredFields() {
+        return REQUIRED_FIELDS;
+    }
+
+    /**
+     * Makes all groups due now. Should be called when FSUIPC (re)connects.
+     */
+    public void reset() {
+        for (int i = 0; i < nextDueNanos.length; i++) {
+            nextDueNanos[i] = Long.MIN_VALUE;
+            activeUntilNanos[i] = Long.MIN_VALUE;
+        }
+        paused = false;
+        tickMs = initialTickMs();
+        lastHeading = Integer.MIN_VALUE;
+        lastCom1Frequency = Integer.MIN_VALUE;
+        lastCom1Standby = Integer.MIN_VALUE;
+    }
+
+    /**
+     * @return True if the sim was paused at the last poll
+     */
+    public boolean isPaused() {
+        return paused;
+    }
+
+    /**
+     * @return Period FSUIPC continual processing should run at, the shortest period of the groups now, changes after
+     * {@link #onProcessed(SimRequestRegistry, int, long)}
+     */
+    public int getTickMs() {
+        return tickMs;
+    }
+
+    /**
+     * Should be called after each processing cycle.
+     *
+     * @param registry registry to read the polled values from
+     * @param polledGroups mask of groups that were polled in this cycle
+     * @param nowNanos current time as per {@link System#nanoTime()}
+     * @return Mask of groups to poll in the next cycle
+     */
+    public int onProcessed(SimRequestRegistry registry, int polledGroups, long nowNanos) {
+        if ((polledGroups & RateGroup.FAST.getMask()) != 0) {
+            boolean wasPaused = paused;
+            paused = registry.isRegistered(SimField.PAUSE_INDICATOR) && registry.getInt(SimField.PAUSE_INDICATOR) != 0;
+            if (wasPaused && !paused) {
+                //unpaused, refresh everything right away
+                for (int i = 0; i < nextDueNanos.length; i++) {
+                    nextDueNanos[i] = Long.MIN_VALUE;
+                }
+            }
+            if (isFastGroupChanging(registry)) {
+                activeUntilNanos[RateGroup.FAST.ordinal()] = nowNanos + ACTIVE_HOLD_NANOS;
+            }
+        }
+        if ((polledGroups & RateGroup.SLOW.getMask()) != 0 && isSlowGroupChanging(registry)) {
+            activeUntilNanos[RateGroup.SLOW.ordinal()] = nowNanos + ACTIVE_HOLD_NANOS;
+        }
+
+        int shortestMs = Integer.MAX_VALUE;
+        for (RateGroup group : RateGroup.VALUES) {
+            int periodMs = periodMs(group, nowNanos);
+            shortestMs = Math.min(shortestMs, periodMs);
+            if ((polledGroups & group.getMask()) != 0) {
+                nextDueNanos[group.ordinal()] = nowNanos + periodMs * 1_000_000L;
+            }
+        }
+        tickMs = Math.max(BASE_TICK_MS, shortestMs);
+
+        int nextGroups = 0;
+        long tickNanos = tickMs * 1_000_000L;
+        for (RateGroup group : RateGroup.VALUES) {
+            int i = group.ordinal();
+            //the next cycle will come one tick from now, allow half a tick of jitter
+            if (nextDueNanos[i] == Long.MIN_VALUE || nextDueNanos[i] - nowNanos <= tickNanos + tickNanos / 2) {
+                nextGroups |= group.getMask();
+            }
+        }
+        return nextGroups;
+    }
+
+    private int periodMs(RateGroup group, long nowNanos) {
+        if (paused) {
+            return group.getPausedPeriodMs();
+        } else if (activeUntilNanos[group.ordinal()] != Long.MIN_VALUE && nowNanos - activeUntilNanos[group.ordinal()] < 0) {
+            return group.getActivePeriodMs();
+        } else {
+            return group.getNormalPeriodMs();
+        }
+    }
+
+    private static int initialTickMs() {
+        int shortestMs = Integer.MAX_VALUE;
+        for (RateGroup group : RateGroup.VALUES) {
+            shortestMs = Math.min(shortestMs, group.getNormalPeriodMs());
+        }
+        return Math.max(BASE_TICK_MS, shortestMs);
+    }
+
+    private boolean isFastGroupChanging(SimRequestRegistry registry) {
+        boolean changing = false;
+        if (registry.isRegistered(SimField.SLEW_MODE) && registry.getInt(SimField.SLEW_MODE) != 0) {
+            changing = true;
+        }
+        if (isGearMoving(registry, SimField.GEAR_NOSE) || isGearMoving(registry, SimField.GEAR_LEFT)
+                || isGearMoving(registry, SimField.GEAR_RIGHT)) {
+            changing = true;
+        }
+        if (registry.isRegistered(SimField.HEADING)) {
+            int heading = Math.round(registry.getFloat(SimField.HEADING));
+            if (lastHeading != Integer.MIN_VALUE && heading != lastHeading) {
+                changing = true;
+            }
+            lastHeading = heading;
+        }
+        return changing;
+    }
+
+    private boolean isSlowGroupChanging(SimRequestRegistry registry) {
+        boolean changing = false;
+        if (registry.isRegistered(SimField.COM1_FREQUENCY_HZ)) {
+            int frequency = registry.getInt(SimField.COM1_FREQUENCY_HZ);
+            changing |= lastCom1Frequency != Integer.MIN_VALUE && frequency != lastCom1Frequency;
+            lastCom1Frequency = frequency;
+        }
+        if (registry.isRegistered(SimField.COM1_STANDBY_HZ)) {
+            int standby = registry.getInt(SimField.COM1_STANDBY_HZ);
+            changing |= lastCom1Standby != Integer.MIN_VALUE && standby != lastCom1Standby;
+            lastCom1Standby = standby;
+        }
+        return changing;
+    }
+
+    private boolean isGearMoving(SimRequestRegistry registry, SimField gear) {
+        return registry.isRegistered(gear) && DisplayFrame.gearState(registry.getInt(gear)) == DisplayFrame.GEAR_MOVING;
+    }
+}
@@ -0,0 +1,330 @@
+package com.mouseviator.fsuipc.example;
+
+import com.fazecast.jSerialComm.SerialPort;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Finds the Arduinos of devices with {@link DeviceProfile#AUTO_PORT} by probing the serial ports for the handshake.
+ *
+ * <p>
+ * The handshake: after the sketch starts, it sends {@code "I<name>\n"}, where name is the name of the device profile, like
+ * {@code "ILCD"}. It should answer {@code "?\n"} the same way, for boards that do not reset when the port is opened. The
+ * scanner opens all free ports at once, so probing takes one Arduino reset no matter how many ports there are. The port of a
+ * matching device is handed to its writer still open, so the board is not reset again. Ports that did not answer, or answered
+ * for a device nobody waits for, are not probed again for {@link #FOREIGN_EXPIRY_MS} or until they disappear from the system,
+ * so other serial devices are not disturbed over and over. Ports that could not be opened (busy) are tried again with the next
+ * scan. New ports (USB replug) are probed as they appear.</p>
+ *
+ * <p>
+ * Each port is probed at every baud rate of the waiting devices, one after another, and a device is only matched at its own
+ * rate. A port that did not answer is probed again right away at the rate of a device that starts waiting later.</p>
+ *
+ * @author Murdock
+ */
+public class PortScanner implements Runnable {
+
+    /**
+     * How often to look for new ports, while some device waits for its port
+     */
+    public static final long SCAN_INTERVAL_MS = 2000;
+    /**
+     * How long to wait for the handshake, enough for the Arduino to reset and start the sketch
+     */
+    public static final long HANDSHAKE_TIMEOUT_MS = ArduinoWriter.ARDUINO_RESET_DELAY_MS + 1000;
+    /**
+     * How long a port that did not answer is left alone
+     */
+    public static final long FOREIGN_EXPIRY_MS = 60_000;
+    /**
+     * How often to ask for the handshake while probing
+     */
+    private static final long QUERY_INTERVAL_MS = 500;
+    private static final long POLL_INTERVAL_MS = 20;
+    private static final int MAX_LINE = 32;
+    private static final byte[] QUERY = {'?', '\n'};
+
+    /**
+     * logger
+     */
+    private static final Logger logger = Logger.getLogger(PortScanner.class.getName());
+
+    /**
+     * Devices waiting for their port, by name, with the port once found
+     */
+    private final Map<String, SerialPort> waiting = new HashMap<>();
+    /**
+     * Baud rates of the waiting devices
+     */
+    private final Map<String, Integer> waitingBaudRates = new HashMap<>();
+    /**
+     * Ports of devices with fixed port and ports handed to writers, never probed
+     */
+    private final Set<String> claimed = new HashSet<>();
+    /**
+     * Ports that did not answer, by name, not probed again at the same rates while they are present and not expired
+     */
+    private final Map<String, ForeignPort> foreign = new HashMap<>();
+    private Thread thread;
+
+    /**
+     * Tells the scanner to never probe given port, because a device with fixed port uses it.
+     *
+     * @param portName system port name
+     */
+    public synchronized void reserve(String portName) {
+        claimed.add(portName);
+    }
+
+    /**
+     * Waits until port of given device is found. Called by the writer thread.
+     *
+     * @param deviceName name the sketch sends in the handshake
+     * @param baudRate speed of the device
+     * @return The port, open and with the sketch running
+     * @throws InterruptedException when the writer is stopped meanwhile
+     */
+    public synchronized SerialPort await(String deviceName, int baudRate) throws InterruptedException {
+        waiting.put(deviceName, null);
+        waitingBaudRates.put(deviceName, baudRate);
+        try {
+            if (thread == null) {
+                thread = new Thread(this, "Arduino port scanner");
+                thread.setDaemon(true);
+                thread.start();
+            }
+            notifyAll();
+            SerialPort port;
+            while ((port = waiting.get(deviceName)) == null) {
+                wait();
+            }
+            return port;
+        } catch (InterruptedException ex) {
+            SerialPort port = waiting.get(deviceName);
+            if (port != null) {
+                //found just as the writer stopped, nobody else will close it
+                release(port);
+                port.closePort();
+            }
+            throw ex;
+        } finally {
+            waiting.remove(deviceName);
+            waitingBaudRates.remove(deviceName);
+        }
+    }
+
+    /**
+     * Gives the port back, after the writer closed it. The port may be probed again if it reappears later.
+     *
+     * @param port port handed out by {@link #await(String, int)}
+     */
+    public synchronized void release(SerialPort port) {
+        claimed.remove(port.getSystemPortName());
+    }
+
+    @Override
+    public void run() {
+        while (true) {
+            List<SerialPort> candidates = new ArrayList<>();
+            List<Set<Integer>> candidateRates = new ArrayList<>();
+            synchronized (this) {
+                try {
+                    while (!hasWaiting()) {
+                        wait();
+                    }
+                } catch (InterruptedException ex) {
+                    thread = null;
+                    return;
+                }
+                long now = System.nanoTime();
+                Set<String> present = new HashSet<>();
+                for (SerialPort port : SerialPort.getCommPorts()) {
+                    String name = port.getSystemPortName();
+                    present.add(name);
+                    if (claimed.contains(name)) {
+                        continue;
+                    }
+                    Set<Integer> rates = new TreeSet<>(waitingBaudRates.values());
+                    ForeignPort foreignPort = foreign.get(name);
+                    if (foreignPort != null) {
+                        if (now - foreignPort.sinceNanos < FOREIGN_EXPIRY_MS * 1_000_000L) {
+                            rates.removeAll(foreignPort.baudRates);
+                        } else {
+                            foreign.remove(name);
+                        }
+                    }
+                    if (!rates.isEmpty()) {
+                        candidates.add(port);
+                        candidateRates.add(rates);
+                    }
+                }
+                //unplugged ports will be probed when they come back
+                foreign.keySet().retainAll(present);
+            }
+
+            if (!candidates.isEmpty()) {
+                probe(candidates, candidateRates);
+            }
+
+            try {
+                Thread.sleep(SCAN_INTERVAL_MS);
+            } catch (InterruptedException ex) {
+                synchronized (this) {
+                    thread = null;
+                }
+                return;
+            }
+        }
+    }
+
+    private boolean hasWaiting() {
+        for (SerialPort port : waiting.values()) {
+            if (port == null) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Probes the ports in parallel, each at its baud rates one after another. Each port is handed to its writer as soon as it
+     * answers, the slowest port only holds up the next scan.
+     */
+    private void probe(List<SerialPort> candidates, List<Set<Integer>> candidateRates) {
+        Thread[] probes = new Thread[candidates.size()];
+        for (int i = 0; i < probes.length; i++) {
+            final SerialPort port = candidates.get(i);
+            final Set<Integer> rates = candidateRates.get(i);
+            probes[i] = new Thread(() -> {
+                for (int baudRate : rates) {
+                    port.setComPortParameters(baudRate, 8, 1, 0);
+                    port.setComPortTimeouts(SerialPort.TIMEOUT_NONBLOCKING, 0, 0);
+                    if (!port.openPort()) {
+                        //busy for now, try with the next scan
+                        logger.fine("Cannot open port " + port.getSystemPortName() + " to probe it");
+                        return;
+                    }
+                    //reopened for every rate, so the board resets and sends its handshake at its own rate
+                    if (probed(port, baudRate, handshake(port, HANDSHAKE_TIMEOUT_MS, true))) {
+                        return;
+                    }
+                }
+            }, "Arduino port probe - " + port.getSystemPortName());
+            probes[i].setDaemon(true);
+            probes[i].start();
+        }
+        for (Thread probe : probes) {
+            try {
+                probe.join();
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    /**
+     * Hands the port to the device that answered, or closes it.
+     *
+     * @param port open port
+     * @param baudRate rate the port was probed at
+     * @param answer the handshake, null if none
+     * @return True if done with the port, false to probe it at the next rate
+     */
+    private synchronized boolean probed(SerialPort port, int baudRate, String answer) {
+        String name = port.getSystemPortName();
+        if (answer != null && waiting.containsKey(answer) && waiting.get(answer) == null
+                && waitingBaudRates.get(answer) == baudRate) {
+            logger.info("Found device " + answer + " on " + name);
+            claimed.add(name);
+            waiting.put(answer, port);
+            notifyAll();
+            return true;
+        }
+        if (logger.isLoggable(Level.FINE)) {
+            logger.fine("Port " + name + " answered " + answer + " at " + baudRate + " baud, ignoring it");
+        }
+        port.closePort();
+        ForeignPort foreignPort = foreign.get(name);
+        if (foreignPort == null) {
+            foreignPort = new ForeignPort(System.nanoTime());
+            foreign.put(name, foreignPort);
+        }
+        foreignPort.baudRates.add(baudRate);
+        return false;
+    }
+
+    /**
+     * Port that did not answer
+     */
+    private static class ForeignPort {
+
+        private final long sinceNanos;
+        /**
+         * Rates it was probed at
+         */
+        private final Set<Integer> baudRates = new HashSet<>();
+
+        private ForeignPort(long sinceNanos) {
+            this.sinceNanos = sinceNanos;
+        }
+    }
+
+    /**
+     * Waits for the handshake of the sketch on open port. Returns as soon as the sketch is running, so the writer does not have to
+     * wait the whole Arduino reset time.
+     *
+     * @param port open port, in non-blocking mode
+     * @param timeoutMs how long to wait
+     * @param query true to ask for the handshake, false to just listen for the one the sketch sends when it starts
+     * @return Name of the device, null if the sketch did not answer in time or the thread was interrupted
+     */
+    static String handshake(SerialPort port, long timeoutMs, boolean query) {
+        byte[] buffer = new byte[64];
+        byte[] line = new byte[MAX_LINE];
+        int lineLength = 0;
+        long start = System.nanoTime();
+        long nextQuery = start;
+        long timeoutNanos = timeoutMs * 1_000_000L;
+        while (System.nanoTime() - start < timeoutNanos) {
+            if (query && System.nanoTime() - nextQuery >= 0) {
+                port.writeBytes(QUERY, QUERY.length);
+                nextQuery += QUERY_INTERVAL_MS * 1_000_000L;
+            }
+            int available = port.bytesAvailable();
+            if (available < 0) {
+                //port is gone
+                return null;
+            }
+            if (available > 0) {
+                int count = port.readBytes(buffer, Math.min(available, buffer.length));
+                for (int i = 0; i < count; i++) {
+                    byte b = buffer[i];
+                    if (b == '\n') {
+                        if (lineLength > 1 && line[0] == 'I') {
+                            return new String(line, 1, lineLength - 1, StandardCharsets.US_ASCII);
+                        }
+                        lineLength = 0;
+                    } else if (b != '\r' && lineLength < MAX_LINE) {
+                        line[lineLength++] = b;
+                    }
+                }
+                continue;
+            }
+            try {
+                Thread.sleep(POLL_INTERVAL_MS);
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+                return null;
+            }
+        }
+        return null;
+    }
+}
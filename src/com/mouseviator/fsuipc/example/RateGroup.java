@@ -0,0 +1,65 @@
+package com.mouseviator.fsuipc.example;
+
+/**
+ * Polling rate groups. Each {@link SimField} belongs to one group, and {@link PollScheduler} decides when each group is polled.
+ *
+ * @author Murdock
+ */
+public enum RateGroup {
+    /**
+     * Values that should reach displays quickly - heading, gear, attitude, plus pause and slew indicators the scheduler itself
+     * needs
+     */
+    FAST(250, 100, 1000),
+    /**
+     * Slowly changing or less important values - radios, engines, misc.
+     */
+    SLOW(1000, 500, 5000);
+
+    /**
+     * Cached values() array, so we do not copy it every time
+     */
+    static final RateGroup[] VALUES = values();
+    /**
+     * Mask with bits of all groups set
+     */
+    static final int ALL_MASK = (1 << VALUES.length) - 1;
+
+    private final int normalPeriodMs;
+    private final int activePeriodMs;
+    private final int pausedPeriodMs;
+
+    private RateGroup(int normalPeriodMs, int activePeriodMs, int pausedPeriodMs) {
+        this.normalPeriodMs = normalPeriodMs;
+        this.activePeriodMs = activePeriodMs;
+        this.pausedPeriodMs = pausedPeriodMs;
+    }
+
+    /**
+     * @return Polling period when nothing special is happening
+     */
+    public int getNormalPeriodMs() {
+        return normalPeriodMs;
+    }
+
+    /**
+     * @return Polling period while values of this group are changing
+     */
+    public int getActivePeriodMs() {
+        return activePeriodMs;
+    }
+
+    /**
+     * @return Polling period while the sim is paused
+     */
+    public int getPausedPeriodMs() {
+        return pausedPeriodMs;
+    }
+
+    /**
+     * @return Bit of this group in group masks
+     */
+    public int getMask() {
+        return 1 << ordinal();
+    }
+}
@@ -0,0 +1,150 @@
+package com.mouseviator.fsuipc.example;
+
+import com.mouseviator.fsuipc.datarequest.IDataRequest;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+/**
+ * Merges many small read requests into few {@link BlockRequest}s. FSUIPC processes every request of the continual list
+ * separately, so reading ten adjacent offsets as one block costs one item instead of ten.
+ *
+ * <p>
+ * The requests are sorted by offset, and a request is merged into the previous block if the gap between them is at most the max
+ * gap. The gap bytes are read for nothing, so a small max gap gives more blocks, a large one more wasted bytes. Only the block
+ * requests are given to FSUIPC. The original requests only describe the offsets, after each processing cycle the values are
+ * decoded as primitives straight from the bytes of the block, at the position of each request (see
+ * {@link SimRequestRegistry#fillSample(SimSample, int)}).</p>
+ *
+ * @author Murdock
+ */
+public class RequestPlanner {
+
+    /**
+     * Default max gap between two requests merged into one block
+     */
+    public static final int DEFAULT_MAX_GAP = 16;
+    /**
+     * Max gap that turns merging off, every request gets its own block
+     */
+    public static final int NO_MERGING = -1;
+
+    private RequestPlanner() {
+    }
+
+    /**
+     * Block of adjacent offsets, and the requests it reads.
+     */
+    public static final class Block {
+
+        private final BlockRequest request;
+        /**
+         * Index of each member in the array given to {@link #plan(IDataRequest[], int)}
+         */
+        private final int[] indexes;
+        /**
+         * Position of each member in the block
+         */
+        private final int[] positions;
+        /**
+         * Little endian view of the block bytes
+         */
+        private ByteBuffer data;
+
+        private Block(int offset, int size, List<Integer> indexes, IDataRequest[] requests) {
+            this.request = new BlockRequest(offset, size);
+            this.indexes = new int[indexes.size()];
+            this.positions = new int[indexes.size()];
+            for (int i = 0; i < this.indexes.length; i++) {
+                this.indexes[i] = indexes.get(i);
+                positions[i] = requests[this.indexes[i]].getOffset() - offset;
+            }
+            this.data = ByteBuffer.wrap(request.getDataBuffer()).order(ByteOrder.LITTLE_ENDIAN);
+        }
+
+        /**
+         * @return Request to give to FSUIPC
+         */
+        public BlockRequest getRequest() {
+            return request;
+        }
+
+        /**
+         * @return Number of requests read by this block
+         */
+        public int getMemberCount() {
+            return indexes.length;
+        }
+
+        /**
+         * @param member member number, 0 - member count
+         * @return Index of the member request in the array the block was planned from
+         */
+        public int getIndex(int member) {
+            return indexes[member];
+        }
+
+        /**
+         * @param member member number, 0 - member count
+         * @return Position of the member request in the block bytes
+         */
+        public int getPosition(int member) {
+            return positions[member];
+        }
+
+        /**
+         * @return The bytes read by the block, little endian, as of the last processing cycle the block was part of
+         */
+        public ByteBuffer getData() {
+            byte[] buffer = request.getDataBuffer();
+            if (data.array() != buffer) {
+                data = ByteBuffer.wrap(buffer).order(ByteOrder.LITTLE_ENDIAN);
+            }
+            return data;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("0x%04X+%d (%d requests)", request.getOffset(), request.getSize(), indexes.length);
+        }
+    }
+
+    /**
+     * Plans block reads for the requests.
+     *
+     * @param requests requests to read, null elements are skipped
+     * @param maxGap max number of unused bytes between two requests in one block, {@link #NO_MERGING} for block per request
+     * @return The blocks, by offset
+     */
+    public static List<Block> plan(IDataRequest[] requests, int maxGap) {
+        List<Integer> sorted = IntStream.range(0, requests.length).filter(i -> requests[i] != null).boxed()
+                .sorted(Comparator.comparingInt(i -> requests[i].getOffset())).collect(Collectors.toList());
+        List<Block> blocks = new ArrayList<>();
+        List<Integer> members = new ArrayList<>();
+        int start = 0;
+        int end = 0;
+        for (int index : sorted) {
+            IDataRequest request = requests[index];
+            int offset = request.getOffset();
+            if (!members.isEmpty() && (maxGap < 0 || offset - end > maxGap)) {
+                blocks.add(new Block(start, end - start, members, requests));
+                members.clear();
+            }
+            if (members.isEmpty()) {
+                start = offset;
+                end = offset;
+            }
+            members.add(index);
+            //requests may overlap, like the same offset read as two types
+            end = Math.max(end, offset + request.getSize());
+        }
+        if (!members.isEmpty()) {
+            blocks.add(new Block(start, end - start, members, requests));
+        }
+        return blocks;
+    }
+}
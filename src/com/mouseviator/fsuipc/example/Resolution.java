@@ -0,0 +1,68 @@
+package com.mouseviator.fsuipc.example;
+
+/**
+ * Resolution tiers of the {@link TimeSeriesStore}. Each tier is a ring buffer of fixed capacity, so the coarser tiers reach
+ * further back.
+ *
+ * @author Murdock
+ */
+public enum Resolution {
+    /**
+     * Every polled value, about 20 minutes of slow fields (one poll per second) or 5 minutes of fast ones
+     */
+    RAW(0, 1200),
+    /**
+     * Min/max/average per second, one hour
+     */
+    SECOND(1_000_000_000L, 3600),
+    /**
+     * Min/max/average per minute, 24 hours
+     */
+    MINUTE(60_000_000_000L, 1440);
+
+    /**
+     * Cached values() array, so we do not copy it every time
+     */
+    static final Resolution[] VALUES = values();
+
+    private final long bucketNanos;
+    private final int defaultCapacity;
+
+    private Resolution(long bucketNanos, int defaultCapacity) {
+        this.bucketNanos = bucketNanos;
+        this.defaultCapacity = defaultCapacity;
+    }
+
+    /**
+     * @return Length of one bucket in nanoseconds, 0 for raw values
+     */
+    public long getBucketNanos() {
+        return bucketNanos;
+    }
+
+    /**
+     * @return Number of values or buckets kept by default
+     */
+    public int getDefaultCapacity() {
+        return defaultCapacity;
+    }
+
+    /**
+     * Picks the finest resolution that shows given time range in at most given number of points, like one point per pixel of a
+     * trend display.
+     *
+     * @param rangeNanos length of the time range
+     * @param maxPoints most points wanted
+     * @return The resolution, {@link #MINUTE} if even that has more points
+     */
+    public static Resolution forRange(long rangeNanos, int maxPoints) {
+        //raw values come at most every 100 ms, see RateGroup
+        if (rangeNanos / 100_000_000L <= maxPoints) {
+            return RAW;
+        }
+        if (rangeNanos / SECOND.bucketNanos <= maxPoints) {
+            return SECOND;
+        }
+        return MINUTE;
+    }
+}
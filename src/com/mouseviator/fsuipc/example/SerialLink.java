@@ -0,0 +1,291 @@
+package com.mouseviator.fsuipc.example;
+
+import com.fazecast.jSerialComm.SerialPort;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Write side of the serial link to one Arduino, with bounded send window, write deadline and throughput estimate. Used by the
+ * {@link ArduinoWriter} thread only, except {@link #acknowledged()}.
+ *
+ * <p>
+ * The port is written in non-blocking mode, a hung board or full buffer can not block the writer forever. A frame that can not
+ * be written completely before its deadline is given up, the rest of it is dropped and the next frame is sent as keyframe.</p>
+ *
+ * <p>
+ * The send window bounds the bytes sent but not yet consumed by the Arduino to the size of its receive buffer. Without ACKs, the
+ * consumed bytes are estimated from the line speed. With ACK flow control the sketch sends {@code "K\n"} after each frame it has
+ * processed, at most {@link #MAX_UNACKED_FRAMES} frames are in flight, and the throughput estimate follows the measured ACK rate.
+ * Frames are not queued while the window is closed, the writer either waits and sends the latest frame when it opens
+ * ({@link Policy#COALESCE}), or drops them ({@link Policy#DROP}). Either way the line is never asked to carry more than it can, so
+ * the latency does not build up.</p>
+ *
+ * @author Murdock
+ */
+public class SerialLink {
+
+    /**
+     * What to do with frames while the send window is closed
+     */
+    public enum Policy {
+        /**
+         * Wait for the window, newer frames replace the waiting one
+         */
+        COALESCE,
+        /**
+         * Drop frames until the window opens
+         */
+        DROP
+    }
+
+    /**
+     * Default send window, size of the Arduino serial receive buffer
+     */
+    public static final int DEFAULT_WINDOW_BYTES = 64;
+    /**
+     * Default time to write one frame
+     */
+    public static final long DEFAULT_WRITE_TIMEOUT_MS = 500;
+    /**
+     * Frames that may wait for ACK
+     */
+    public static final int MAX_UNACKED_FRAMES = 2;
+    /**
+     * Unacknowledged frame is considered lost after this time
+     */
+    public static final long ACK_TIMEOUT_MS = 1000;
+    /**
+     * Weight of new throughput sample
+     */
+    private static final double THROUGHPUT_ALPHA = 0.2;
+    /**
+     * Serial frame of 8N1 has 10 bits per byte
+     */
+    private static final int BITS_PER_BYTE = 10;
+    private static final long MIN_RETRY_NANOS = 1_000_000L;
+
+    private SerialPort sp;
+    private final int windowBytes;
+    private final boolean ackFlowControl;
+    private final long writeTimeoutNanos;
+    private final double nominalBytesPerNano;
+
+    /**
+     * Estimated bytes the Arduino did not consume yet, as of inFlightNanos
+     */
+    private double inFlight = 0;
+    private long inFlightNanos;
+    private volatile double bytesPerNano;
+
+    /**
+     * Sizes and send times of frames waiting for ACK, ring buffer written by the writer thread, read by the ACK thread
+     */
+    private final int[] unackedSizes = new int[MAX_UNACKED_FRAMES];
+    private final long[] unackedSent = new long[MAX_UNACKED_FRAMES];
+    private int unackedHead = 0;
+    private int unackedCount = 0;
+    private long lastAckNanos = 0;
+    private boolean resyncNeeded = false;
+    private long ackTimeouts = 0;
+    private long deadlineMisses = 0;
+    private boolean portFailed = false;
+
+    /**
+     * Creates new link, see {@link #reset(SerialPort)}.
+     *
+     * @param baudRate line speed
+     * @param windowBytes send window
+     * @param ackFlowControl true if the sketch acknowledges frames
+     * @param writeTimeoutMs deadline for writing one frame
+     */
+    public SerialLink(int baudRate, int windowBytes, boolean ackFlowControl, long writeTimeoutMs) {
+        this.windowBytes = windowBytes;
+        this.ackFlowControl = ackFlowControl;
+        this.writeTimeoutNanos = writeTimeoutMs * 1_000_000L;
+        this.nominalBytesPerNano = baudRate / (double) BITS_PER_BYTE / 1e9;
+        this.bytesPerNano = nominalBytesPerNano;
+    }
+
+    /**
+     * Forgets everything in flight, called when the port is (re)opened.
+     *
+     * @param sp the opened port
+     */
+    public synchronized void reset(SerialPort sp) {
+        this.sp = sp;
+        portFailed = false;
+        inFlight = 0;
+        inFlightNanos = System.nanoTime();
+        bytesPerNano = nominalBytesPerNano;
+        unackedCount = 0;
+        resyncNeeded = false;
+    }
+
+    /**
+     * @param now current time
+     * @return Nanoseconds until the window opens, 0 if a frame can be sent now
+     */
+    public synchronized long nanosUntilReady(long now) {
+        drain(now);
+        if (ackFlowControl && unackedCount > 0 && now - unackedSent[unackedHead] > ACK_TIMEOUT_MS * 1_000_000L) {
+            //the sketch missed a frame or hung, start over with full frame
+            ackTimeouts++;
+            unackedCount = 0;
+            inFlight = 0;
+            resyncNeeded = true;
+        }
+        if (ackFlowControl && unackedCount >= MAX_UNACKED_FRAMES) {
+            //wait for ACK, but not longer than until it times out
+            return Math.max(MIN_RETRY_NANOS, unackedSent[unackedHead] + ACK_TIMEOUT_MS * 1_000_000L - now);
+        }
+        if (inFlight < windowBytes) {
+            return 0;
+        }
+        return Math.max(MIN_RETRY_NANOS, (long) ((inFlight - windowBytes + 1) / bytesPerNano));
+    }
+
+    /**
+     * Writes the frame, waiting for the port as needed, but not longer than the write deadline.
+     *
+     * @param data frame bytes, the array may be modified
+     * @param length frame length
+     * @return True if the whole frame was written, false if the deadline passed or the port failed
+     */
+    public boolean write(byte[] data, int length) {
+        long start = System.nanoTime();
+        long deadline = start + writeTimeoutNanos;
+        int written = 0;
+        boolean stalled = false;
+        long stallStart = 0;
+        int stallWritten = 0;
+        while (written < length) {
+            int count = sp.writeBytes(data, length - written);
+            if (count < 0) {
+                //unplugged, most likely
+                portFailed = true;
+                return false;
+            }
+            written += count;
+            if (written == length) {
+                break;
+            }
+            //the port buffer is full, the line is slower than we thought
+            if (!stalled) {
+                stalled = true;
+                stallStart = System.nanoTime();
+                stallWritten = written;
+            }
+            if (count > 0) {
+                System.arraycopy(data, count, data, 0, length - written);
+            }
+            long now = System.nanoTime();
+            if (now >= deadline) {
+                synchronized (this) {
+                    //what the port took is on its way, the window must count it most of all when the line is congested
+                    drain(now);
+                    inFlight += written;
+                    deadlineMisses++;
+                    resyncNeeded = true;
+                }
+                return false;
+            }
+            LockSupport.parkNanos(Math.min(deadline - now, Math.max(MIN_RETRY_NANOS, (long) ((length - written) / bytesPerNano))));
+        }
+
+        long now = System.nanoTime();
+        synchronized (this) {
+            drain(now);
+            inFlight += length;
+            if (stalled && now > stallStart) {
+                sampleThroughput((written - stallWritten) / (double) (now - stallStart));
+            } else if (!ackFlowControl) {
+                //the port took the frame at once, the line keeps up
+                sampleThroughput(nominalBytesPerNano);
+            }
+            if (ackFlowControl) {
+                if (unackedCount == MAX_UNACKED_FRAMES) {
+                    //window was ignored, forget the oldest
+                    unackedHead = (unackedHead + 1) % MAX_UNACKED_FRAMES;
+                    unackedCount--;
+                }
+                int tail = (unackedHead + unackedCount) % MAX_UNACKED_FRAMES;
+                unackedSizes[tail] = length;
+                unackedSent[tail] = now;
+                unackedCount++;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Called when the sketch acknowledges a frame, from the serial event thread.
+     */
+    public synchronized void acknowledged() {
+        if (unackedCount == 0) {
+            return;
+        }
+        long now = System.nanoTime();
+        int size = unackedSizes[unackedHead];
+        long since = Math.max(unackedSent[unackedHead], lastAckNanos);
+        unackedHead = (unackedHead + 1) % MAX_UNACKED_FRAMES;
+        unackedCount--;
+        lastAckNanos = now;
+        drain(now);
+        inFlight = Math.max(0, inFlight - size);
+        if (now > since) {
+            sampleThroughput(size / (double) (now - since));
+        }
+    }
+
+    /**
+     * @return True, once, if frames were lost and the next frame should be keyframe
+     */
+    public synchronized boolean takeResyncNeeded() {
+        boolean result = resyncNeeded;
+        resyncNeeded = false;
+        return result;
+    }
+
+    /**
+     * @return True if the last write failed because the port is gone, not because of the deadline
+     */
+    public boolean isPortFailed() {
+        return portFailed;
+    }
+
+    /**
+     * @return Estimated link throughput, bytes per second
+     */
+    public long getThroughputEstimate() {
+        return (long) (bytesPerNano * 1e9);
+    }
+
+    /**
+     * @return Number of frames not acknowledged in time
+     */
+    public synchronized long getAckTimeouts() {
+        return ackTimeouts;
+    }
+
+    /**
+     * @return Number of frames not written before their deadline
+     */
+    public synchronized long getDeadlineMisses() {
+        return deadlineMisses;
+    }
+
+    /**
+     * Lets the estimated in flight bytes drain at the estimated line speed.
+     */
+    private void drain(long now) {
+        if (!ackFlowControl || unackedCount == 0) {
+            inFlight = Math.max(0, inFlight - (now - inFlightNanos) * bytesPerNano);
+        }
+        inFlightNanos = now;
+    }
+
+    private void sampleThroughput(double sample) {
+        //never estimate above what the line can carry
+        double limited = Math.min(sample, nominalBytesPerNano);
+        bytesPerNano = bytesPerNano + THROUGHPUT_ALPHA * (limited - bytesPerNano);
+    }
+}
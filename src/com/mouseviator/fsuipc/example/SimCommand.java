@@ -0,0 +1,48 @@
+package com.mouseviator.fsuipc.example;
+
+/**
+ * Commands the Arduino panels can send to the simulator, see {@link SimDataSource#send(SimCommand, int)}. How a command is
+ * carried out is up to the source, {@link FSUIPCDataSource} uses FS controls and offset writes.
+ *
+ * @author Murdock
+ */
+public enum SimCommand {
+    /**
+     * Swap COM1 active and standby frequency
+     */
+    COM1_SWAP,
+    /**
+     * Tune COM1 standby frequency 1 MHz up
+     */
+    COM1_WHOLE_INC,
+    /**
+     * Tune COM1 standby frequency 1 MHz down
+     */
+    COM1_WHOLE_DEC,
+    /**
+     * Tune COM1 standby frequency one channel up
+     */
+    COM1_FRACT_INC,
+    /**
+     * Tune COM1 standby frequency one channel down
+     */
+    COM1_FRACT_DEC,
+    /**
+     * Gear lever up
+     */
+    GEAR_UP,
+    /**
+     * Gear lever down
+     */
+    GEAR_DOWN,
+    /**
+     * Gear lever to the other position
+     */
+    GEAR_TOGGLE,
+    /**
+     * Slew mode on/off
+     */
+    SLEW_TOGGLE;
+
+    public static final SimCommand[] VALUES = values();
+}
@@ -0,0 +1,264 @@
+package com.mouseviator.fsuipc.example;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.lang.reflect.Field;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Appends {@link SimSample}s to a compact binary log, through memory mapped file chunks, so recording costs no system call per
+ * sample. The log can be played back by {@link SimDataReplay}.
+ *
+ * <p>
+ * File layout (little endian):</p>
+ * <pre>
+ * header:
+ *   int     magic 0x46535231 ("FSR1")
+ *   int     version (1)
+ *   int     field count
+ *   int     record size
+ *   int     header size (multiple of 8, records start here)
+ *   int     reserved
+ *   long    recording start, epoch milliseconds
+ *   long    number of records, updated after every record
+ *   fields: short name length, name (ASCII), byte value type (0 int, 1 float, 2 double) - for each field
+ * records, fixed size:
+ *   long    time since recording start, nanoseconds
+ *   long    mask of fields present, bit index = position of the field in header
+ *   values  one per field, in header order, 4 bytes for int/float, 8 bytes for double
+ * </pre>
+ *
+ * <p>
+ * The file is mapped in chunks of 16 MB, {@link #close()} trims it to the records written.</p>
+ *
+ * <p>
+ * Thread safe, samples come from the thread of the source and the recording is closed from another.</p>
+ *
+ * @author Murdock
+ */
+public class SimDataRecorder implements SimSampleListener, Closeable {
+
+    public static final int MAGIC = 0x46535231;
+    public static final int VERSION = 1;
+    static final int RECORD_COUNT_POSITION = 32;
+    /**
+     * Size of one mapped chunk, records never cross chunk boundary
+     */
+    private static final int CHUNK_SIZE = 16 * 1024 * 1024;
+    /**
+     * Appended to the file name for each recording session, see {@link #sessionFile(Path, LocalDateTime)}
+     */
+    private static final DateTimeFormatter SESSION_FORMAT = DateTimeFormatter.ofPattern("yyyyMMdd-HHmmss");
+
+    /**
+     * logger
+     */
+    private static final Logger logger = Logger.getLogger(SimDataRecorder.class.getName());
+
+    private final FileChannel channel;
+    private MappedByteBuffer header;
+    private final int headerSize;
+    private final int recordSize;
+    private final int recordsPerChunk;
+    private MappedByteBuffer chunk;
+    private int chunkIndex = -1;
+    private long recordCount = 0;
+    private long startNanos = Long.MIN_VALUE;
+    private boolean failed = false;
+    private boolean closed = false;
+
+    /**
+     * Creates new recording. Existing file is never overwritten.
+     *
+     * @param file file to record to
+     * @throws IOException when the file cannot be created, or exists
+     */
+    public SimDataRecorder(Path file) throws IOException {
+        this.channel = FileChannel.open(file, StandardOpenOption.CREATE_NEW, StandardOpenOption.READ, StandardOpenOption.WRITE);
+
+        int size = 16;
+        int namesSize = 0;
+        for (SimField field : SimField.VALUES) {
+            size += field.getValueType().getSize();
+            namesSize += 2 + field.name().length() + 1;
+        }
+        this.recordSize = size;
+        this.recordsPerChunk = CHUNK_SIZE / recordSize;
+        this.headerSize = (RECORD_COUNT_POSITION + 8 + namesSize + 7) & ~7;
+
+        header = channel.map(FileChannel.MapMode.READ_WRITE, 0, headerSize);
+        header.order(ByteOrder.LITTLE_ENDIAN);
+        header.putInt(MAGIC);
+        header.putInt(VERSION);
+        header.putInt(SimField.VALUES.length);
+        header.putInt(recordSize);
+        header.putInt(headerSize);
+        header.putInt(0);
+        header.putLong(System.currentTimeMillis());
+        header.putLong(0);
+        for (SimField field : SimField.VALUES) {
+            byte[] name = field.name().getBytes(StandardCharsets.US_ASCII);
+            header.putShort((short) name.length);
+            header.put(name);
+            header.put((byte) field.getValueType().ordinal());
+        }
+        logger.info("Recording sim data to " + file);
+    }
+
+    /**
+     * Appends the sample to the log.
+     *
+     * @param sample sample to record
+     * @throws IOException when the next file chunk cannot be mapped, or the recording is closed
+     */
+    public synchronized void record(SimSample sample) throws IOException {
+        if (closed) {
+            throw new IOException("Recording is closed");
+        }
+        if (startNanos == Long.MIN_VALUE) {
+            startNanos = sample.getTimeNanos();
+        }
+        int index = (int) (recordCount / recordsPerChunk);
+        if (index != chunkIndex) {
+            chunk = channel.map(FileChannel.MapMode.READ_WRITE, headerSize + (long) index * recordsPerChunk * recordSize,
+                    (long) recordsPerChunk * recordSize);
+            chunk.order(ByteOrder.LITTLE_ENDIAN);
+            chunkIndex = index;
+        }
+        int position = (int) (recordCount % recordsPerChunk) * recordSize;
+        chunk.putLong(position, sample.getTimeNanos() - startNanos);
+        chunk.putLong(position + 8, sample.getFieldMask());
+        position += 16;
+        for (SimField field : SimField.VALUES) {
+            switch (field.getValueType()) {
+                case INT:
+                    chunk.putInt(position, sample.getInt(field));
+                    break;
+                case FLOAT:
+                    chunk.putFloat(position, sample.getFloat(field));
+                    break;
+                default:
+                    chunk.putDouble(position, sample.getDouble(field));
+                    break;
+            }
+            position += field.getValueType().getSize();
+        }
+        recordCount++;
+        header.putLong(RECORD_COUNT_POSITION, recordCount);
+    }
+
+    /**
+     * Records the sample, for use as listener of a {@link SimDataSource}. On error the recording is stopped, the samples recorded so
+     * far are kept.
+     *
+     * @param sample sample to record
+     */
+    @Override
+    public synchronized void onSample(SimSample sample) {
+        //samples delivered while the recording was being stopped
+        if (failed || closed) {
+            return;
+        }
+        try {
+            record(sample);
+        } catch (IOException ex) {
+            failed = true;
+            logger.log(Level.SEVERE, "Failed to record sim data, recording stopped", ex);
+        }
+    }
+
+    /**
+     * @return Number of records written
+     */
+    public synchronized long getRecordCount() {
+        return recordCount;
+    }
+
+    /**
+     * @return Size of the file once closed, the header and the records written
+     */
+    public synchronized long getFileSize() {
+        return headerSize + recordCount * recordSize;
+    }
+
+    /**
+     * Flushes the records and trims the padding of the last chunk off the file. Synchronized with {@link #record(SimSample)}, as the
+     * source may still deliver a sample from its thread while the recording is stopped, and writing to a buffer after it was
+     * unmapped crashes the JVM instead of throwing.
+     *
+     * @throws IOException when the file cannot be written
+     */
+    @Override
+    public synchronized void close() throws IOException {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        try {
+            header.force();
+            if (chunk != null) {
+                chunk.force();
+            }
+            //Windows cannot truncate a file that is still mapped
+            unmap(header);
+            unmap(chunk);
+            header = null;
+            chunk = null;
+            try {
+                channel.truncate(getFileSize());
+            } catch (IOException ex) {
+                //the record count in the header still tells where the records end
+                logger.log(Level.WARNING, "Failed to trim the recording", ex);
+            }
+        } finally {
+            channel.close();
+        }
+        logger.info("Recorded " + recordCount + " samples");
+    }
+
+    /**
+     * Releases the mapping right away instead of when the buffer is garbage collected. The buffer must not be used after.
+     *
+     * @param buffer buffer to unmap, may be null
+     */
+    private static void unmap(MappedByteBuffer buffer) {
+        if (buffer == null) {
+            return;
+        }
+        try {
+            Field field = Class.forName("sun.misc.Unsafe").getDeclaredField("theUnsafe");
+            field.setAccessible(true);
+            Object unsafe = field.get(null);
+            unsafe.getClass().getMethod("invokeCleaner", ByteBuffer.class).invoke(unsafe, buffer);
+        } catch (ReflectiveOperationException | RuntimeException ex) {
+            //left to the garbage collector
+            logger.log(Level.FINE, "Cannot unmap the recording", ex);
+        }
+    }
+
+    /**
+     * Name of the file for one recording session, so every sim connection gets its own file: {@code flight.fsr} recorded at
+     * 2020-10-25 18:30:00 becomes {@code flight-20201025-183000.fsr}.
+     *
+     * @param file file name as configured
+     * @param time start of the session
+     * @return The file to record the session to
+     */
+    public static Path sessionFile(Path file, LocalDateTime time) {
+        String name = file.getFileName().toString();
+        String stamp = SESSION_FORMAT.format(time);
+        int dot = name.lastIndexOf('.');
+        String sessionName = dot > 0 ? name.substring(0, dot) + "-" + stamp + name.substring(dot) : name + "-" + stamp;
+        return file.resolveSibling(sessionName);
+    }
+}
@@ -0,0 +1,262 @@
+package com.mouseviator.fsuipc.example;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.locks.LockSupport;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * {@link SimDataSource} playing back a log written by {@link SimDataRecorder}, feeding the samples to the same pipeline FSUIPC
+ * feeds. Can play at the recorded pace, accelerated, or as fast as possible, so display issues can be reproduced and throughput
+ * measured without the sim. Reports connected while playing.
+ *
+ * <p>
+ * Fields are matched by name, so logs recorded by older versions still play, fields unknown to this version are skipped.</p>
+ *
+ * @author Murdock
+ */
+public class SimDataReplay extends AbstractSimDataSource implements Runnable, Closeable {
+
+    /**
+     * Replay speed meaning "as fast as possible"
+     */
+    public static final double MAX_SPEED = 0;
+
+    /**
+     * logger
+     */
+    private static final Logger logger = Logger.getLogger(SimDataReplay.class.getName());
+
+    private final FileChannel channel;
+    private final Path file;
+    private final double speed;
+    private final int headerSize;
+    private final int recordSize;
+    private final long recordCount;
+    /**
+     * For each field in file: field in this version or null, value type and offset in record
+     */
+    private final SimField[] fileFields;
+    private final SimField.ValueType[] fileTypes;
+    private final int[] fileOffsets;
+    private final SimSample sample = new SimSample();
+
+    private volatile boolean running = false;
+    private Thread thread;
+    private long recordsPlayed = 0;
+
+    /**
+     * Opens recorded log for playback.
+     *
+     * @param file the log
+     * @param speed replay speed, 1 for recorded pace, 2 for twice as fast..., {@link #MAX_SPEED} for as fast as possible
+     * @throws IOException when the file cannot be read or is not a sim data log
+     */
+    public SimDataReplay(Path file, double speed) throws IOException {
+        this.file = file;
+        this.speed = speed;
+        this.channel = FileChannel.open(file, StandardOpenOption.READ);
+
+        MappedByteBuffer fixedHeader = channel.map(FileChannel.MapMode.READ_ONLY, 0, SimDataRecorder.RECORD_COUNT_POSITION + 8);
+        fixedHeader.order(ByteOrder.LITTLE_ENDIAN);
+        if (fixedHeader.getInt(0) != SimDataRecorder.MAGIC || fixedHeader.getInt(4) != SimDataRecorder.VERSION) {
+            channel.close();
+            throw new IOException("Not a sim data log, or unsupported version: " + file);
+        }
+        int fieldCount = fixedHeader.getInt(8);
+        this.recordSize = fixedHeader.getInt(12);
+        this.headerSize = fixedHeader.getInt(16);
+        this.recordCount = fixedHeader.getLong(SimDataRecorder.RECORD_COUNT_POSITION);
+
+        MappedByteBuffer header = channel.map(FileChannel.MapMode.READ_ONLY, 0, headerSize);
+        header.order(ByteOrder.LITTLE_ENDIAN);
+        header.position(SimDataRecorder.RECORD_COUNT_POSITION + 8);
+        fileFields = new SimField[fieldCount];
+        fileTypes = new SimField.ValueType[fieldCount];
+        fileOffsets = new int[fieldCount];
+        int offset = 16;
+        for (int i = 0; i < fieldCount; i++) {
+            byte[] name = new byte[header.getShort()];
+            header.get(name);
+            fileTypes[i] = SimField.ValueType.values()[header.get()];
+            fileOffsets[i] = offset;
+            offset += fileTypes[i].getSize();
+            try {
+                fileFields[i] = SimField.valueOf(new String(name, StandardCharsets.US_ASCII));
+            } catch (IllegalArgumentException ex) {
+                logger.warning("Skipping unknown field: " + new String(name, StandardCharsets.US_ASCII));
+            }
+        }
+    }
+
+    /**
+     * @return Number of records in the log
+     */
+    public long getRecordCount() {
+        return recordCount;
+    }
+
+    /**
+     * @return Number of records played so far
+     */
+    public long getRecordsPlayed() {
+        return recordsPlayed;
+    }
+
+    @Override
+    public String getSimVersion() {
+        return "Replay (" + file.getFileName() + ")";
+    }
+
+    @Override
+    public String getInterfaceVersion() {
+        return speed == MAX_SPEED ? "max speed" : speed + "x";
+    }
+
+    /**
+     * Starts playback on new thread. Does nothing if already running.
+     *
+     * @return Always true
+     */
+    @Override
+    public synchronized boolean start() {
+        if (running) {
+            return true;
+        }
+        running = true;
+        thread = new Thread(this, "Sim data replay");
+        thread.setDaemon(true);
+        thread.start();
+        return true;
+    }
+
+    /**
+     * Stops playback started by {@link #start()}.
+     */
+    @Override
+    public synchronized void stop() {
+        running = false;
+        if (thread != null) {
+            thread.interrupt();
+            try {
+                thread.join(1000);
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+            }
+            thread = null;
+        }
+    }
+
+    /**
+     * Plays the whole log on the calling thread, or until stopped.
+     */
+    @Override
+    public void run() {
+        running = true;
+        fireConnected();
+        try {
+            play();
+        } catch (IOException ex) {
+            logger.log(Level.SEVERE, "Replay failed", ex);
+        }
+        running = false;
+        fireDisconnected();
+    }
+
+    private void play() throws IOException {
+        final long chunkRecords = Math.max(1, (64L * 1024 * 1024) / recordSize);
+        long replayStart = System.nanoTime();
+        MappedByteBuffer chunk = null;
+        long chunkFirst = 0;
+
+        for (long record = 0; record < recordCount && running; record++) {
+            if (chunk == null || record - chunkFirst >= chunkRecords) {
+                chunkFirst = record;
+                long count = Math.min(chunkRecords, recordCount - record);
+                chunk = channel.map(FileChannel.MapMode.READ_ONLY, headerSize + record * recordSize, count * recordSize);
+                chunk.order(ByteOrder.LITTLE_ENDIAN);
+            }
+            int position = (int) (record - chunkFirst) * recordSize;
+            long recordedNanos = chunk.getLong(position);
+            long fileMask = chunk.getLong(position + 8);
+
+            sample.clear();
+            for (int i = 0; i < fileFields.length; i++) {
+                if (fileFields[i] == null || (fileMask & (1L << i)) == 0) {
+                    continue;
+                }
+                int valuePosition = position + fileOffsets[i];
+                switch (fileTypes[i]) {
+                    case INT:
+                        sample.set(fileFields[i], chunk.getInt(valuePosition));
+                        break;
+                    case FLOAT:
+                        sample.set(fileFields[i], chunk.getFloat(valuePosition));
+                        break;
+                    default:
+                        sample.set(fileFields[i], chunk.getDouble(valuePosition));
+                        break;
+                }
+            }
+
+            if (speed > 0) {
+                long due = replayStart + (long) (recordedNanos / speed);
+                long wait;
+                while ((wait = due - System.nanoTime()) > 0 && running) {
+                    LockSupport.parkNanos(wait);
+                }
+            }
+            sample.setTimeNanos(System.nanoTime());
+            fireSample(sample);
+            recordsPlayed++;
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        stop();
+        channel.close();
+    }
+
+    /**
+     * Plays recorded log into the display pipeline, without the sim.
+     *
+     * @param args log file, optional speed (default 1, 0 = as fast as possible), optional serial port to send frames to
+     */
+    public static void main(String args[]) {
+        if (args.length < 1) {
+            System.out.println("Usage: SimDataReplay <log file> [speed, 0 = max] [serial port]");
+            return;
+        }
+        double speed = args.length > 1 ? Double.parseDouble(args[1]) : 1;
+        DeviceManager deviceManager = null;
+        try (SimDataReplay replay = new SimDataReplay(Paths.get(args[0]), speed)) {
+            deviceManager = new DeviceManager(replay);
+            if (args.length > 2) {
+                deviceManager.addDevice(new DeviceProfile("Replay", args[2], DeviceProfile.DEFAULT_BAUD_RATE, DisplayField.LCD_FIELDS, false, false));
+                deviceManager.start();
+            }
+            replay.addSampleListener(new DisplayPipeline(deviceManager));
+
+            long start = System.nanoTime();
+            replay.run();
+            double seconds = (System.nanoTime() - start) / 1e9;
+            System.out.println(String.format("Played %d of %d samples in %.3f s (%.0f samples/s)",
+                    replay.getRecordsPlayed(), replay.getRecordCount(), seconds, replay.getRecordsPlayed() / seconds));
+        } catch (IOException ex) {
+            logger.log(Level.SEVERE, null, ex);
+        } finally {
+            if (deviceManager != null) {
+                deviceManager.stop();
+            }
+        }
+    }
+}
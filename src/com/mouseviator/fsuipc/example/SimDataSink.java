@@ -0,0 +1,17 @@
+package com.mouseviator.fsuipc.example;
+
+import java.util.Set;
+
+/**
+ * Anything that consumes simulator values - serial display, GUI, map... Each sink declares the fields it needs, and only the
+ * union of those is requested from FSUIPC.
+ *
+ * @author Murdock
+ */
+public interface SimDataSink {
+
+    /**
+     * @return Fields this sink reads. Should not change while the sink is attached to {@link SimRequestRegistry}.
+     */
+    Set<SimField> getRequiredFields();
+}
@@ -0,0 +1,101 @@
+package com.mouseviator.fsuipc.example;
+
+/**
+ * Source of simulator data for the display pipeline. FSUIPC is one backend ({@link FSUIPCDataSource}), recorded logs
+ * ({@link SimDataReplay}) and the synthetic generator ({@link SyntheticDataSource}) are others, so the pipeline can run without
+ * the sim and without the native FSUIPC library.
+ *
+ * @author Murdock
+ */
+public interface SimDataSource {
+
+    /**
+     * Notified when the source connects to or disconnects from the simulator
+     */
+    interface ConnectionListener {
+
+        /**
+         * Called when the source is connected and starts delivering samples.
+         *
+         * @param source the source
+         */
+        void onConnected(SimDataSource source);
+
+        /**
+         * Called when the source is disconnected and stops delivering samples.
+         *
+         * @param source the source
+         */
+        void onDisconnected(SimDataSource source);
+    }
+
+    /**
+     * Adds listener to receive samples. Samples are delivered on the source's thread.
+     *
+     * @param listener listener to add
+     */
+    void addSampleListener(SimSampleListener listener);
+
+    /**
+     * @param listener listener to remove
+     */
+    void removeSampleListener(SimSampleListener listener);
+
+    /**
+     * @param listener listener to add
+     */
+    void addConnectionListener(ConnectionListener listener);
+
+    /**
+     * Declares that the sink needs its fields, sources that can, read only fields some sink needs.
+     *
+     * @param sink sink to attach
+     */
+    void attach(SimDataSink sink);
+
+    /**
+     * @param sink sink to detach
+     */
+    void detach(SimDataSink sink);
+
+    /**
+     * Sends command to the simulator. Never blocks, the commands are carried out on the source's thread, repeated commands sent
+     * before that are batched together.
+     *
+     * @param command command to send
+     * @param count how many times, like number of encoder detents
+     */
+    void send(SimCommand command, int count);
+
+    /**
+     * Starts the source. Returns immediately, connection listeners are notified when samples start coming.
+     *
+     * @return False if the source cannot be started at all
+     */
+    boolean start();
+
+    /**
+     * Stops the source.
+     */
+    void stop();
+
+    /**
+     * @return Metrics of the source
+     */
+    SourceMetrics getMetrics();
+
+    /**
+     * @return True if connected and delivering samples
+     */
+    boolean isConnected();
+
+    /**
+     * @return Description of the simulator, for display
+     */
+    String getSimVersion();
+
+    /**
+     * @return Description of the interface to the simulator (FSUIPC version...), for display
+     */
+    String getInterfaceVersion();
+}
@@ -0,0 +1,115 @@
+package com.mouseviator.fsuipc.example;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * Java Flight Recorder events of the pipeline, recorded by {@link DiagnosticsRecorder} and shown in JDK Mission Control. They
+ * replace the per-frame and per-poll text logging: an event that is not enabled costs next to nothing, an enabled one is a few
+ * field writes into a thread local buffer, no strings are built.
+ *
+ * <p>
+ * The events are created, begun and committed on the thread doing the work, like {@code PollCycle event = new PollCycle();
+ * event.begin(); ... event.commit();} - the JIT removes the allocation when the event is disabled.</p>
+ *
+ * @author Murdock
+ */
+public final class SimEvents {
+
+    private static final String CATEGORY = "MSFS Arduino Display";
+
+    private SimEvents() {
+    }
+
+    @Name("com.mouseviator.fsuipc.PollCycle")
+    @Label("Poll Cycle")
+    @Description("One FSUIPC processing cycle - filling the sample and delivering it to the listeners")
+    @Category({CATEGORY, "FSUIPC"})
+    @StackTrace(false)
+    public static class PollCycle extends Event {
+
+        @Label("Polled Groups")
+        @Description("Mask of rate groups polled in this cycle")
+        public int polledGroups;
+
+        @Label("Fields")
+        @Description("Number of fields in the sample")
+        public int fields;
+    }
+
+    @Name("com.mouseviator.fsuipc.FsuipcFailure")
+    @Label("FSUIPC Failure")
+    @Category({CATEGORY, "FSUIPC"})
+    @StackTrace(false)
+    public static class FsuipcFailure extends Event {
+
+        @Label("Result Code")
+        public int resultCode;
+
+        @Label("Message")
+        public String message;
+    }
+
+    @Name("com.mouseviator.fsuipc.Connection")
+    @Label("Connection")
+    @Description("Sim connected or disconnected, device port opened or closed")
+    @Category({CATEGORY, "Connections"})
+    @StackTrace(false)
+    public static class Connection extends Event {
+
+        @Label("Target")
+        @Description("Sim or device name")
+        public String target;
+
+        @Label("Detail")
+        @Description("Sim version or serial port")
+        public String detail;
+
+        @Label("Connected")
+        public boolean connected;
+    }
+
+    @Name("com.mouseviator.fsuipc.FrameEncoded")
+    @Label("Frame Encoded")
+    @Category({CATEGORY, "Serial"})
+    @StackTrace(false)
+    public static class FrameEncoded extends Event {
+
+        @Label("Device")
+        public String device;
+
+        @Label("Size")
+        @DataAmount
+        public int bytes;
+
+        @Label("Fields")
+        @Description("Mask of display fields encoded")
+        public int fieldMask;
+
+        @Label("Keyframe")
+        public boolean keyframe;
+    }
+
+    @Name("com.mouseviator.fsuipc.SerialWrite")
+    @Label("Serial Write")
+    @Category({CATEGORY, "Serial"})
+    @StackTrace(false)
+    public static class SerialWrite extends Event {
+
+        @Label("Device")
+        public String device;
+
+        @Label("Size")
+        @DataAmount
+        public int bytes;
+
+        @Label("Written")
+        @Description("False if the deadline passed or the port failed")
+        public boolean written;
+    }
+}
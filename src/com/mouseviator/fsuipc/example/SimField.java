@@ -0,0 +1,130 @@
+package com.mouseviator.fsuipc.example;
+
+import java.util.Set;
+
+/**
+ * All simulator values this application knows how to read. Which of them are actually requested from FSUIPC depends on what
+ * the attached {@link SimDataSink}s need, see {@link SimRequestRegistry}.
+ *
+ * @author Murdock
+ */
+public enum SimField {
+    HEADING(RateGroup.FAST, ValueType.FLOAT),
+    MAGNETIC_VARIATION(RateGroup.SLOW, ValueType.FLOAT),
+    BANK(RateGroup.FAST, ValueType.FLOAT),
+    PITCH(RateGroup.FAST, ValueType.FLOAT),
+    GPS_ALTITUDE(RateGroup.SLOW, ValueType.DOUBLE),
+    LATITUDE(RateGroup.FAST, ValueType.DOUBLE),
+    LONGITUDE(RateGroup.FAST, ValueType.DOUBLE),
+    VERTICAL_SPEED(RateGroup.FAST, ValueType.FLOAT),
+    IAS(RateGroup.FAST, ValueType.FLOAT),
+    TAS(RateGroup.SLOW, ValueType.FLOAT),
+    PAUSE_INDICATOR(RateGroup.FAST, ValueType.INT),
+    LOCAL_TIME(RateGroup.SLOW, ValueType.INT),
+    FRAME_RATE(RateGroup.SLOW, ValueType.FLOAT),
+    ENG1_THROTTLE_LEVER(RateGroup.SLOW, ValueType.INT),
+    ENG1_MIXTURE_LEVER(RateGroup.SLOW, ValueType.INT),
+    ENG1_PROPELLER_LEVER(RateGroup.SLOW, ValueType.INT),
+    ENG1_OIL_QUANTITY(RateGroup.SLOW, ValueType.FLOAT),
+    ENG1_OIL_TEMPERATURE(RateGroup.SLOW, ValueType.FLOAT),
+    ENG1_OIL_PRESSURE(RateGroup.SLOW, ValueType.FLOAT),
+    ENG1_FUEL_FLOW(RateGroup.SLOW, ValueType.DOUBLE),
+    ENG2_THROTTLE_LEVER(RateGroup.SLOW, ValueType.INT),
+    ENG2_MIXTURE_LEVER(RateGroup.SLOW, ValueType.INT),
+    ENG2_PROPELLER_LEVER(RateGroup.SLOW, ValueType.INT),
+    ENG2_OIL_QUANTITY(RateGroup.SLOW, ValueType.FLOAT),
+    ENG2_OIL_TEMPERATURE(RateGroup.SLOW, ValueType.FLOAT),
+    ENG2_OIL_PRESSURE(RateGroup.SLOW, ValueType.FLOAT),
+    ENG2_FUEL_FLOW(RateGroup.SLOW, ValueType.DOUBLE),
+    /**
+     * COM1 frequency as float, only 2 decimals
+     */
+    COM1_FREQUENCY(RateGroup.SLOW, ValueType.FLOAT),
+    /**
+     * COM1 standby frequency as float, only 2 decimals
+     */
+    COM1_STANDBY(RateGroup.SLOW, ValueType.FLOAT),
+    /**
+     * COM1 frequency in Hz (offset 0x05C4), all decimals
+     */
+    COM1_FREQUENCY_HZ(RateGroup.SLOW, ValueType.INT),
+    /**
+     * COM1 standby frequency in Hz (offset 0x05CC), all decimals
+     */
+    COM1_STANDBY_HZ(RateGroup.SLOW, ValueType.INT),
+    GEAR_NOSE(RateGroup.FAST, ValueType.INT),
+    GEAR_LEFT(RateGroup.FAST, ValueType.INT),
+    GEAR_RIGHT(RateGroup.FAST, ValueType.INT),
+    /**
+     * Slew mode indicator (offset 0x05DC)
+     */
+    SLEW_MODE(RateGroup.FAST, ValueType.INT);
+
+    /**
+     * Cached values() array, so we do not copy it every time
+     */
+    static final SimField[] VALUES = values();
+
+    /**
+     * Primitive type the value is stored as, shorts are widened to int
+     */
+    public enum ValueType {
+        INT(4),
+        FLOAT(4),
+        DOUBLE(8);
+
+        private final int size;
+
+        private ValueType(int size) {
+            this.size = size;
+        }
+
+        /**
+         * @return Size of the value in bytes
+         */
+        public int getSize() {
+            return size;
+        }
+    }
+
+    private final RateGroup rateGroup;
+    private final ValueType valueType;
+
+    private SimField(RateGroup rateGroup, ValueType valueType) {
+        this.rateGroup = rateGroup;
+        this.valueType = valueType;
+    }
+
+    /**
+     * @return Group that determines how often this field is polled
+     */
+    public RateGroup getRateGroup() {
+        return rateGroup;
+    }
+
+    /**
+     * @return Primitive type of the value
+     */
+    public ValueType getValueType() {
+        return valueType;
+    }
+
+    /**
+     * @return Bit of this field in field masks
+     */
+    public long getMask() {
+        return 1L << ordinal();
+    }
+
+    /**
+     * @param fields fields to make mask of
+     * @return Mask with bits of all the fields set
+     */
+    public static long mask(Set<SimField> fields) {
+        long mask = 0;
+        for (SimField field : fields) {
+            mask |= field.getMask();
+        }
+        return mask;
+    }
+}
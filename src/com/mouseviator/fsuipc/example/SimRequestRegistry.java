@@ -0,0 +1,523 @@
+package com.mouseviator.fsuipc.example;
+
+import com.mouseviator.fsuipc.FSUIPC;
+import com.mouseviator.fsuipc.datarequest.IDataRequest;
+import com.mouseviator.fsuipc.datarequest.primitives.IntRequest;
+import com.mouseviator.fsuipc.datarequest.primitives.ShortRequest;
+import com.mouseviator.fsuipc.helpers.SimHelper;
+import com.mouseviator.fsuipc.helpers.aircraft.AircraftHelper;
+import com.mouseviator.fsuipc.helpers.aircraft.Engine1Helper;
+import com.mouseviator.fsuipc.helpers.aircraft.Engine2Helper;
+import com.mouseviator.fsuipc.helpers.aircraft.GearHelper;
+import com.mouseviator.fsuipc.helpers.avionics.COM1Helper;
+import com.mouseviator.fsuipc.helpers.avionics.GPSHelper;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Keeps track of which {@link SimField}s are needed by attached {@link SimDataSink}s and registers only those as FSUIPC continual
+ * requests. Fields are reference counted - a request is added when the first sink needing it attaches and removed when the last
+ * one detaches. This happens live, also while the continual request processing is running.
+ *
+ * <p>
+ * On top of that, only requests of the {@link RateGroup}s that are due in the next processing cycle are kept in the FSUIPC
+ * continual request list, see {@link #setActiveGroups(int)} and {@link PollScheduler}.</p>
+ *
+ * <p>
+ * The requests of each group are not given to FSUIPC one by one, but merged into block reads of adjacent offsets by the
+ * {@link RequestPlanner}. The blocks of a group are planned again whenever a field of the group is registered or
+ * unregistered.</p>
+ *
+ * <p>
+ * The values are decoded as primitives straight from the block bytes, with the scaling of the FSUIPC offsets documentation (see
+ * {@link #decode(SimField, ByteBuffer, int)}), the request objects are never asked for their boxed values.</p>
+ *
+ * @author Murdock
+ */
+public class SimRequestRegistry {
+
+    /**
+     * logger
+     */
+    private static final Logger logger = Logger.getLogger(SimRequestRegistry.class.getName());
+    private static final double FEET_PER_METER = 3.28084;
+    private static final double TWO_TO_32 = 65536.0 * 65536.0;
+
+    private final FSUIPC fsuipc;
+
+    private final AircraftHelper aircraftHelper = new AircraftHelper();
+    private final SimHelper simHelper = new SimHelper();
+    private final GPSHelper gpsHelper = new GPSHelper();
+    private final Engine1Helper engine1Helper = new Engine1Helper();
+    private final Engine2Helper engine2Helper = new Engine2Helper();
+    private final COM1Helper com1Helper = new COM1Helper();
+    private final GearHelper gearHelper = new GearHelper();
+
+    private final Set<SimDataSink> sinks = new LinkedHashSet<>();
+    /**
+     * Number of attached sinks needing the field, indexed by field ordinal
+     */
+    private final int[] demand = new int[SimField.VALUES.length];
+    /**
+     * Registered requests, indexed by field ordinal. Null if not registered.
+     */
+    private final IDataRequest[] requests = new IDataRequest[SimField.VALUES.length];
+    /**
+     * Last decoded value of each registered field, indexed by field ordinal
+     */
+    private final double[] values = new double[SimField.VALUES.length];
+    /**
+     * Whether we are connected to FSUIPC, requests are registered only when connected
+     */
+    private boolean connected = false;
+    /**
+     * Mask of registered fields, see {@link SimField#getMask()}
+     */
+    private volatile long registeredMask = 0;
+    /**
+     * Max gap of the block reads, see {@link RequestPlanner}
+     */
+    private final int maxGap;
+    /**
+     * Block reads of the registered requests, indexed by group ordinal
+     */
+    private final List<List<RequestPlanner.Block>> groupBlocks = new ArrayList<>();
+    /**
+     * All blocks of all groups
+     */
+    private RequestPlanner.Block[] blocks = new RequestPlanner.Block[0];
+    /**
+     * Mask of rate groups whose requests are in the FSUIPC continual request list
+     */
+    private int activeGroups = RateGroup.ALL_MASK;
+
+    /**
+     * Creates new registry, with {@link RequestPlanner#DEFAULT_MAX_GAP}.
+     *
+     * @param fsuipc FSUIPC instance to register requests with
+     */
+    public SimRequestRegistry(FSUIPC fsuipc) {
+        this(fsuipc, RequestPlanner.DEFAULT_MAX_GAP);
+    }
+
+    /**
+     * Creates new registry.
+     *
+     * @param fsuipc FSUIPC instance to register requests with
+     * @param maxGap max number of unused bytes between two offsets read as one block, {@link RequestPlanner#NO_MERGING} to read
+     * every field separately
+     */
+    public SimRequestRegistry(FSUIPC fsuipc, int maxGap) {
+        this.fsuipc = fsuipc;
+        this.maxGap = maxGap;
+        for (RateGroup group : RateGroup.VALUES) {
+            groupBlocks.add(Collections.emptyList());
+        }
+    }
+
+    /**
+     * Attaches sink. Fields required by the sink that are not registered yet will be registered right away (if connected).
+     *
+     * @param sink sink to attach
+     */
+    public synchronized void attach(SimDataSink sink) {
+        if (!sinks.add(sink)) {
+            return;
+        }
+        int changedGroups = 0;
+        for (SimField field : sink.getRequiredFields()) {
+            if (demand[field.ordinal()]++ == 0 && connected) {
+                register(field);
+                changedGroups |= field.getRateGroup().getMask();
+            }
+        }
+        replan(changedGroups);
+    }
+
+    /**
+     * Detaches sink. Fields no other sink needs will be unregistered right away.
+     *
+     * @param sink sink to detach
+     */
+    public synchronized void detach(SimDataSink sink) {
+        if (!sinks.remove(sink)) {
+            return;
+        }
+        int changedGroups = 0;
+        for (SimField field : sink.getRequiredFields()) {
+            if (--demand[field.ordinal()] == 0 && connected) {
+                unregister(field);
+                changedGroups |= field.getRateGroup().getMask();
+            }
+        }
+        replan(changedGroups);
+    }
+
+    /**
+     * Should be called when FSUIPC connects, after the previous continual requests were cleared. Registers all fields the
+     * attached sinks need.
+     */
+    public synchronized void connected() {
+        connected = true;
+        activeGroups = RateGroup.ALL_MASK;
+        int count = 0;
+        for (SimField field : SimField.VALUES) {
+            if (demand[field.ordinal()] > 0) {
+                register(field);
+                count++;
+            }
+        }
+        replan(RateGroup.ALL_MASK);
+        logger.info("Registered " + count + " fields as " + blocks.length + " continual block requests");
+    }
+
+    /**
+     * Should be called when FSUIPC disconnects. Forgets all registered requests, FSUIPC drops them anyway.
+     */
+    public synchronized void disconnected() {
+        connected = false;
+        for (int i = 0; i < requests.length; i++) {
+            requests[i] = null;
+            values[i] = 0;
+        }
+        for (int i = 0; i < groupBlocks.size(); i++) {
+            groupBlocks.set(i, Collections.emptyList());
+        }
+        blocks = new RequestPlanner.Block[0];
+        registeredMask = 0;
+    }
+
+    /**
+     * Puts requests of the given groups into the FSUIPC continual request list, and takes requests of other groups out of it.
+     * Should be called from the FSUIPC processing thread, between processing cycles.
+     *
+     * @param groupMask mask of groups to be processed in the next cycle, see {@link RateGroup#getMask()}
+     */
+    public synchronized void setActiveGroups(int groupMask) {
+        if (groupMask == activeGroups) {
+            return;
+        }
+        int previous = activeGroups;
+        activeGroups = groupMask;
+        for (RateGroup group : RateGroup.VALUES) {
+            boolean wasIn = (previous & group.getMask()) != 0;
+            boolean shouldBeIn = (groupMask & group.getMask()) != 0;
+            if (shouldBeIn && !wasIn) {
+                for (RequestPlanner.Block block : groupBlocks.get(group.ordinal())) {
+                    fsuipc.addContinualRequest(block.getRequest());
+                }
+            } else if (!shouldBeIn && wasIn) {
+                for (RequestPlanner.Block block : groupBlocks.get(group.ordinal())) {
+                    fsuipc.removeContinualRequest(block.getRequest());
+                }
+            }
+        }
+    }
+
+    /**
+     * @return Mask of groups whose requests are processed in the current cycle
+     */
+    public synchronized int getActiveGroups() {
+        return activeGroups;
+    }
+
+    /**
+     * @param field field to check
+     * @return True if request for the field is currently registered
+     */
+    public boolean isRegistered(SimField field) {
+        return isRegistered(field.getMask());
+    }
+
+    /**
+     * @param fields fields to check
+     * @return True if all the fields are currently registered
+     */
+    public boolean isRegistered(Set<SimField> fields) {
+        return isRegistered(SimField.mask(fields));
+    }
+
+    /**
+     * Allocation free variant of {@link #isRegistered(java.util.Set)}.
+     *
+     * @param mask mask of fields to check, see {@link SimField#mask(java.util.Set)}
+     * @return True if all the fields are currently registered
+     */
+    public boolean isRegistered(long mask) {
+        return (registeredMask & mask) == mask;
+    }
+
+    /**
+     * @param field field to read
+     * @return Current value of the field, 0 if not registered or not read yet
+     */
+    public synchronized float getFloat(SimField field) {
+        return (float) values[field.ordinal()];
+    }
+
+    /**
+     * @param field field to read
+     * @return Current value of the field, 0 if not registered or not read yet
+     */
+    public synchronized double getDouble(SimField field) {
+        return values[field.ordinal()];
+    }
+
+    /**
+     * @param field field to read
+     * @return Current value of the field, 0 if not registered or not read yet
+     */
+    public synchronized int getInt(SimField field) {
+        return (int) values[field.ordinal()];
+    }
+
+    /**
+     * @return Number of block requests the registered fields are read with
+     */
+    public synchronized int getBlockCount() {
+        return blocks.length;
+    }
+
+    /**
+     * Fills the sample with the values of the fields polled in this cycle, decoded from the block bytes. Fields of groups that
+     * were not polled are left out, they were not read again. Should be called from the FSUIPC processing thread, after the
+     * requests were processed. Allocates nothing.
+     *
+     * @param sample sample to fill, other fields are removed from it
+     * @param polledGroups mask of groups processed in this cycle, see {@link RateGroup#getMask()}
+     */
+    public synchronized void fillSample(SimSample sample, int polledGroups) {
+        sample.clear();
+        for (int g = 0; g < groupBlocks.size(); g++) {
+            if ((polledGroups & RateGroup.VALUES[g].getMask()) == 0) {
+                continue;
+            }
+            List<RequestPlanner.Block> planned = groupBlocks.get(g);
+            for (int b = 0; b < planned.size(); b++) {
+                RequestPlanner.Block block = planned.get(b);
+                ByteBuffer data = block.getData();
+                for (int m = 0; m < block.getMemberCount(); m++) {
+                    SimField field = SimField.VALUES[block.getIndex(m)];
+                    double value = decode(field, data, block.getPosition(m));
+                    values[field.ordinal()] = value;
+                    sample.set(field, value);
+                }
+            }
+        }
+    }
+
+    private void register(SimField field) {
+        requests[field.ordinal()] = createRequest(field);
+        registeredMask |= field.getMask();
+    }
+
+    private void unregister(SimField field) {
+        requests[field.ordinal()] = null;
+        values[field.ordinal()] = 0;
+        registeredMask &= ~field.getMask();
+    }
+
+    /**
+     * Plans the block reads of given groups again, and replaces the old blocks in the FSUIPC continual request list.
+     *
+     * @param groupMask groups whose fields changed
+     */
+    private void replan(int groupMask) {
+        if (groupMask == 0) {
+            return;
+        }
+        List<RequestPlanner.Block> all = new ArrayList<>();
+        for (RateGroup group : RateGroup.VALUES) {
+            if ((groupMask & group.getMask()) != 0) {
+                boolean inList = (activeGroups & group.getMask()) != 0;
+                if (inList) {
+                    for (RequestPlanner.Block block : groupBlocks.get(group.ordinal())) {
+                        fsuipc.removeContinualRequest(block.getRequest());
+                    }
+                }
+                IDataRequest[] groupRequests = new IDataRequest[requests.length];
+                for (SimField field : SimField.VALUES) {
+                    if (field.getRateGroup() == group) {
+                        groupRequests[field.ordinal()] = requests[field.ordinal()];
+                    }
+                }
+                List<RequestPlanner.Block> planned = RequestPlanner.plan(groupRequests, maxGap);
+                groupBlocks.set(group.ordinal(), planned);
+                if (inList) {
+                    for (RequestPlanner.Block block : planned) {
+                        fsuipc.addContinualRequest(block.getRequest());
+                    }
+                }
+                if (logger.isLoggable(Level.FINE)) {
+                    logger.fine("Blocks of " + group + ": " + planned);
+                }
+            }
+            all.addAll(groupBlocks.get(group.ordinal()));
+        }
+        blocks = all.toArray(new RequestPlanner.Block[all.size()]);
+    }
+
+    /**
+     * Decodes the field from the raw FSUIPC bytes, to the units of the helper requests: degrees, feet, feet per minute, knots, psi,
+     * degrees Celsius, pounds per hour, percent.
+     *
+     * @param field field to decode
+     * @param data the bytes, little endian
+     * @param position position of the field offset in the bytes
+     * @return The value
+     */
+    static double decode(SimField field, ByteBuffer data, int position) {
+        switch (field) {
+            case HEADING:
+                //0x0580, unsigned, 360 degrees = 2^32
+                return (data.getInt(position) & 0xFFFFFFFFL) * 360.0 / TWO_TO_32;
+            case MAGNETIC_VARIATION:
+                //0x02A0, negative west, 360 degrees = 65536
+                return data.getShort(position) * 360.0 / 65536.0;
+            case BANK:
+            case PITCH:
+                //0x057C, 0x0578
+                return data.getInt(position) * 360.0 / TWO_TO_32;
+            case GPS_ALTITUDE:
+                //0x6020, meters
+                return data.getDouble(position) * FEET_PER_METER;
+            case LATITUDE:
+                //0x0560, 90 degrees = 10001750 * 2^32
+                return data.getLong(position) * 90.0 / (10001750.0 * TWO_TO_32);
+            case LONGITUDE:
+                //0x0568, 360 degrees = 2^64
+                return data.getLong(position) * 360.0 / (TWO_TO_32 * TWO_TO_32);
+            case VERTICAL_SPEED:
+                //0x02C8, meters per second * 256
+                return data.getInt(position) * 60.0 * FEET_PER_METER / 256.0;
+            case IAS:
+            case TAS:
+                //0x02BC, 0x02B8, knots * 128
+                return data.getInt(position) / 128.0;
+            case FRAME_RATE: {
+                //0x0274, 32768 / frames per second
+                int value = data.getShort(position) & 0xFFFF;
+                return value != 0 ? 32768.0 / value : 0;
+            }
+            case ENG1_OIL_QUANTITY:
+            case ENG2_OIL_QUANTITY:
+                //0x08D0, 0x0968, 100 % = 16384
+                return data.getInt(position) * 100.0 / 16384.0;
+            case ENG1_OIL_TEMPERATURE:
+            case ENG2_OIL_TEMPERATURE:
+                //0x08B8, 0x0950, 140 C = 16384
+                return data.getShort(position) * 140.0 / 16384.0;
+            case ENG1_OIL_PRESSURE:
+            case ENG2_OIL_PRESSURE:
+                //0x08BA, 0x0952, unsigned, 55 psi = 16384
+                return (data.getShort(position) & 0xFFFF) * 55.0 / 16384.0;
+            case ENG1_FUEL_FLOW:
+            case ENG2_FUEL_FLOW:
+                //0x0918, 0x09B0, pounds per hour
+                return data.getDouble(position);
+            case COM1_FREQUENCY:
+            case COM1_STANDBY:
+                //0x034E, 0x311A, BCD without the leading 1: 0x2345 = 123.45
+                return 100 + bcd(data.getShort(position) & 0xFFFF) / 100.0;
+            case PAUSE_INDICATOR:
+            case ENG1_THROTTLE_LEVER:
+            case ENG1_MIXTURE_LEVER:
+            case ENG1_PROPELLER_LEVER:
+            case ENG2_THROTTLE_LEVER:
+            case ENG2_MIXTURE_LEVER:
+            case ENG2_PROPELLER_LEVER:
+            case SLEW_MODE:
+                return data.getShort(position);
+            default:
+                //LOCAL_TIME, COM1_FREQUENCY_HZ, COM1_STANDBY_HZ, GEAR_*: plain 32 bit
+                return data.getInt(position);
+        }
+    }
+
+    private static int bcd(int value) {
+        return ((value >> 12) & 0xF) * 1000 + ((value >> 8) & 0xF) * 100 + ((value >> 4) & 0xF) * 10 + (value & 0xF);
+    }
+
+    private IDataRequest createRequest(SimField field) {
+        switch (field) {
+            case HEADING:
+                return aircraftHelper.getHeading();
+            case MAGNETIC_VARIATION:
+                return aircraftHelper.getMagneticVariation();
+            case BANK:
+                return aircraftHelper.getBank();
+            case PITCH:
+                return aircraftHelper.getPitch();
+            case GPS_ALTITUDE:
+                return gpsHelper.getAltitude(true);
+            case LATITUDE:
+                return aircraftHelper.getLatitude();
+            case LONGITUDE:
+                return aircraftHelper.getLongitude();
+            case VERTICAL_SPEED:
+                return aircraftHelper.getVerticalSpeed(true);
+            case IAS:
+                return aircraftHelper.getIAS();
+            case TAS:
+                return aircraftHelper.getTAS();
+            case PAUSE_INDICATOR:
+                return simHelper.getPauseIndicator();
+            case LOCAL_TIME:
+                return simHelper.getLocalTime();
+            case FRAME_RATE:
+                return simHelper.getFrameRate();
+            case ENG1_THROTTLE_LEVER:
+                return engine1Helper.getThrottleLever();
+            case ENG1_MIXTURE_LEVER:
+                return engine1Helper.getMixtureLever();
+            case ENG1_PROPELLER_LEVER:
+                return engine1Helper.getPropellerLever();
+            case ENG1_OIL_QUANTITY:
+                return engine1Helper.getOilQuantity();
+            case ENG1_OIL_TEMPERATURE:
+                return engine1Helper.getOilTemperature();
+            case ENG1_OIL_PRESSURE:
+                return engine1Helper.getOilPressure();
+            case ENG1_FUEL_FLOW:
+                return engine1Helper.getFuelFlow();
+            case ENG2_THROTTLE_LEVER:
+                return engine2Helper.getThrottleLever();
+            case ENG2_MIXTURE_LEVER:
+                return engine2Helper.getMixtureLever();
+            case ENG2_PROPELLER_LEVER:
+                return engine2Helper.getPropellerLever();
+            case ENG2_OIL_QUANTITY:
+                return engine2Helper.getOilQuantity();
+            case ENG2_OIL_TEMPERATURE:
+                return engine2Helper.getOilTemperature();
+            case ENG2_OIL_PRESSURE:
+                return engine2Helper.getOilPressure();
+            case ENG2_FUEL_FLOW:
+                return engine2Helper.getFuelFlow();
+            case COM1_FREQUENCY:
+                return com1Helper.getFrequency();
+            case COM1_STANDBY:
+                return com1Helper.getStandByFrequency();
+            case COM1_FREQUENCY_HZ:
+                return new IntRequest(0x05C4);
+            case COM1_STANDBY_HZ:
+                return new IntRequest(0x05CC);
+            case GEAR_NOSE:
+                return gearHelper.getNosePosition();
+            case GEAR_LEFT:
+                return gearHelper.getLefttPosition();
+            case GEAR_RIGHT:
+                return gearHelper.getRightPosition();
+            case SLEW_MODE:
+                return new ShortRequest(0x05DC);
+            default:
+                throw new IllegalArgumentException("Unknown field: " + field);
+        }
+    }
+}
@@ -0,0 +1,126 @@
+package com.mouseviator.fsuipc.example;
+
+/**
+ * Values of all polled {@link SimField}s at one moment, kept as primitives. Filled once per FSUIPC poll (or replayed from a
+ * recording) and passed down the pipeline, so consumers do not have to touch the FSUIPC request objects.
+ *
+ * <p>
+ * Not thread safe, the sample belongs to the thread that fills it. Consumers that hand it over to other threads must copy
+ * it.</p>
+ *
+ * @author Murdock
+ */
+public class SimSample {
+
+    /**
+     * Time the sample was taken, as per {@link System#nanoTime()}
+     */
+    private long timeNanos;
+    /**
+     * Mask of fields present in this sample, see {@link SimField#getMask()}
+     */
+    private long fieldMask;
+    /**
+     * Values indexed by field ordinal. Ints and floats are stored as doubles exactly.
+     */
+    private final double[] values = new double[SimField.VALUES.length];
+
+    /**
+     * @return Time the sample was taken, as per {@link System#nanoTime()}
+     */
+    public long getTimeNanos() {
+        return timeNanos;
+    }
+
+    /**
+     * @param timeNanos time the sample was taken, as per {@link System#nanoTime()}
+     */
+    public void setTimeNanos(long timeNanos) {
+        this.timeNanos = timeNanos;
+    }
+
+    /**
+     * @return Mask of fields present in this sample
+     */
+    public long getFieldMask() {
+        return fieldMask;
+    }
+
+    /**
+     * @param field field to check
+     * @return True if the field is present in this sample
+     */
+    public boolean has(SimField field) {
+        return (fieldMask & field.getMask()) != 0;
+    }
+
+    /**
+     * @param field field to get
+     * @return Value of the field, 0 if not present
+     */
+    public double getDouble(SimField field) {
+        return values[field.ordinal()];
+    }
+
+    /**
+     * @param field field to get
+     * @return Value of the field, 0 if not present
+     */
+    public float getFloat(SimField field) {
+        return (float) values[field.ordinal()];
+    }
+
+    /**
+     * @param field field to get
+     * @return Value of the field, 0 if not present
+     */
+    public int getInt(SimField field) {
+        return (int) values[field.ordinal()];
+    }
+
+    /**
+     * Sets value of the field and marks it present.
+     *
+     * @param field field to set
+     * @param value value of the field
+     */
+    public void set(SimField field, double value) {
+        values[field.ordinal()] = value;
+        fieldMask |= field.getMask();
+    }
+
+    /**
+     * Removes all fields from the sample.
+     */
+    public void clear() {
+        fieldMask = 0;
+        for (int i = 0; i < values.length; i++) {
+            values[i] = 0;
+        }
+    }
+
+    /**
+     * Takes the fields present in other sample, and its time. Fields missing in the other sample keep their values.
+     *
+     * @param other sample to merge in
+     */
+    public void merge(SimSample other) {
+        for (long bits = other.fieldMask; bits != 0; bits &= bits - 1) {
+            int ordinal = Long.numberOfTrailingZeros(bits);
+            values[ordinal] = other.values[ordinal];
+        }
+        fieldMask |= other.fieldMask;
+        timeNanos = other.timeNanos;
+    }
+
+    /**
+     * Copies everything from other sample to this one.
+     *
+     * @param other sample to copy
+     */
+    public void copyFrom(SimSample other) {
+        timeNanos = other.timeNanos;
+        fieldMask = other.fieldMask;
+        System.arraycopy(other.values, 0, values, 0, values.length);
+    }
+}
@@ -0,0 +1,16 @@
+package com.mouseviator.fsuipc.example;
+
+/**
+ * Receives simulator samples, one per poll.
+ *
+ * @author Murdock
+ */
+public interface SimSampleListener {
+
+    /**
+     * Called for each new sample. The sample is reused by the caller, so it must be copied if needed after the call returns.
+     *
+     * @param sample the sample
+     */
+    void onSample(SimSample sample);
+}
@@ -0,0 +1,253 @@
+package com.mouseviator.fsuipc.example;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.LocalDateTime;
+import java.util.logging.ConsoleHandler;
+import java.util.logging.Handler;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * The sim to panels pipeline - FSUIPC source, devices, alerts, metrics, diagnostics - as a plain service, without any AWT/Swing
+ * classes. {@link #main(java.lang.String[])} runs it headless, for panel only setups. {@link FSUIPCSimMonitor} is an optional
+ * viewer on top of a running service, loaded only with {@code --gui}.
+ *
+ * @author Murdock
+ */
+public class SimService {
+
+    /**
+     * Verbose text logging (FINER to console, FSUIPC library DEBUG log file) is opt-in, with -Dfsuipc.verboseLogging=true. The
+     * pipeline is traced by the flight recorder.
+     */
+    public static final boolean VERBOSE_LOGGING = Boolean.getBoolean("fsuipc.verboseLogging");
+
+    /**
+     * logger
+     */
+    private static final Logger logger = Logger.getLogger(SimService.class.getName());
+
+    /**
+     * The sim, through FSUIPC
+     */
+    private final FSUIPCDataSource simDataSource = new FSUIPCDataSource();
+    /**
+     * Latest values of everything polled, for readers on other threads
+     */
+    private final SimState simState = new SimState();
+    private boolean libFileLoggingEnabled = VERBOSE_LOGGING;
+    /**
+     * Always-on flight recording of the pipeline events, dumped on demand through JMX
+     */
+    private final DiagnosticsRecorder diagnosticsRecorder = new DiagnosticsRecorder();
+    /**
+     * All the Arduino panels, each has its own serial port and writer thread
+     */
+    private final DeviceManager deviceManager = new DeviceManager(simDataSource);
+    /**
+     * Gear, oil pressure, pause and slew alerts, sent to the devices in the priority lane
+     */
+    private final AlertEngine alertEngine = AlertEngine.defaults();
+    /**
+     * Turns samples into display frames for the devices, with heading turning smoothly between polls
+     */
+    private final DisplayPipeline displayPipeline = new DisplayPipeline(deviceManager, alertEngine,
+            DisplayPipeline.DEFAULT_HEADING_REFRESH_MS);
+    /**
+     * History of engine and flight parameters, for trends
+     */
+    private final TimeSeriesStore timeSeriesStore = new TimeSeriesStore();
+    /**
+     * File to record polled sim data to, for playback by SimDataReplay. Each sim connection is recorded to its own file, with the
+     * time it connected appended to the name, see {@link SimDataRecorder#sessionFile(Path, LocalDateTime)}. Null to not record.
+     */
+    private final String simDataRecordFile = null;
+    private volatile SimDataRecorder simDataRecorder;
+    /**
+     * Publishes the pipeline metrics through JMX and HTTP
+     */
+    private final MetricsServer metricsServer = new MetricsServer(simDataSource, deviceManager);
+    /**
+     * Publish sim data to panels on the local network, over WebSocket and UDP multicast, see NetworkPublisher
+     */
+    private final boolean networkPublishing = false;
+    private NetworkPublisher networkPublisher;
+
+    private boolean started = false;
+
+    public SimService() {
+        //the 16x2 LCD with gear LEDs. Delta mode and binary protocol need sketch that understands them, see ArduinoWriter.
+        //More panels can be added the same way, like:
+        //deviceManager.addDevice(new DeviceProfile("Gear", "COM6", 9600, EnumSet.of(DisplayField.GEAR_NOSE, DisplayField.GEAR_LEFT, DisplayField.GEAR_RIGHT), true, true));
+        //The button and encoders of the panel send commands back to the sim, see InputBindings for what they do.
+        //Sketches that send the handshake (see PortScanner) can use DeviceProfile.AUTO_PORT instead of fixed port.
+        //Sketches that show alerts can use EnumSet.allOf(DisplayField.class), the alert mask is then sent as the last field.
+        deviceManager.addDevice(new DeviceProfile("LCD", "COM5", DeviceProfile.DEFAULT_BAUD_RATE, DisplayField.LCD_FIELDS, false, false),
+                InputBindings.defaults());
+    }
+
+    /**
+     * Opens the devices and starts polling the sim.
+     */
+    public synchronized void start() {
+        if (started) {
+            return;
+        }
+        started = true;
+
+        //poll cycles, frames, serial writes, reconnects and FSUIPC failures, see JDK Mission Control
+        diagnosticsRecorder.start();
+        diagnosticsRecorder.registerJmx();
+
+        //open the devices right away, each one on its own thread, and keep them open across sim reconnects, so the displays
+        //come alive as soon as the sim connects
+        deviceManager.start();
+
+        simDataSource.setLibFileLogging(libFileLoggingEnabled);
+        //first, so the listeners after it see the state of the same poll
+        simDataSource.addSampleListener(simState);
+        simDataSource.attach(alertEngine);
+        simDataSource.addSampleListener(displayPipeline);
+        displayPipeline.start();
+        simDataSource.attach(timeSeriesStore);
+        simDataSource.addSampleListener(timeSeriesStore);
+        if (networkPublishing) {
+            networkPublisher = new NetworkPublisher();
+            simDataSource.attach(networkPublisher);
+            simDataSource.addSampleListener(networkPublisher);
+            networkPublisher.start();
+        }
+        simDataSource.addConnectionListener(new SimDataSource.ConnectionListener() {
+            @Override
+            public void onConnected(SimDataSource source) {
+                startRecording();
+            }
+
+            @Override
+            public void onDisconnected(SimDataSource source) {
+                stopRecording();
+                //pause, slew and gear alerts would stay on the LEDs
+                displayPipeline.resetAlerts();
+            }
+        });
+
+        //fails only when the native library cannot be loaded, the source logs that
+        simDataSource.start();
+
+        //latency and throughput of the pipeline, see JConsole or http://localhost:9404/metrics. Not needed for the first frame,
+        //so after the source is polling.
+        metricsServer.registerJmx();
+        metricsServer.startHttp(MetricsServer.DEFAULT_PORT);
+    }
+
+    /**
+     * Stops polling and closes the devices.
+     */
+    public synchronized void stop() {
+        if (!started) {
+            return;
+        }
+        started = false;
+        simDataSource.stop();
+        stopRecording();
+        displayPipeline.stop();
+        if (networkPublisher != null) {
+            networkPublisher.stop();
+        }
+        deviceManager.stop();
+        metricsServer.stopHttp();
+        diagnosticsRecorder.stop();
+    }
+
+    /**
+     * @return The sim data source, for viewers to attach to
+     */
+    public FSUIPCDataSource getSimDataSource() {
+        return simDataSource;
+    }
+
+    /**
+     * @return The latest sim state, for viewers that read it on their own schedule
+     */
+    public SimState getSimState() {
+        return simState;
+    }
+
+    public DeviceManager getDeviceManager() {
+        return deviceManager;
+    }
+
+    public AlertEngine getAlertEngine() {
+        return alertEngine;
+    }
+
+    public TimeSeriesStore getTimeSeriesStore() {
+        return timeSeriesStore;
+    }
+
+    private void startRecording() {
+        if (simDataRecordFile == null) {
+            return;
+        }
+        try {
+            simDataRecorder = new SimDataRecorder(SimDataRecorder.sessionFile(Paths.get(simDataRecordFile), LocalDateTime.now()));
+            simDataSource.addSampleListener(simDataRecorder);
+        } catch (IOException ex) {
+            logger.log(Level.SEVERE, "Failed to start recording", ex);
+        }
+    }
+
+    private void stopRecording() {
+        SimDataRecorder recorder = simDataRecorder;
+        if (recorder == null) {
+            return;
+        }
+        simDataRecorder = null;
+        simDataSource.removeSampleListener(recorder);
+        try {
+            recorder.close();
+        } catch (IOException ex) {
+            logger.log(Level.SEVERE, null, ex);
+        }
+    }
+
+    /**
+     * Sets up the console logging, verbose if asked for.
+     */
+    static void initLogging() {
+        if (VERBOSE_LOGGING) {
+            //set finer level for debugging
+            final Logger logger = Logger.getLogger("com.mouseviator");
+            //disable system handlers for us, or the FINER level will not apply
+            logger.setUseParentHandlers(false);
+            //custom console handler
+            final Handler consoleHandler = new ConsoleHandler();
+            consoleHandler.setLevel(Level.FINER);
+            logger.addHandler(consoleHandler);
+            logger.setLevel(Level.FINER);
+        }
+    }
+
+    /**
+     * Runs the pipeline headless, until the process is stopped.
+     *
+     * @param args {@code --gui} to show the monitor window too
+     */
+    public static void main(String args[]) {
+        initLogging();
+        SimService service = new SimService();
+        service.start();
+        Runtime.getRuntime().addShutdownHook(new Thread(service::stop, "Sim service shutdown"));
+        logger.info("Sim service started in " + ManagementFactory.getRuntimeMXBean().getUptime() + " ms");
+
+        for (String arg : args) {
+            if (arg.equals("--gui")) {
+                //the only place Swing gets loaded, after the pipeline runs
+                FSUIPCSimMonitor.show(service);
+            }
+        }
+    }
+}
@@ -0,0 +1,126 @@
+package com.mouseviator.fsuipc.example;
+
+import java.lang.invoke.VarHandle;
+
+/**
+ * Latest value of every {@link SimField}, shared by all threads that only need the current state - the map, the GUI, panels that
+ * are redrawn on their own schedule - instead of each keeping its own copy under a lock.
+ *
+ * <p>
+ * Published with a sequence lock. The source thread is the only writer: it makes the sequence odd, merges the sample in and makes
+ * the sequence even again, once per poll. Readers copy the values and retry if the sequence changed meanwhile, so a read never
+ * mixes two polls (heading and magnetic variation always come from the same one), never blocks the source, and allocates
+ * nothing.</p>
+ *
+ * <p>
+ * Fields polled less often (see {@link RateGroup}) keep their last value between polls, the field mask has every field seen so
+ * far.</p>
+ *
+ * @author Murdock
+ */
+public class SimState implements SimSampleListener {
+
+    /**
+     * Odd while the writer is merging a sample in, incremented twice per sample
+     */
+    private volatile long sequence = 0;
+    /**
+     * Written only by the source thread, between the sequence increments
+     */
+    private long timeNanos;
+    private long fieldMask;
+    private final double[] values = new double[SimField.VALUES.length];
+
+    /**
+     * Merges the sample in. Must be called from one thread only, the source thread.
+     *
+     * @param sample the sample
+     */
+    @Override
+    public void onSample(SimSample sample) {
+        long present = sample.getFieldMask();
+        sequence = sequence + 1;
+        //the values must not be written before the sequence is odd
+        VarHandle.storeStoreFence();
+        for (long bits = present; bits != 0; bits &= bits - 1) {
+            int ordinal = Long.numberOfTrailingZeros(bits);
+            values[ordinal] = sample.getDouble(SimField.VALUES[ordinal]);
+        }
+        fieldMask |= present;
+        timeNanos = sample.getTimeNanos();
+        //volatile write, publishes the values
+        sequence = sequence + 1;
+    }
+
+    /**
+     * @return Sequence of the latest state, changes with every sample. Readers can compare it to skip unchanged state.
+     */
+    public long getSequence() {
+        return sequence & ~1L;
+    }
+
+    /**
+     * Copies the whole state, consistent, into the sample.
+     *
+     * @param target sample to copy to, owned by the reading thread
+     * @return Sequence of the state read
+     */
+    public long read(SimSample target) {
+        while (true) {
+            long before = sequence;
+            if ((before & 1) == 0) {
+                target.clear();
+                long mask = fieldMask;
+                for (long bits = mask; bits != 0; bits &= bits - 1) {
+                    int ordinal = Long.numberOfTrailingZeros(bits);
+                    target.set(SimField.VALUES[ordinal], values[ordinal]);
+                }
+                target.setTimeNanos(timeNanos);
+                //the reads above must be done before the sequence is checked again
+                VarHandle.loadLoadFence();
+                if (sequence == before) {
+                    return before;
+                }
+            }
+            Thread.onSpinWait();
+        }
+    }
+
+    /**
+     * Reads one field. For more fields that must come from the same poll, use {@link #read(SimSample)}.
+     *
+     * @param field field to read
+     * @return Latest value of the field, 0 if not polled yet
+     */
+    public double getDouble(SimField field) {
+        while (true) {
+            long before = sequence;
+            if ((before & 1) == 0) {
+                double value = values[field.ordinal()];
+                VarHandle.loadLoadFence();
+                if (sequence == before) {
+                    return value;
+                }
+            }
+            Thread.onSpinWait();
+        }
+    }
+
+    /**
+     * @param field field to check
+     * @return True if the field has been polled at least once
+     */
+    public boolean has(SimField field) {
+        while (true) {
+            long before = sequence;
+            if ((before & 1) == 0) {
+                long mask = fieldMask;
+                VarHandle.loadLoadFence();
+                if (sequence == before) {
+                    return (mask & field.getMask()) != 0;
+                }
+            }
+            Thread.onSpinWait();
+        }
+    }
+}
@@ -0,0 +1,86 @@
+package com.mouseviator.fsuipc.example;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Metrics of a {@link SimDataSource}: samples delivered, how long the listeners take, how regular the polls are, and failures of
+ * the sim interface.
+ *
+ * @author Murdock
+ */
+public class SourceMetrics implements SourceMetricsMXBean {
+
+    private final AtomicLong samples = new AtomicLong();
+    private final AtomicLong failures = new AtomicLong();
+    private final LatencyHistogram dispatchTime = new LatencyHistogram();
+    private final LatencyHistogram pollInterval = new LatencyHistogram();
+    private long lastPollNanos = Long.MIN_VALUE;
+
+    /**
+     * Records one sample delivered to the listeners. Called from the source thread only.
+     *
+     * @param sampleNanos time of the sample
+     * @param dispatchNanos time the listeners took
+     */
+    void sampleDelivered(long sampleNanos, long dispatchNanos) {
+        samples.incrementAndGet();
+        dispatchTime.record(dispatchNanos);
+        if (lastPollNanos != Long.MIN_VALUE) {
+            pollInterval.record(sampleNanos - lastPollNanos);
+        }
+        lastPollNanos = sampleNanos;
+    }
+
+    /**
+     * Records failed call to the sim interface.
+     */
+    void failed() {
+        failures.incrementAndGet();
+    }
+
+    /**
+     * Forgets the last poll, so the time spent disconnected does not count as poll interval.
+     */
+    void disconnected() {
+        lastPollNanos = Long.MIN_VALUE;
+    }
+
+    /**
+     * @return Time spent delivering samples to the listeners
+     */
+    public LatencyHistogram getDispatchTime() {
+        return dispatchTime;
+    }
+
+    /**
+     * @return Time between two polls
+     */
+    public LatencyHistogram getPollInterval() {
+        return pollInterval;
+    }
+
+    @Override
+    public long getSamples() {
+        return samples.get();
+    }
+
+    @Override
+    public long getDispatchP99Micros() {
+        return dispatchTime.getPercentileMicros(99);
+    }
+
+    @Override
+    public long getPollIntervalP99Micros() {
+        return pollInterval.getPercentileMicros(99);
+    }
+
+    @Override
+    public long getPollIntervalMaxMicros() {
+        return pollInterval.getMaxNanos() / 1000;
+    }
+
+    @Override
+    public long getFailures() {
+        return failures.get();
+    }
+}
@@ -0,0 +1,34 @@
+package com.mouseviator.fsuipc.example;
+
+/**
+ * JMX view of {@link SourceMetrics}.
+ *
+ * @author Murdock
+ */
+public interface SourceMetricsMXBean {
+
+    /**
+     * @return Number of samples delivered to the pipeline
+     */
+    long getSamples();
+
+    /**
+     * @return 99th percentile of time spent delivering one sample to the listeners, microseconds
+     */
+    long getDispatchP99Micros();
+
+    /**
+     * @return 99th percentile of time between two polls, microseconds
+     */
+    long getPollIntervalP99Micros();
+
+    /**
+     * @return Longest time between two polls, microseconds
+     */
+    long getPollIntervalMaxMicros();
+
+    /**
+     * @return Number of failed calls to the sim interface (FSUIPC onFail)
+     */
+    long getFailures();
+}
@@ -0,0 +1,230 @@
+package com.mouseviator.fsuipc.example;
+
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * {@link SimDataSource} generating scripted flight data - the aircraft turns left and right, cycles the gear and swaps COM1
+ * frequencies - at configurable sample rate, up to thousands of samples per second. Does not need the sim nor the native
+ * FSUIPC library, so the formatting and serial stages can be load tested anywhere.
+ *
+ * <p>
+ * The script runs on wall clock time, the sample rate only decides how often it is sampled.</p>
+ *
+ * @author Murdock
+ */
+public class SyntheticDataSource extends AbstractSimDataSource implements Runnable {
+
+    /**
+     * Sample rate meaning "as fast as possible"
+     */
+    public static final int MAX_RATE = 0;
+
+    private static final int GEAR_UP = 0;
+    private static final int GEAR_DOWN = 16383;
+    private static final int[] FREQUENCIES_KHZ = {118025, 121500, 122800, 124350, 127850, 132005};
+
+    private final int samplesPerSecond;
+    private double turnRate = 3;
+    private double turnSeconds = 40;
+    private double gearCycleSeconds = 30;
+    private double gearTransitionSeconds = 6;
+    private double comSwapSeconds = 15;
+
+    private final SimSample sample = new SimSample();
+    private volatile boolean running = false;
+    private Thread thread;
+    private volatile long samplesGenerated = 0;
+
+    /**
+     * Creates new synthetic source.
+     *
+     * @param samplesPerSecond how many samples to generate per second, {@link #MAX_RATE} for as many as possible
+     */
+    public SyntheticDataSource(int samplesPerSecond) {
+        this.samplesPerSecond = samplesPerSecond;
+    }
+
+    /**
+     * @param turnRate turn rate in degrees per second (standard rate is 3)
+     * @param turnSeconds how long to turn in one direction before reversing
+     */
+    public void setTurn(double turnRate, double turnSeconds) {
+        this.turnRate = turnRate;
+        this.turnSeconds = turnSeconds;
+    }
+
+    /**
+     * @param gearCycleSeconds how long the gear stays in each position
+     * @param gearTransitionSeconds how long the gear takes to extend or retract
+     */
+    public void setGearCycle(double gearCycleSeconds, double gearTransitionSeconds) {
+        this.gearCycleSeconds = gearCycleSeconds;
+        this.gearTransitionSeconds = gearTransitionSeconds;
+    }
+
+    /**
+     * @param comSwapSeconds how often to swap COM1 active and standby frequency
+     */
+    public void setComSwap(double comSwapSeconds) {
+        this.comSwapSeconds = comSwapSeconds;
+    }
+
+    /**
+     * @return Number of samples generated so far
+     */
+    public long getSamplesGenerated() {
+        return samplesGenerated;
+    }
+
+    @Override
+    public String getSimVersion() {
+        return "Synthetic";
+    }
+
+    @Override
+    public String getInterfaceVersion() {
+        return samplesPerSecond == MAX_RATE ? "max rate" : samplesPerSecond + " samples/s";
+    }
+
+    @Override
+    public synchronized boolean start() {
+        if (running) {
+            return true;
+        }
+        running = true;
+        thread = new Thread(this, "Synthetic sim data");
+        thread.setDaemon(true);
+        thread.start();
+        return true;
+    }
+
+    @Override
+    public synchronized void stop() {
+        if (!running) {
+            return;
+        }
+        running = false;
+        thread.interrupt();
+        try {
+            thread.join(1000);
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        }
+        thread = null;
+    }
+
+    @Override
+    public void run() {
+        fireConnected();
+        long start = System.nanoTime();
+        long periodNanos = samplesPerSecond == MAX_RATE ? 0 : 1_000_000_000L / samplesPerSecond;
+        long next = start;
+        while (running) {
+            if (periodNanos > 0) {
+                long wait;
+                while ((wait = next - System.nanoTime()) > 0 && running) {
+                    LockSupport.parkNanos(wait);
+                }
+                next += periodNanos;
+            }
+            long now = System.nanoTime();
+            generate(sample, (now - start) / 1e9);
+            sample.setTimeNanos(now);
+            fireSample(sample);
+            samplesGenerated++;
+        }
+        fireDisconnected();
+    }
+
+    /**
+     * Fills the sample with scripted values at given script time.
+     *
+     * @param sample sample to fill
+     * @param t seconds since start
+     */
+    void generate(SimSample sample, double t) {
+        //turn one way for turnSeconds, then back, crossing north both ways
+        double phase = t % (2 * turnSeconds);
+        double turned = phase < turnSeconds ? phase * turnRate : (2 * turnSeconds - phase) * turnRate;
+        double heading = (350 + turned) % 360;
+        sample.set(SimField.HEADING, heading);
+        sample.set(SimField.MAGNETIC_VARIATION, 0);
+        sample.set(SimField.BANK, phase < turnSeconds ? -20 : 20);
+        sample.set(SimField.PITCH, 2);
+
+        //gear: down for gearCycleSeconds, retracting, up for gearCycleSeconds, extending
+        double cycle = t % (2 * (gearCycleSeconds + gearTransitionSeconds));
+        int gear;
+        if (cycle < gearCycleSeconds) {
+            gear = GEAR_DOWN;
+        } else if (cycle < gearCycleSeconds + gearTransitionSeconds) {
+            gear = (int) (GEAR_DOWN * (1 - (cycle - gearCycleSeconds) / gearTransitionSeconds));
+        } else if (cycle < 2 * gearCycleSeconds + gearTransitionSeconds) {
+            gear = GEAR_UP;
+        } else {
+            gear = (int) (GEAR_DOWN * (cycle - 2 * gearCycleSeconds - gearTransitionSeconds) / gearTransitionSeconds);
+        }
+        sample.set(SimField.GEAR_NOSE, gear);
+        //mains are a bit slower than the nose gear
+        sample.set(SimField.GEAR_LEFT, gear == GEAR_UP || gear == GEAR_DOWN ? gear : Math.max(GEAR_UP + 1, gear - 500));
+        sample.set(SimField.GEAR_RIGHT, gear == GEAR_UP || gear == GEAR_DOWN ? gear : Math.max(GEAR_UP + 1, gear - 800));
+
+        //COM1: swap every comSwapSeconds, and tune new standby frequency
+        int swaps = (int) (t / comSwapSeconds);
+        sample.set(SimField.COM1_FREQUENCY_HZ, FREQUENCIES_KHZ[swaps % FREQUENCIES_KHZ.length] * 1000);
+        sample.set(SimField.COM1_STANDBY_HZ, FREQUENCIES_KHZ[(swaps + 1) % FREQUENCIES_KHZ.length] * 1000);
+        sample.set(SimField.COM1_FREQUENCY, FREQUENCIES_KHZ[swaps % FREQUENCIES_KHZ.length] / 1000f);
+        sample.set(SimField.COM1_STANDBY, FREQUENCIES_KHZ[(swaps + 1) % FREQUENCIES_KHZ.length] / 1000f);
+
+        sample.set(SimField.IAS, 120 + 5 * Math.sin(t / 10));
+        sample.set(SimField.TAS, 130 + 5 * Math.sin(t / 10));
+        sample.set(SimField.VERTICAL_SPEED, 100 * Math.sin(t / 20));
+        sample.set(SimField.GPS_ALTITUDE, 3000 + 200 * Math.sin(t / 20));
+        sample.set(SimField.LATITUDE, 48.652032 + t * 1e-5);
+        sample.set(SimField.LONGITUDE, -122.585922 + t * 1e-5);
+        sample.set(SimField.PAUSE_INDICATOR, 0);
+        sample.set(SimField.SLEW_MODE, 0);
+        sample.set(SimField.ENG1_OIL_TEMPERATURE, 180 + 5 * Math.sin(t / 60));
+        sample.set(SimField.ENG1_OIL_PRESSURE, 60 + 2 * Math.sin(t / 30));
+        sample.set(SimField.ENG1_FUEL_FLOW, 9 + Math.sin(t / 45));
+        sample.set(SimField.ENG2_OIL_TEMPERATURE, 182 + 5 * Math.sin(t / 60));
+        sample.set(SimField.ENG2_OIL_PRESSURE, 61 + 2 * Math.sin(t / 30));
+        sample.set(SimField.ENG2_FUEL_FLOW, 9.2 + Math.sin(t / 45));
+    }
+
+    /**
+     * Runs the synthetic source into the display pipeline and prints throughput every second, for load testing without the sim.
+     *
+     * @param args optional sample rate (default 1000, 0 = as fast as possible), optional test length in seconds (default 10),
+     * optional serial port to send frames to
+     */
+    public static void main(String args[]) throws InterruptedException {
+        int rate = args.length > 0 ? Integer.parseInt(args[0]) : 1000;
+        int seconds = args.length > 1 ? Integer.parseInt(args[1]) : 10;
+
+        SyntheticDataSource source = new SyntheticDataSource(rate);
+        DeviceManager deviceManager = new DeviceManager(source);
+        if (args.length > 2) {
+            deviceManager.addDevice(new DeviceProfile("Synthetic", args[2], DeviceProfile.DEFAULT_BAUD_RATE, DisplayField.LCD_FIELDS, false, false));
+            deviceManager.start();
+        }
+        source.addSampleListener(new DisplayPipeline(deviceManager));
+
+        source.start();
+        long last = 0;
+        for (int i = 0; i < seconds; i++) {
+            Thread.sleep(1000);
+            long generated = source.getSamplesGenerated();
+            System.out.println(String.format("%d samples/s", generated - last));
+            last = generated;
+        }
+        source.stop();
+        deviceManager.stop();
+        for (ArduinoWriter device : deviceManager.getDevices()) {
+            DeviceMetrics metrics = device.getMetrics();
+            System.out.println(String.format("%s: %d frames published, %d coalesced, %d sent, sample to wire p50 %d us, p99 %d us",
+                    device.getProfile(), metrics.getFramesPublished(), metrics.getFramesCoalesced(), metrics.getFramesSent(),
+                    metrics.getSampleToWireP50Micros(), metrics.getSampleToWireP99Micros()));
+        }
+    }
+}
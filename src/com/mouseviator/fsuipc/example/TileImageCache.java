@@ -0,0 +1,251 @@
+package com.mouseviator.fsuipc.example;
+
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.net.URI;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import javax.imageio.ImageIO;
+import org.jxmapviewer.viewer.TileCache;
+
+/**
+ * Two level tile cache for {@link OfflineTileFactory}: decoded images in a memory LRU bounded by size, backed by a local
+ * {@link TileStore}. Replaces the default jxmapviewer cache, which keeps everything it ever downloaded and falls back to the
+ * network.
+ *
+ * <p>
+ * The memory use is flat - once the decoded images take more than the limit, the least recently used ones are dropped, and read
+ * from the store again when needed. Tiles missing in the store are shown blank, the map never goes to the network. Missing tiles
+ * are cached too, as the shared blank image counted at 0 bytes, so flying outside the stored area does not read the store over
+ * and over. The number of entries is limited as well, for the blank ones. Thread safe, the map loading threads and the
+ * {@link MovingMap} prefetch read it at the same time.</p>
+ *
+ * @author Murdock
+ */
+public class TileImageCache extends TileCache {
+
+    /**
+     * Default limit of decoded images in memory, 128 tiles of 256x256 pixels
+     */
+    public static final long DEFAULT_MAX_BYTES = 32L * 1024 * 1024;
+    /**
+     * Scheme of the tile URIs, see {@link #tileUri(int, int, int)}
+     */
+    static final String SCHEME = "tile";
+
+    /**
+     * logger
+     */
+    private static final Logger logger = Logger.getLogger(TileImageCache.class.getName());
+
+    private final TileStore store;
+    private final long maxBytes;
+    /**
+     * Most tiles in memory, four times what the byte limit allows of real images
+     */
+    private final int maxEntries;
+    private final BufferedImage blank;
+    /**
+     * Decoded images by tile key, in access order
+     */
+    private final LinkedHashMap<Long, BufferedImage> images = new LinkedHashMap<>(256, 0.75f, true);
+    private long bytes = 0;
+    private long hits = 0;
+    private long misses = 0;
+    private long evictions = 0;
+
+    /**
+     * Creates new cache.
+     *
+     * @param store store to read the tiles from
+     * @param maxBytes limit of decoded images kept in memory
+     * @param tileSize size of the tiles in pixels, for the blank tile
+     */
+    public TileImageCache(TileStore store, long maxBytes, int tileSize) {
+        this.store = store;
+        this.maxBytes = maxBytes;
+        this.blank = new BufferedImage(tileSize, tileSize, BufferedImage.TYPE_INT_ARGB);
+        this.maxEntries = (int) Math.min(Integer.MAX_VALUE, Math.max(16, 4 * maxBytes / (4L * tileSize * tileSize)));
+    }
+
+    /**
+     * @param zoom OpenStreetMap zoom level
+     * @param x tile column
+     * @param y tile row
+     * @return URI of the tile, as given to the map by {@link OfflineTileFactory}
+     */
+    static String tileUri(int zoom, int x, int y) {
+        return SCHEME + ":" + zoom + "/" + x + "/" + y;
+    }
+
+    /**
+     * Called by the map loading threads. Never returns null, so the map never tries to download the tile.
+     *
+     * @param uri tile URI, see {@link #tileUri(int, int, int)}
+     * @return Decoded image of the tile, blank image if the store does not have it
+     */
+    @Override
+    public BufferedImage get(URI uri) throws IOException {
+        String[] parts = uri.getSchemeSpecificPart().split("/");
+        if (!SCHEME.equals(uri.getScheme()) || parts.length != 3) {
+            return blank;
+        }
+        try {
+            return get(Integer.parseInt(parts[0]), Integer.parseInt(parts[1]), Integer.parseInt(parts[2]));
+        } catch (NumberFormatException ex) {
+            return blank;
+        }
+    }
+
+    /**
+     * Gets the tile from memory, or reads and decodes it from the store.
+     *
+     * @param zoom OpenStreetMap zoom level
+     * @param x tile column
+     * @param y tile row
+     * @return Decoded image of the tile, blank image if the store does not have it
+     */
+    public BufferedImage get(int zoom, int x, int y) {
+        long key = key(zoom, x, y);
+        synchronized (this) {
+            BufferedImage image = images.get(key);
+            if (image != null) {
+                hits++;
+                return image;
+            }
+            misses++;
+        }
+        //read outside the lock, so one slow read does not block the other threads. Two threads may read the same tile, then
+        //the second one just replaces the first.
+        BufferedImage image = load(zoom, x, y);
+        if (image == null) {
+            //read error, maybe passing, try again next time
+            return blank;
+        }
+        synchronized (this) {
+            BufferedImage previous = images.put(key, image);
+            if (previous != null) {
+                bytes -= sizeOf(previous);
+            }
+            bytes += sizeOf(image);
+            evict();
+        }
+        return image;
+    }
+
+    /**
+     * Makes sure the tile is in memory, so the map shows it without waiting for the store.
+     *
+     * @param zoom OpenStreetMap zoom level
+     * @param x tile column
+     * @param y tile row
+     */
+    public void prefetch(int zoom, int x, int y) {
+        int max = 1 << zoom;
+        if (zoom < 0 || y < 0 || y >= max) {
+            return;
+        }
+        //wrap around the date line
+        get(zoom, Math.floorMod(x, max), y);
+    }
+
+    /**
+     * The images are already limited by size, nothing more to give.
+     */
+    @Override
+    public void needMoreMemory() {
+        synchronized (this) {
+            images.clear();
+            bytes = 0;
+        }
+    }
+
+    /**
+     * The cache reads the store itself, the map never downloads anything to put here.
+     */
+    @Override
+    public void put(URI uri, byte[] bimg, BufferedImage img) {
+    }
+
+    /**
+     * @return Bytes of decoded images in memory
+     */
+    public synchronized long getBytes() {
+        return bytes;
+    }
+
+    /**
+     * @return Number of tiles found in memory
+     */
+    public synchronized long getHits() {
+        return hits;
+    }
+
+    /**
+     * @return Number of tiles in memory, blank ones included
+     */
+    public synchronized int getSize() {
+        return images.size();
+    }
+
+    /**
+     * @return Number of tiles read from the store
+     */
+    public synchronized long getMisses() {
+        return misses;
+    }
+
+    /**
+     * @return Number of tiles dropped from memory to stay within the limit
+     */
+    public synchronized long getEvictions() {
+        return evictions;
+    }
+
+    /**
+     * @return Decoded image, blank if the store does not have the tile, null if it cannot be read
+     */
+    private BufferedImage load(int zoom, int x, int y) {
+        try {
+            byte[] data = store.read(zoom, x, y);
+            if (data == null) {
+                return blank;
+            }
+            BufferedImage image = ImageIO.read(new ByteArrayInputStream(data));
+            return image != null ? image : blank;
+        } catch (IOException ex) {
+            logger.log(Level.WARNING, "Failed to read tile " + tileUri(zoom, x, y) + " from " + store, ex);
+            return null;
+        }
+    }
+
+    /**
+     * Drops least recently used images until within the limit. Must hold the lock.
+     */
+    private void evict() {
+        Iterator<Map.Entry<Long, BufferedImage>> it = images.entrySet().iterator();
+        while ((bytes > maxBytes || images.size() > maxEntries) && it.hasNext()) {
+            bytes -= sizeOf(it.next().getValue());
+            it.remove();
+            evictions++;
+        }
+    }
+
+    private static long key(int zoom, int x, int y) {
+        //zoom up to 31, x and y up to 2^29 - plenty for any map
+        return ((long) zoom << 58) | ((long) x << 29) | y;
+    }
+
+    private long sizeOf(BufferedImage image) {
+        if (image == blank) {
+            //shared by all missing tiles
+            return 0;
+        }
+        //decoded images are 1 to 4 bytes per pixel, count the worst case
+        return 4L * image.getWidth() * image.getHeight();
+    }
+}
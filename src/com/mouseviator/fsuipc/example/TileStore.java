@@ -0,0 +1,23 @@
+package com.mouseviator.fsuipc.example;
+
+import java.io.IOException;
+
+/**
+ * Local store of encoded map tiles (PNG or JPEG), read by {@link TileImageCache}. Tiles are addressed the OpenStreetMap way -
+ * zoom 0 is the whole world in one tile, x grows east and y grows south.
+ *
+ * @author Murdock
+ */
+public interface TileStore {
+
+    /**
+     * Reads one tile. Called from the map loading threads, so implementations must be thread safe.
+     *
+     * @param zoom OpenStreetMap zoom level
+     * @param x tile column
+     * @param y tile row
+     * @return Encoded image of the tile, null if the store does not have it
+     * @throws IOException when the store cannot be read
+     */
+    byte[] read(int zoom, int x, int y) throws IOException;
+}
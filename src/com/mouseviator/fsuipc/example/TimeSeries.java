@@ -0,0 +1,232 @@
+package com.mouseviator.fsuipc.example;
+
+/**
+ * History of one {@link SimField} in the {@link TimeSeriesStore}: raw values plus per second and per minute min/max/average,
+ * each tier in its own ring buffer of primitive columns. Adding a value updates all tiers in constant time, nothing is boxed or
+ * allocated. Queries find the start of the range by binary search, so they touch only the values they return.
+ *
+ * <p>
+ * Values are kept as floats - engine temperatures, pressures, speeds and altitudes do not need more. Times are
+ * {@link System#nanoTime()} of the samples.</p>
+ *
+ * <p>
+ * Thread safe, written by the thread delivering samples and read by any thread.</p>
+ *
+ * @author Murdock
+ */
+public class TimeSeries {
+
+    /**
+     * One ring buffer. Raw tier uses only the avg column.
+     */
+    private static class Tier {
+
+        final long bucketNanos;
+        final long[] times;
+        final float[] min;
+        final float[] max;
+        final float[] avg;
+        /**
+         * Index of the next write
+         */
+        int head = 0;
+        int size = 0;
+
+        /**
+         * Bucket being filled, not yet in the ring
+         */
+        long openBucket = Long.MIN_VALUE;
+        float openMin;
+        float openMax;
+        double openSum;
+        int openCount;
+
+        Tier(Resolution resolution, int capacity) {
+            this.bucketNanos = resolution.getBucketNanos();
+            this.times = new long[capacity];
+            this.avg = new float[capacity];
+            if (bucketNanos > 0) {
+                this.min = new float[capacity];
+                this.max = new float[capacity];
+            } else {
+                this.min = avg;
+                this.max = avg;
+            }
+        }
+
+        void add(long timeNanos, float value) {
+            if (bucketNanos == 0) {
+                append(timeNanos, value, value, value);
+                return;
+            }
+            long bucket = Math.floorDiv(timeNanos, bucketNanos);
+            if (bucket != openBucket) {
+                closeBucket();
+                openBucket = bucket;
+                openMin = value;
+                openMax = value;
+                openSum = 0;
+                openCount = 0;
+            }
+            openMin = Math.min(openMin, value);
+            openMax = Math.max(openMax, value);
+            openSum += value;
+            openCount++;
+        }
+
+        void closeBucket() {
+            if (openCount > 0) {
+                append(openBucket * bucketNanos, openMin, openMax, (float) (openSum / openCount));
+                openCount = 0;
+            }
+        }
+
+        void append(long time, float minValue, float maxValue, float avgValue) {
+            times[head] = time;
+            min[head] = minValue;
+            max[head] = maxValue;
+            avg[head] = avgValue;
+            head = head + 1 == times.length ? 0 : head + 1;
+            if (size < times.length) {
+                size++;
+            }
+        }
+
+        /**
+         * @param i position from the oldest entry
+         * @return Index of the entry in the arrays
+         */
+        int index(int i) {
+            int index = head - size + i;
+            return index < 0 ? index + times.length : index;
+        }
+
+        /**
+         * @return Position of the first entry at or after given time, size if none
+         */
+        int firstAtOrAfter(long timeNanos) {
+            int low = 0;
+            int high = size;
+            while (low < high) {
+                int mid = (low + high) >>> 1;
+                if (times[index(mid)] - timeNanos < 0) {
+                    low = mid + 1;
+                } else {
+                    high = mid;
+                }
+            }
+            return low;
+        }
+
+        void clear() {
+            head = 0;
+            size = 0;
+            openBucket = Long.MIN_VALUE;
+            openCount = 0;
+        }
+    }
+
+    private final SimField field;
+    private final Tier[] tiers = new Tier[Resolution.VALUES.length];
+
+    /**
+     * Creates new time series with the default capacities.
+     *
+     * @param field field this series is for
+     */
+    public TimeSeries(SimField field) {
+        this.field = field;
+        for (Resolution resolution : Resolution.VALUES) {
+            tiers[resolution.ordinal()] = new Tier(resolution, resolution.getDefaultCapacity());
+        }
+    }
+
+    /**
+     * @return Field this series is for
+     */
+    public SimField getField() {
+        return field;
+    }
+
+    /**
+     * Adds one value to all tiers. Times must not go backwards.
+     *
+     * @param timeNanos time of the value, as per {@link System#nanoTime()}
+     * @param value the value
+     */
+    public synchronized void add(long timeNanos, float value) {
+        for (Tier tier : tiers) {
+            tier.add(timeNanos, value);
+        }
+    }
+
+    /**
+     * Removes everything.
+     */
+    public synchronized void clear() {
+        for (Tier tier : tiers) {
+            tier.clear();
+        }
+    }
+
+    /**
+     * @param resolution the tier
+     * @return Number of entries in the tier, without the bucket being filled
+     */
+    public synchronized int size(Resolution resolution) {
+        return tiers[resolution.ordinal()].size;
+    }
+
+    /**
+     * Copies entries of the time range into given arrays, oldest first. The bucket still being filled is included as the last
+     * entry, so the newest values show up right away. For {@link Resolution#RAW}, min, max and average are all the value.
+     *
+     * @param resolution tier to read
+     * @param fromNanos start of the range, inclusive; for buckets, time of the bucket start
+     * @param toNanos end of the range, exclusive
+     * @param times receives times of the entries, must not be null
+     * @param min receives minimums, may be null
+     * @param avg receives averages, may be null
+     * @param max receives maximums, may be null
+     * @return Number of entries copied, at most the length of the times array - the oldest ones in the range if there are more
+     */
+    public synchronized int read(Resolution resolution, long fromNanos, long toNanos, long[] times, float[] min, float[] avg,
+            float[] max) {
+        Tier tier = tiers[resolution.ordinal()];
+        int count = 0;
+        for (int i = tier.firstAtOrAfter(fromNanos); i < tier.size && count < times.length; i++) {
+            int index = tier.index(i);
+            if (tier.times[index] - toNanos >= 0) {
+                return count;
+            }
+            times[count] = tier.times[index];
+            if (min != null) {
+                min[count] = tier.min[index];
+            }
+            if (avg != null) {
+                avg[count] = tier.avg[index];
+            }
+            if (max != null) {
+                max[count] = tier.max[index];
+            }
+            count++;
+        }
+        if (tier.openCount > 0 && count < times.length) {
+            long openTime = tier.openBucket * tier.bucketNanos;
+            if (openTime - fromNanos >= 0 && openTime - toNanos < 0) {
+                times[count] = openTime;
+                if (min != null) {
+                    min[count] = tier.openMin;
+                }
+                if (avg != null) {
+                    avg[count] = (float) (tier.openSum / tier.openCount);
+                }
+                if (max != null) {
+                    max[count] = tier.openMax;
+                }
+                count++;
+            }
+        }
+        return count;
+    }
+}
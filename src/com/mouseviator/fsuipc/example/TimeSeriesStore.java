@@ -0,0 +1,111 @@
+package com.mouseviator.fsuipc.example;
+
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.Set;
+
+/**
+ * Keeps the history of engine and flight parameters in memory, for trend displays and exports. Each field has its own
+ * {@link TimeSeries} with raw, per second and per minute tiers of fixed capacity, so the memory use does not grow with the length
+ * of the flight, and adding a sample allocates nothing.
+ *
+ * @author Murdock
+ */
+public class TimeSeriesStore implements SimSampleListener, SimDataSink {
+
+    /**
+     * Fields recorded by default - both engines, speeds and altitude
+     */
+    public static final Set<SimField> DEFAULT_FIELDS = Collections.unmodifiableSet(EnumSet.of(
+            SimField.ENG1_THROTTLE_LEVER, SimField.ENG1_MIXTURE_LEVER, SimField.ENG1_PROPELLER_LEVER,
+            SimField.ENG1_OIL_QUANTITY, SimField.ENG1_OIL_TEMPERATURE, SimField.ENG1_OIL_PRESSURE, SimField.ENG1_FUEL_FLOW,
+            SimField.ENG2_THROTTLE_LEVER, SimField.ENG2_MIXTURE_LEVER, SimField.ENG2_PROPELLER_LEVER,
+            SimField.ENG2_OIL_QUANTITY, SimField.ENG2_OIL_TEMPERATURE, SimField.ENG2_OIL_PRESSURE, SimField.ENG2_FUEL_FLOW,
+            SimField.IAS, SimField.TAS, SimField.VERTICAL_SPEED, SimField.GPS_ALTITUDE));
+
+    private final Set<SimField> fields;
+    /**
+     * Series indexed by field ordinal, null for fields not recorded
+     */
+    private final TimeSeries[] series = new TimeSeries[SimField.VALUES.length];
+    /**
+     * Series of the recorded fields, for the sample loop
+     */
+    private final TimeSeries[] recorded;
+    private final long fieldMask;
+
+    /**
+     * Creates store of the {@link #DEFAULT_FIELDS}.
+     */
+    public TimeSeriesStore() {
+        this(DEFAULT_FIELDS);
+    }
+
+    /**
+     * @param fields fields to record
+     */
+    public TimeSeriesStore(Set<SimField> fields) {
+        this.fields = Collections.unmodifiableSet(EnumSet.copyOf(fields));
+        this.fieldMask = SimField.mask(fields);
+        this.recorded = new TimeSeries[this.fields.size()];
+        int i = 0;
+        for (SimField field : this.fields) {
+            series[field.ordinal()] = recorded[i++] = new TimeSeries(field);
+        }
+    }
+
+    @Override
+    public Set<SimField> getRequiredFields() {
+        return fields;
+    }
+
+    @Override
+    public void onSample(SimSample sample) {
+        if ((sample.getFieldMask() & fieldMask) == 0) {
+            return;
+        }
+        long time = sample.getTimeNanos();
+        for (TimeSeries timeSeries : recorded) {
+            SimField field = timeSeries.getField();
+            if (sample.has(field)) {
+                timeSeries.add(time, (float) sample.getDouble(field));
+            }
+        }
+    }
+
+    /**
+     * @param field the field
+     * @return History of the field, null if the field is not recorded
+     */
+    public TimeSeries get(SimField field) {
+        return series[field.ordinal()];
+    }
+
+    /**
+     * Shortcut for {@link TimeSeries#read(Resolution, long, long, long[], float[], float[], float[])}.
+     *
+     * @param field field to read
+     * @param resolution tier to read
+     * @param fromNanos start of the range, inclusive
+     * @param toNanos end of the range, exclusive
+     * @param times receives times of the entries
+     * @param min receives minimums, may be null
+     * @param avg receives averages, may be null
+     * @param max receives maximums, may be null
+     * @return Number of entries copied, 0 if the field is not recorded
+     */
+    public int read(SimField field, Resolution resolution, long fromNanos, long toNanos, long[] times, float[] min, float[] avg,
+            float[] max) {
+        TimeSeries timeSeries = series[field.ordinal()];
+        return timeSeries == null ? 0 : timeSeries.read(resolution, fromNanos, toNanos, times, min, avg, max);
+    }
+
+    /**
+     * Removes all history, like when new flight starts.
+     */
+    public void clear() {
+        for (TimeSeries timeSeries : recorded) {
+            timeSeries.clear();
+        }
+    }
+}
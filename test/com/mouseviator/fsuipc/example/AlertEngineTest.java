@@ -0,0 +1,67 @@
+package com.mouseviator.fsuipc.example;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import org.junit.Test;
+
+/**
+ * Active rule counting and the default rules.
+ *
+ * @author Murdock
+ */
+public class AlertEngineTest {
+
+    private final AlertEngine engine = AlertEngine.defaults();
+    private final SimSample sample = new SimSample();
+
+    private boolean evaluate(SimField field, double value) {
+        sample.clear();
+        sample.set(field, value);
+        return engine.evaluate(sample);
+    }
+
+    @Test
+    public void alertStaysOnWhileAnyRuleIsActive() {
+        assertTrue(evaluate(SimField.GEAR_NOSE, 8000));
+        assertTrue(evaluate(SimField.GEAR_LEFT, 8000));
+        assertEquals(Alert.GEAR_UNSAFE.getMask(), engine.getActiveMask());
+
+        //the nose locks, the left leg still moves, but the display must show the nose
+        assertTrue(evaluate(SimField.GEAR_NOSE, DisplayFrame.GEAR_MAXIMUMVALUE));
+        assertTrue(engine.isActive(Alert.GEAR_UNSAFE));
+        assertFalse("no change", evaluate(SimField.GEAR_NOSE, DisplayFrame.GEAR_MAXIMUMVALUE));
+
+        assertTrue(evaluate(SimField.GEAR_LEFT, DisplayFrame.GEAR_MAXIMUMVALUE));
+        assertEquals(0, engine.getActiveMask());
+    }
+
+    @Test
+    public void oilPressureOnlyWhileEngineRuns() {
+        //engines off, single engine aircraft
+        sample.clear();
+        sample.set(SimField.ENG1_OIL_PRESSURE, 0);
+        sample.set(SimField.ENG2_OIL_PRESSURE, 0);
+        sample.set(SimField.ENG1_FUEL_FLOW, 0);
+        sample.set(SimField.ENG2_FUEL_FLOW, 0);
+        assertFalse(engine.evaluate(sample));
+
+        assertTrue(evaluate(SimField.ENG1_FUEL_FLOW, 12));
+        assertEquals(Alert.ENG1_LOW_OIL_PRESSURE.getMask(), engine.getActiveMask());
+        assertTrue(evaluate(SimField.ENG1_OIL_PRESSURE, 60));
+        assertEquals(0, engine.getActiveMask());
+    }
+
+    @Test
+    public void resetClearsAlerts() {
+        evaluate(SimField.PAUSE_INDICATOR, 1);
+        evaluate(SimField.SLEW_MODE, 1);
+        assertEquals(Alert.PAUSED.getMask() | Alert.SLEW.getMask(), engine.getActiveMask());
+        engine.reset();
+        assertEquals(0, engine.getActiveMask());
+        //counting starts over
+        assertTrue(evaluate(SimField.PAUSE_INDICATOR, 1));
+        assertTrue(evaluate(SimField.PAUSE_INDICATOR, 0));
+        assertEquals(0, engine.getActiveMask());
+    }
+}
@@ -0,0 +1,62 @@
+package com.mouseviator.fsuipc.example;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import org.junit.Test;
+
+/**
+ * Entry and exit of the alert rules.
+ *
+ * @author Murdock
+ */
+public class AlertRuleTest {
+
+    @Test
+    public void belowEntersUnderThresholdAndLeavesAboveHysteresis() {
+        AlertRule rule = AlertRule.below(Alert.ENG1_LOW_OIL_PRESSURE, SimField.ENG1_OIL_PRESSURE, 20, 5);
+        assertFalse(rule.update(20));
+        assertFalse(rule.isActive());
+        assertTrue(rule.update(19.9));
+        assertTrue(rule.isActive());
+        //wobbling around the threshold keeps it on
+        assertFalse(rule.update(21));
+        assertFalse(rule.update(24.9));
+        assertTrue(rule.isActive());
+        assertTrue(rule.update(25));
+        assertFalse(rule.isActive());
+        assertFalse(rule.update(21));
+    }
+
+    @Test
+    public void aboveEntersOverThresholdAndLeavesBelowHysteresis() {
+        AlertRule rule = AlertRule.above(Alert.ENG1_LOW_OIL_PRESSURE, SimField.ENG1_OIL_TEMPERATURE, 100, 10);
+        assertFalse(rule.update(100));
+        assertTrue(rule.update(100.1));
+        assertFalse(rule.update(95));
+        assertFalse(rule.update(90.1));
+        assertTrue(rule.isActive());
+        assertTrue(rule.update(90));
+        assertFalse(rule.isActive());
+    }
+
+    @Test
+    public void gatedRuleNeedsOpenGate() {
+        AlertRule rule = AlertRule.below(Alert.ENG2_LOW_OIL_PRESSURE, SimField.ENG2_OIL_PRESSURE, 20, 5)
+                .onlyWhenAbove(SimField.ENG2_FUEL_FLOW, 0);
+        //engine off, or no second engine
+        assertFalse(rule.update(0));
+        assertFalse(rule.updateGate(0));
+        //engine starting, no pressure yet
+        assertTrue(rule.updateGate(8));
+        assertTrue(rule.isActive());
+        assertTrue(rule.update(60));
+        assertFalse(rule.isActive());
+        assertTrue(rule.update(10));
+        //shut down, the pressure goes away with it
+        assertTrue(rule.updateGate(0));
+        assertFalse(rule.isActive());
+
+        rule.reset();
+        assertFalse("gate closed after reset", rule.update(10));
+    }
+}
@@ -0,0 +1,56 @@
+package com.mouseviator.fsuipc.example;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import org.junit.Test;
+
+/**
+ * Order and merging of queued commands.
+ *
+ * @author Murdock
+ */
+public class CommandQueueTest {
+
+    private final CommandQueue queue = new CommandQueue(3);
+    private final SimCommand[] commands = new SimCommand[3];
+    private final int[] counts = new int[3];
+
+    @Test
+    public void keepsOrderAndMergesConsecutiveRepeats() {
+        queue.add(SimCommand.COM1_FRACT_INC, 1);
+        queue.add(SimCommand.COM1_FRACT_INC, 2);
+        queue.add(SimCommand.COM1_SWAP, 1);
+        queue.add(SimCommand.COM1_FRACT_INC, 1);
+
+        assertEquals(3, queue.drainTo(commands, counts));
+        assertArrayEquals(new SimCommand[]{SimCommand.COM1_FRACT_INC, SimCommand.COM1_SWAP, SimCommand.COM1_FRACT_INC}, commands);
+        assertArrayEquals(new int[]{3, 1, 1}, counts);
+        assertEquals(0, queue.drainTo(commands, counts));
+    }
+
+    @Test
+    public void lastGearCommandWins() {
+        queue.add(SimCommand.GEAR_DOWN, 1);
+        queue.add(SimCommand.GEAR_UP, 1);
+        assertEquals(2, queue.drainTo(commands, counts));
+        assertEquals(SimCommand.GEAR_UP, commands[1]);
+    }
+
+    @Test
+    public void fullQueueDropsNewCommandsButMergesRepeats() {
+        queue.add(SimCommand.GEAR_UP, 1);
+        queue.add(SimCommand.GEAR_DOWN, 1);
+        queue.add(SimCommand.SLEW_TOGGLE, 1);
+        assertFalse(queue.add(SimCommand.COM1_SWAP, 1));
+        queue.add(SimCommand.SLEW_TOGGLE, 1);
+        assertEquals(1, queue.getDropped());
+
+        assertEquals(3, queue.drainTo(commands, counts));
+        assertEquals(2, counts[2]);
+        //room again after the drain
+        queue.add(SimCommand.COM1_SWAP, 1);
+        assertEquals(1, queue.drainTo(commands, counts));
+        assertEquals(SimCommand.COM1_SWAP, commands[0]);
+    }
+}
@@ -0,0 +1,34 @@
+package com.mouseviator.fsuipc.example;
+
+import static org.junit.Assert.assertEquals;
+import org.junit.Test;
+
+/**
+ * Display values made of sim values.
+ *
+ * @author Murdock
+ */
+public class DisplayPipelineTest {
+
+    @Test
+    public void headingIsRoundedIntoWholeCircle() {
+        assertEquals(0, DisplayPipeline.displayHeading(359.5));
+        assertEquals(359, DisplayPipeline.displayHeading(359.49));
+        assertEquals(0, DisplayPipeline.displayHeading(-0.4));
+        assertEquals(359, DisplayPipeline.displayHeading(-0.6));
+        assertEquals(10, DisplayPipeline.displayHeading(370));
+        assertEquals(350, DisplayPipeline.displayHeading(-10));
+    }
+
+    @Test
+    public void magneticHeadingSubtractsVariation() {
+        SimSample sample = new SimSample();
+        sample.set(SimField.HEADING, 5);
+        //east variation
+        sample.set(SimField.MAGNETIC_VARIATION, 10);
+        assertEquals(355, DisplayPipeline.magneticHeading(sample));
+        sample.set(SimField.HEADING, 355);
+        sample.set(SimField.MAGNETIC_VARIATION, -10);
+        assertEquals(5, DisplayPipeline.magneticHeading(sample));
+    }
+}
@@ -0,0 +1,247 @@
+package com.mouseviator.fsuipc.example;
+
+import java.nio.ByteBuffer;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Simulates one port with the {@link FieldScheduler}, in virtual time, to measure how long every field waits to reach the display
+ * when the sim changes more than the line can carry.
+ *
+ * <p>
+ * The writer is modeled like {@link ArduinoWriter} in delta mode with coalescing: it takes the latest published frame when the
+ * send window of the line is open (bytes in flight drain at the line speed, like {@link SerialLink} estimates them without ACKs),
+ * lets the scheduler pick the fields, and resends deferred fields when they are due. The sim publishes every 20 ms with new
+ * heading and both frequencies each time, the gear legs go up and down every 4 seconds and the alerts toggle every 3 seconds, which is
+ * several times what 9600 baud can carry.</p>
+ *
+ * <p>
+ * Staleness of a field is measured from the moment the display shows an outdated value (the first change after the last update)
+ * to the moment the last byte of the frame updating it leaves the line.</p>
+ *
+ * @author Murdock
+ */
+class FieldSchedulerSimulation {
+
+    private static final long MS = 1_000_000L;
+    private static final long PUBLISH_PERIOD_MS = 20;
+
+    private final Set<DisplayField> fields;
+    private final FrameEncoder encoder;
+    private final int baudRate;
+    private final double lineBytesPerNano;
+    private final FieldScheduler scheduler;
+    private final DeltaTracker deltaTracker = new DeltaTracker(ArduinoWriter.DEFAULT_KEYFRAME_INTERVAL_MS);
+    private final ByteBuffer frameBuffer;
+
+    private final DisplayFrame source = new DisplayFrame();
+    private final DisplayFrame sending = new DisplayFrame();
+    private final int[] displayed = new int[DisplayField.VALUES.length];
+    private final boolean[] stale = new boolean[DisplayField.VALUES.length];
+    private final long[] staleSince = new long[DisplayField.VALUES.length];
+
+    private final long[] maxStaleness = new long[DisplayField.VALUES.length];
+    private final long[] totalStaleness = new long[DisplayField.VALUES.length];
+    private final long[] updates = new long[DisplayField.VALUES.length];
+    private final long[] changes = new long[DisplayField.VALUES.length];
+    private long bytesSent = 0;
+    private long bytesOffered = 0;
+    private long framesSent = 0;
+    private int seconds = 0;
+
+    private double inFlight = 0;
+    private long inFlightNanos = 0;
+
+    /**
+     * @param fields fields the device shows
+     * @param policies policies of the fields
+     * @param binary true for the binary protocol, false for text
+     * @param baudRate line speed
+     * @param budgetShare share of the line the routine fields may take
+     */
+    FieldSchedulerSimulation(Set<DisplayField> fields, Map<DisplayField, FieldScheduler.FieldPolicy> policies, boolean binary,
+            int baudRate, double budgetShare) {
+        this.fields = fields;
+        this.encoder = binary ? new BinaryFrameEncoder() : new AsciiFrameEncoder();
+        this.baudRate = baudRate;
+        this.lineBytesPerNano = baudRate / 10.0 / 1e9;
+        this.scheduler = new FieldScheduler(policies, baudRate / 10.0 * budgetShare, baudRate / 10.0, encoder);
+        this.frameBuffer = ByteBuffer.allocate(encoder.getMaxFrameSize());
+    }
+
+    /**
+     * Runs the simulation.
+     *
+     * @param seconds virtual time to simulate
+     */
+    void run(int seconds) {
+        long end = seconds * 1000L * MS;
+        int fieldMask = DisplayField.mask(fields);
+        scheduler.reset(0);
+        boolean hasPending = false;
+        boolean deferred = false;
+        long publishedNanos = 0;
+        //the writer wakes up at most every millisecond, like its lock.wait()
+        for (long now = 0; now < end; now += MS) {
+            if (now % (PUBLISH_PERIOD_MS * MS) == 0) {
+                publish(now);
+                hasPending = true;
+                publishedNanos = now;
+            }
+            boolean due = hasPending || (deferred && scheduler.nanosUntilDue(now) == 0);
+            if (!due || !linkReady(now)) {
+                continue;
+            }
+            if (hasPending) {
+                sending.copyFrom(source);
+                hasPending = false;
+            }
+            //like ArduinoWriter.sendToArduino()
+            boolean keyframe = deltaTracker.isKeyframeDue(now);
+            int mask = keyframe ? fieldMask : deltaTracker.dirtyMask(sending) & fieldMask;
+            if (!keyframe) {
+                mask = scheduler.select(sending, mask, publishedNanos, now);
+            }
+            if (mask != 0) {
+                encoder.encode(sending, mask, keyframe, frameBuffer);
+                int length = frameBuffer.limit();
+                long delivered = write(now, length);
+                deltaTracker.acknowledge(sending, mask, keyframe, now);
+                scheduler.sent(mask, length, now);
+                updated(mask, delivered);
+            }
+            deferred = scheduler.getDeferredMask() != 0;
+        }
+        //values still waiting at the end count too
+        for (DisplayField field : fields) {
+            if (stale[field.ordinal()]) {
+                maxStaleness[field.ordinal()] = Math.max(maxStaleness[field.ordinal()], end - staleSince[field.ordinal()]);
+            }
+        }
+        this.seconds = seconds;
+    }
+
+    /**
+     * The sim side: heading and both frequencies change every time, gear legs cycle through moving, down, moving, up every 4 s
+     * (staggered), alerts toggle every 3 s.
+     */
+    private void publish(long now) {
+        long tick = now / (PUBLISH_PERIOD_MS * MS);
+        long ms = now / MS;
+        source.set(DisplayField.HEADING, (int) (tick * 3 % 360));
+        source.set(DisplayField.COM1_FREQUENCY, 118000 + (int) (tick % 1000) * 5);
+        source.set(DisplayField.COM1_STANDBY, 121000 + (int) (tick % 1000) * 5);
+        source.set(DisplayField.GEAR_NOSE, gear(ms));
+        source.set(DisplayField.GEAR_LEFT, gear(ms + 150));
+        source.set(DisplayField.GEAR_RIGHT, gear(ms + 300));
+        source.set(DisplayField.ALERTS, (ms / 3000) % 2 == 0 ? 0 : Alert.GEAR_UNSAFE.getMask());
+        for (DisplayField field : fields) {
+            int ordinal = field.ordinal();
+            boolean differs = source.get(field) != displayed[ordinal];
+            if (differs && !stale[ordinal]) {
+                stale[ordinal] = true;
+                staleSince[ordinal] = now;
+                changes[ordinal]++;
+            } else if (!differs) {
+                stale[ordinal] = false;
+            }
+        }
+        //what the sim would send without the scheduler
+        encoder.encode(source, DisplayField.mask(fields), false, frameBuffer);
+        bytesOffered += frameBuffer.limit();
+    }
+
+    private static int gear(long ms) {
+        long phase = ms % 4000;
+        if (phase < 500 || (phase >= 2000 && phase < 2500)) {
+            return DisplayFrame.GEAR_MOVING;
+        }
+        return phase < 2000 ? DisplayFrame.GEAR_ON : DisplayFrame.GEAR_OFF;
+    }
+
+    private void drain(long now) {
+        inFlight = Math.max(0, inFlight - (now - inFlightNanos) * lineBytesPerNano);
+        inFlightNanos = now;
+    }
+
+    private boolean linkReady(long now) {
+        drain(now);
+        return inFlight < SerialLink.DEFAULT_WINDOW_BYTES;
+    }
+
+    /**
+     * @return When the last byte leaves the line
+     */
+    private long write(long now, int length) {
+        drain(now);
+        inFlight += length;
+        bytesSent += length;
+        framesSent++;
+        return now + (long) (inFlight / lineBytesPerNano);
+    }
+
+    private void updated(int mask, long delivered) {
+        for (DisplayField field : fields) {
+            int ordinal = field.ordinal();
+            if ((mask & field.getMask()) == 0) {
+                continue;
+            }
+            updates[ordinal]++;
+            displayed[ordinal] = sending.get(field);
+            if (stale[ordinal]) {
+                long staleness = delivered - staleSince[ordinal];
+                maxStaleness[ordinal] = Math.max(maxStaleness[ordinal], staleness);
+                totalStaleness[ordinal] += staleness;
+                //the sending frame is the latest published, the display is current until the next change
+                stale[ordinal] = false;
+            }
+        }
+    }
+
+    /**
+     * @return Bytes per second the routine fields may take
+     */
+    double getBudgetBytesPerSecond() {
+        return scheduler.getBudgetBytesPerSecond();
+    }
+
+    /**
+     * @return Bytes per second written to the line
+     */
+    double getSentBytesPerSecond() {
+        return bytesSent / (double) seconds;
+    }
+
+    /**
+     * @param field display field
+     * @return Longest time the field showed outdated value, in milliseconds
+     */
+    long getMaxStalenessMs(DisplayField field) {
+        return maxStaleness[field.ordinal()] / MS;
+    }
+
+    /**
+     * @param field display field
+     * @return Updates of the field per second
+     */
+    double getUpdatesPerSecond(DisplayField field) {
+        return updates[field.ordinal()] / (double) seconds;
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder builder = new StringBuilder(String.format(
+                "%s, %d baud, budget %.0f B/s, line %.0f B/s: offered %d B/s, sent %d B/s in %d frames/s",
+                encoder.getClass().getSimpleName(), baudRate, scheduler.getBudgetBytesPerSecond(), lineBytesPerNano * 1e9,
+                bytesOffered / seconds, bytesSent / seconds, framesSent / seconds));
+        for (DisplayField field : fields) {
+            int ordinal = field.ordinal();
+            builder.append(String.format("%n  %-15s %6.1f changes/s %6.1f updates/s  staleness avg %4d ms, max %4d ms, bound %4d ms",
+                    field, changes[ordinal] / (double) seconds, updates[ordinal] / (double) seconds,
+                    updates[ordinal] == 0 ? 0 : totalStaleness[ordinal] / updates[ordinal] / MS, maxStaleness[ordinal] / MS,
+                    scheduler.getPolicy(field).getMaxStalenessMs()));
+        }
+        builder.append(String.format("%n  preempted %d, sent overdue %d", scheduler.getPreempted(), scheduler.getOverdue()));
+        return builder.toString();
+    }
+}
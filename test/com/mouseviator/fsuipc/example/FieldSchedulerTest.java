@@ -0,0 +1,100 @@
+package com.mouseviator.fsuipc.example;
+
+import java.util.EnumSet;
+import java.util.Map;
+import java.util.Set;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import org.junit.Test;
+
+/**
+ * Staleness bounds of the {@link FieldScheduler} on saturated lines, simulated by {@link FieldSchedulerSimulation}.
+ *
+ * @author Murdock
+ */
+public class FieldSchedulerTest {
+
+    private static final int SECONDS = 60;
+    private static final Set<DisplayField> ALL_FIELDS = EnumSet.allOf(DisplayField.class);
+
+    /**
+     * Every change of the sim is wanted on the display: no minimum intervals, default weights and bounds
+     */
+    private static Map<DisplayField, FieldScheduler.FieldPolicy> eagerPolicies() {
+        Map<DisplayField, FieldScheduler.FieldPolicy> policies = FieldScheduler.defaultPolicies();
+        for (DisplayField field : DisplayField.VALUES) {
+            FieldScheduler.FieldPolicy policy = policies.get(field);
+            policies.put(field, new FieldScheduler.FieldPolicy(policy.getWeight(), 0, policy.getMaxStalenessMs(), policy.isPreempt()));
+        }
+        return policies;
+    }
+
+    private static FieldSchedulerSimulation simulate(Map<DisplayField, FieldScheduler.FieldPolicy> policies, boolean binary,
+            int baudRate, double budgetShare) {
+        FieldSchedulerSimulation simulation = new FieldSchedulerSimulation(ALL_FIELDS, policies, binary, baudRate, budgetShare);
+        simulation.run(SECONDS);
+        for (DisplayField field : ALL_FIELDS) {
+            long bound = policies.get(field).getMaxStalenessMs();
+            assertTrue(field + " missed its bound\n" + simulation, simulation.getMaxStalenessMs(field) <= bound);
+            assertTrue(field + " never updated\n" + simulation, simulation.getUpdatesPerSecond(field) > 0);
+        }
+        return simulation;
+    }
+
+    /**
+     * Fails unless the routine fields took all of their budget, so the scheduler really had to choose.
+     */
+    private static void assertSaturated(FieldSchedulerSimulation simulation) {
+        assertTrue("budget not used up\n" + simulation,
+                simulation.getSentBytesPerSecond() >= 0.95 * simulation.getBudgetBytesPerSecond());
+    }
+
+    @Test
+    public void defaultPoliciesAtDefaultShare() {
+        //the minimum intervals keep the routine fields well below the budget, bounds must hold with room to spare
+        for (boolean binary : new boolean[]{false, true}) {
+            simulate(FieldScheduler.defaultPolicies(), binary, 9600, FieldScheduler.DEFAULT_BUDGET_SHARE);
+            simulate(FieldScheduler.defaultPolicies(), binary, 2400, FieldScheduler.DEFAULT_BUDGET_SHARE);
+        }
+    }
+
+    @Test
+    public void everyChangeSaturatesDefaultShare() {
+        for (boolean binary : new boolean[]{false, true}) {
+            assertSaturated(simulate(eagerPolicies(), binary, 9600, FieldScheduler.DEFAULT_BUDGET_SHARE));
+            assertSaturated(simulate(eagerPolicies(), binary, 4800, FieldScheduler.DEFAULT_BUDGET_SHARE));
+        }
+    }
+
+    @Test
+    public void fieldsCompeteForSmallBudget() {
+        for (boolean binary : new boolean[]{false, true}) {
+            assertSaturated(simulate(FieldScheduler.defaultPolicies(), binary, 9600, 0.1));
+            assertSaturated(simulate(eagerPolicies(), binary, 9600, 0.2));
+        }
+    }
+
+    @Test
+    public void revertedValueIsNoLongerDeferred() {
+        long ms = 1_000_000L;
+        FieldScheduler scheduler = new FieldScheduler(FieldScheduler.defaultPolicies(), 768, 960, new AsciiFrameEncoder());
+        scheduler.reset(0);
+        DisplayFrame frame = new DisplayFrame();
+        int heading = DisplayField.HEADING.getMask();
+
+        frame.set(DisplayField.HEADING, 101);
+        assertEquals(heading, scheduler.select(frame, heading, 0, 0));
+        scheduler.sent(heading, 5, 0);
+        //within the minimum interval, 102 has to wait
+        frame.set(DisplayField.HEADING, 102);
+        assertEquals(0, scheduler.select(frame, heading, 10 * ms, 10 * ms));
+        assertEquals(heading, scheduler.getDeferredMask());
+        assertTrue(scheduler.nanosUntilDue(10 * ms) > 0);
+
+        //back to what the device shows, nothing is dirty and nothing may stay due
+        frame.set(DisplayField.HEADING, 101);
+        assertEquals(0, scheduler.select(frame, 0, 30 * ms, 30 * ms));
+        assertEquals(0, scheduler.getDeferredMask());
+        assertEquals(Long.MAX_VALUE, scheduler.nanosUntilDue(200 * ms));
+    }
+}
@@ -0,0 +1,97 @@
+package com.mouseviator.fsuipc.example;
+
+import java.lang.management.ManagementFactory;
+import java.nio.ByteBuffer;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assume.assumeTrue;
+import org.junit.Test;
+
+/**
+ * Allocation regression test of the per-frame path: sample to display frame, dirty tracking and encoding must not produce any
+ * garbage once warmed up.
+ *
+ * @author Murdock
+ */
+public class FrameEncodingAllocationTest {
+
+    private static final int WARMUP_CYCLES = 200_000;
+    private static final int MEASURED_CYCLES = 1_000_000;
+
+    private final com.sun.management.ThreadMXBean threadBean
+            = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+
+    @Test
+    public void asciiFramesAllocateNothing() {
+        assertAllocationFree(new AsciiFrameEncoder());
+    }
+
+    @Test
+    public void binaryFramesAllocateNothing() {
+        assertAllocationFree(new BinaryFrameEncoder());
+    }
+
+    private void assertAllocationFree(FrameEncoder encoder) {
+        assumeTrue("Thread allocation counting not supported",
+                threadBean.isThreadAllocatedMemorySupported() && threadBean.isThreadAllocatedMemoryEnabled());
+        Cycle cycle = new Cycle(encoder);
+        cycle.run(0, WARMUP_CYCLES);
+
+        //what reading the counter alone costs, on some JDKs it allocates an array
+        long overhead = allocatedBytes();
+        overhead = allocatedBytes() - overhead;
+
+        long before = allocatedBytes();
+        cycle.run(WARMUP_CYCLES, MEASURED_CYCLES);
+        long allocated = allocatedBytes() - before - overhead;
+
+        assertEquals(encoder.getClass().getSimpleName() + " allocated bytes over " + MEASURED_CYCLES + " cycles", 0, allocated);
+        //keeps the work from being optimized away
+        assertTrue(cycle.bytes > 0);
+    }
+
+    private long allocatedBytes() {
+        return threadBean.getThreadAllocatedBytes(Thread.currentThread().getId());
+    }
+
+    /**
+     * One writer tick: new sample, frame filled from it, dirty fields found, frame encoded (delta or key) and acknowledged.
+     */
+    private static class Cycle {
+
+        private final FrameEncoder encoder;
+        private final ByteBuffer buffer;
+        private final SimSample sample = new SimSample();
+        private final DisplayFrame frame = new DisplayFrame();
+        private final DeltaTracker deltaTracker = new DeltaTracker(ArduinoWriter.DEFAULT_KEYFRAME_INTERVAL_MS);
+        private final int allFields = DisplayField.mask(DisplayField.LCD_FIELDS);
+        private long bytes = 0;
+
+        private Cycle(FrameEncoder encoder) {
+            this.encoder = encoder;
+            this.buffer = ByteBuffer.allocate(encoder.getMaxFrameSize());
+        }
+
+        private void run(int from, int count) {
+            for (int i = from; i < from + count; i++) {
+                sample.clear();
+                sample.setTimeNanos(i * 20_000_000L);
+                sample.set(SimField.HEADING, (i * 7) % 720 - 180);
+                sample.set(SimField.MAGNETIC_VARIATION, (i % 40) - 20);
+                sample.set(SimField.COM1_FREQUENCY_HZ, 118_000_000 + (i % 760) * 25_000);
+                sample.set(SimField.COM1_STANDBY_HZ, 136_975_000 - (i % 760) * 25_000);
+                sample.set(SimField.GEAR_NOSE, (i * 97) % (DisplayFrame.GEAR_MAXIMUMVALUE + 1));
+                sample.set(SimField.GEAR_LEFT, (i / 3) % 2 == 0 ? DisplayFrame.GEAR_MINIMUMVALUE : DisplayFrame.GEAR_MAXIMUMVALUE);
+                sample.set(SimField.GEAR_RIGHT, (i * 13) % (DisplayFrame.GEAR_MAXIMUMVALUE + 1));
+                DisplayPipeline.fillFrame(sample, frame);
+
+                long now = sample.getTimeNanos();
+                boolean keyframe = deltaTracker.isKeyframeDue(now);
+                int mask = keyframe ? allFields : deltaTracker.dirtyMask(frame) & allFields;
+                encoder.encode(frame, mask, keyframe, buffer);
+                deltaTracker.acknowledge(frame, mask, keyframe, now);
+                bytes += buffer.limit();
+            }
+        }
+    }
+}
@@ -0,0 +1,74 @@
+package com.mouseviator.fsuipc.example;
+
+import static org.junit.Assert.assertEquals;
+import org.junit.Test;
+
+/**
+ * Turn rate estimate and prediction of the heading.
+ *
+ * @author Murdock
+ */
+public class HeadingExtrapolatorTest {
+
+    private static final long MS = 1_000_000L;
+    private static final double DELTA = 1e-9;
+
+    private final HeadingExtrapolator extrapolator = new HeadingExtrapolator();
+
+    /**
+     * Polls every 250 ms at a steady rate until the smoothed rate settles.
+     */
+    private long turn(double from, double degreesPerSecond) {
+        long time = 0;
+        for (int i = 0; i < 40; i++) {
+            extrapolator.update(from + degreesPerSecond * i / 4, time, false);
+            time += 250 * MS;
+        }
+        return time - 250 * MS;
+    }
+
+    @Test
+    public void turnsShorterWayAcrossNorth() {
+        extrapolator.update(359, 0, false);
+        extrapolator.update(1, 1000 * MS, false);
+        assertEquals("right turn, half of 2 deg/s smoothed", 1, extrapolator.getTurnRate(), DELTA);
+
+        extrapolator.reset();
+        extrapolator.update(1, 0, false);
+        extrapolator.update(359, 1000 * MS, false);
+        assertEquals(-1, extrapolator.getTurnRate(), DELTA);
+        //prediction wraps too
+        assertEquals(358.5, extrapolator.predict(1500 * MS), DELTA);
+    }
+
+    @Test
+    public void predictionStopsOneSecondAhead() {
+        long last = turn(350, 3);
+        double heading = HeadingExtrapolator.normalize(350 + 3 * 39 / 4.0);
+        assertEquals(3, extrapolator.getTurnRate(), 1e-6);
+        assertEquals(HeadingExtrapolator.normalize(heading + 1.5), extrapolator.predict(last + 500 * MS), 1e-6);
+        assertEquals(HeadingExtrapolator.normalize(heading + 3), extrapolator.predict(last + 1000 * MS), 1e-6);
+        assertEquals("stalled source", HeadingExtrapolator.normalize(heading + 3), extrapolator.predict(last + 60_000 * MS), 1e-6);
+        assertEquals("never back in time", heading, extrapolator.predict(last - 100 * MS), 1e-6);
+    }
+
+    @Test
+    public void slowTurnsAreNotExtrapolated() {
+        long last = turn(90, 0.19);
+        assertEquals(90 + 0.19 * 39 / 4, extrapolator.predict(last + 1000 * MS), 1e-6);
+        extrapolator.reset();
+        last = turn(90, 0.25);
+        assertEquals(90 + 0.25 * 39 / 4 + 0.25, extrapolator.predict(last + 1000 * MS), 1e-6);
+    }
+
+    @Test
+    public void turnRateIsLimitedAndFrozenAircraftDoesNotTurn() {
+        extrapolator.update(0, 0, false);
+        extrapolator.update(90, 250 * MS, false);
+        assertEquals(HeadingExtrapolator.MAX_TURN_RATE / 2, extrapolator.getTurnRate(), DELTA);
+        //slewed to a new heading
+        extrapolator.update(180, 500 * MS, true);
+        assertEquals(0, extrapolator.getTurnRate(), DELTA);
+        assertEquals(180, extrapolator.predict(1000 * MS), DELTA);
+    }
+}
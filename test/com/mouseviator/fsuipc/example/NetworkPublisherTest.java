@@ -0,0 +1,297 @@
+package com.mouseviator.fsuipc.example;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.net.SocketTimeoutException;
+import java.nio.ByteBuffer;
+import java.nio.channels.DatagramChannel;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.util.Base64;
+import java.util.EnumSet;
+import java.util.Set;
+import org.junit.After;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import org.junit.Test;
+
+/**
+ * {@link NetworkPublisher} against WebSocket and UDP clients on localhost, without the sim.
+ *
+ * @author Murdock
+ */
+public class NetworkPublisherTest {
+
+    private static final int TIMEOUT_MS = 5000;
+
+    private NetworkPublisher publisher;
+    private final SimSample sample = new SimSample();
+
+    @After
+    public void stopPublisher() {
+        if (publisher != null) {
+            publisher.stop();
+        }
+    }
+
+    private void startPublisher(Set<SimField> fields, InetSocketAddress multicastGroup) {
+        publisher = new NetworkPublisher(fields, new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), multicastGroup);
+        assertTrue(publisher.start());
+    }
+
+    private void publish(SimField field, double value) {
+        sample.clear();
+        sample.setTimeNanos(System.nanoTime());
+        sample.set(field, value);
+        publisher.onSample(sample);
+    }
+
+    @Test
+    public void handshakeFitsWithSingleField() throws IOException {
+        //the 101 response is longer than a message of one field
+        startPublisher(EnumSet.of(SimField.HEADING), null);
+        publish(SimField.HEADING, 271.5);
+        try (TestClient client = TestClient.connect(publisher.getWebSocketPort())) {
+            assertEquals("{\"seq\":1,\"HEADING\":271.500}", client.readMessage());
+            publish(SimField.HEADING, 90);
+            assertEquals("{\"seq\":2,\"HEADING\":90.000}", client.readMessage());
+        }
+    }
+
+    @Test
+    public void clientGetsSubscribedFieldsOnly() throws IOException {
+        startPublisher(EnumSet.of(SimField.HEADING, SimField.COM1_FREQUENCY_HZ), null);
+        try (TestClient client = TestClient.connect(publisher.getWebSocketPort())) {
+            client.send("subscribe COM1_FREQUENCY_HZ");
+            client.ping();
+            sample.clear();
+            sample.set(SimField.HEADING, 180);
+            sample.set(SimField.COM1_FREQUENCY_HZ, 118025000);
+            publisher.onSample(sample);
+            assertEquals("{\"seq\":1,\"COM1_FREQUENCY_HZ\":118025000}", client.readMessage());
+
+            //newly subscribed fields come right away
+            client.send("subscribe *");
+            assertEquals("{\"seq\":1,\"HEADING\":180.000}", client.readMessage());
+        }
+    }
+
+    @Test
+    @SuppressWarnings("try")
+    public void slowClientIsCoalescedAndOthersGetLatest() throws IOException {
+        startPublisher(NetworkPublisher.DEFAULT_FIELDS, null);
+        try (TestClient slow = TestClient.connect(publisher.getWebSocketPort(), 1024);
+                TestClient fast = TestClient.connect(publisher.getWebSocketPort())) {
+            //the slow one never reads, until its socket buffers are full the publisher cannot tell
+            long deadline = System.currentTimeMillis() + 2 * TIMEOUT_MS;
+            int value = 0;
+            while (publisher.getMessagesCoalesced() == 0) {
+                assertTrue("slow client was never coalesced", System.currentTimeMillis() < deadline);
+                //every field changes, big messages fill the buffers sooner
+                sample.clear();
+                value++;
+                for (SimField field : NetworkPublisher.DEFAULT_FIELDS) {
+                    sample.set(field, value);
+                }
+                publisher.onSample(sample);
+                Thread.yield();
+            }
+            publish(SimField.HEADING, 123.25);
+            //the fast client gets every change, the latest last
+            while (!fast.readMessage().contains("\"HEADING\":123.250")) {
+                //older messages
+            }
+            assertEquals(2, publisher.getClientCount());
+        }
+    }
+
+    @Test
+    public void badClientsDoNotStopPublisher() throws IOException {
+        startPublisher(EnumSet.of(SimField.HEADING), null);
+        try (Socket noKey = new Socket(InetAddress.getLoopbackAddress(), publisher.getWebSocketPort())) {
+            noKey.setSoTimeout(TIMEOUT_MS);
+            noKey.getOutputStream().write("GET / HTTP/1.1\r\nHost: localhost\r\n\r\n".getBytes(StandardCharsets.ISO_8859_1));
+            assertTrue(TestClient.readHeaders(noKey.getInputStream()).startsWith("HTTP/1.1 400"));
+        }
+        try (TestClient oversizedPing = TestClient.connect(publisher.getWebSocketPort())) {
+            oversizedPing.sendFrame(0x9, new byte[200]);
+            assertTrue(oversizedPing.isClosedByServer());
+        }
+        publish(SimField.HEADING, 5);
+        try (TestClient client = TestClient.connect(publisher.getWebSocketPort())) {
+            assertEquals("{\"seq\":1,\"HEADING\":5.000}", client.readMessage());
+        }
+    }
+
+    @Test
+    public void datagramCarriesAllKnownFields() throws IOException, InterruptedException {
+        try (DatagramChannel receiver = DatagramChannel.open()) {
+            receiver.bind(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0));
+            receiver.configureBlocking(false);
+            //plain unicast stands in for the multicast group
+            startPublisher(EnumSet.of(SimField.HEADING, SimField.GEAR_NOSE), (InetSocketAddress) receiver.getLocalAddress());
+            publish(SimField.GEAR_NOSE, 16383);
+            publish(SimField.HEADING, 42);
+
+            long mask = SimField.HEADING.getMask() | SimField.GEAR_NOSE.getMask();
+            ByteBuffer datagram = ByteBuffer.allocate(64);
+            long deadline = System.currentTimeMillis() + TIMEOUT_MS;
+            //the first datagram may have the gear only
+            do {
+                assertTrue("no datagram with all fields", System.currentTimeMillis() < deadline);
+                datagram.clear();
+                if (receiver.receive(datagram) == null) {
+                    Thread.sleep(1);
+                }
+                datagram.flip();
+            } while (datagram.remaining() < 16 || datagram.getLong(8) != mask);
+            assertEquals(NetworkPublisher.DATAGRAM_MAGIC, datagram.getInt());
+            assertTrue("sequence", datagram.getInt() > 0);
+            assertEquals(mask, datagram.getLong());
+            //ordinal order
+            assertEquals(42, datagram.getDouble(), 0);
+            assertEquals(16383, datagram.getDouble(), 0);
+            assertEquals(0, datagram.remaining());
+        }
+    }
+
+    /**
+     * Minimal blocking WebSocket client
+     */
+    private static class TestClient implements AutoCloseable {
+
+        private final Socket socket;
+        private final DataInputStream in;
+        private final OutputStream out;
+
+        private TestClient(Socket socket) throws IOException {
+            this.socket = socket;
+            this.in = new DataInputStream(socket.getInputStream());
+            this.out = socket.getOutputStream();
+        }
+
+        static TestClient connect(int port) throws IOException {
+            return connect(port, 0);
+        }
+
+        /**
+         * @param receiveBuffer socket receive buffer size, 0 for default
+         */
+        static TestClient connect(int port, int receiveBuffer) throws IOException {
+            Socket socket = new Socket();
+            if (receiveBuffer > 0) {
+                socket.setReceiveBufferSize(receiveBuffer);
+            }
+            socket.connect(new InetSocketAddress(InetAddress.getLoopbackAddress(), port), TIMEOUT_MS);
+            socket.setSoTimeout(TIMEOUT_MS);
+            String key = Base64.getEncoder().encodeToString("0123456789abcdef".getBytes(StandardCharsets.US_ASCII));
+            socket.getOutputStream().write(("GET / HTTP/1.1\r\nHost: localhost\r\nUpgrade: websocket\r\nConnection: Upgrade\r\n"
+                    + "Sec-WebSocket-Key: " + key + "\r\nSec-WebSocket-Version: 13\r\n\r\n").getBytes(StandardCharsets.ISO_8859_1));
+            String headers = readHeaders(socket.getInputStream());
+            assertTrue(headers, headers.startsWith("HTTP/1.1 101"));
+            assertTrue(headers, headers.contains("Sec-WebSocket-Accept: " + acceptKey(key) + "\r\n"));
+            return new TestClient(socket);
+        }
+
+        static String readHeaders(InputStream in) throws IOException {
+            ByteArrayOutputStream headers = new ByteArrayOutputStream();
+            while (!headers.toString(StandardCharsets.ISO_8859_1.name()).endsWith("\r\n\r\n")) {
+                int b = in.read();
+                if (b < 0) {
+                    throw new IOException("Connection closed during handshake");
+                }
+                headers.write(b);
+            }
+            return headers.toString(StandardCharsets.ISO_8859_1.name());
+        }
+
+        private static String acceptKey(String key) {
+            try {
+                MessageDigest sha1 = MessageDigest.getInstance("SHA-1");
+                return Base64.getEncoder().encodeToString(sha1.digest((key + "258EAFA5-E914-47DA-95CA-C5AB0DC85B11")
+                        .getBytes(StandardCharsets.ISO_8859_1)));
+            } catch (java.security.NoSuchAlgorithmException ex) {
+                throw new IllegalStateException(ex);
+            }
+        }
+
+        void send(String text) throws IOException {
+            sendFrame(0x1, text.getBytes(StandardCharsets.UTF_8));
+        }
+
+        /**
+         * Sends ping and waits for the pong, so everything sent before is processed.
+         */
+        void ping() throws IOException {
+            sendFrame(0x9, new byte[]{'p'});
+            int opcode = readFrame(new ByteArrayOutputStream());
+            assertEquals("pong", 0xA, opcode);
+        }
+
+        void sendFrame(int opcode, byte[] payload) throws IOException {
+            ByteArrayOutputStream frame = new ByteArrayOutputStream();
+            frame.write(0x80 | opcode);
+            if (payload.length < 126) {
+                frame.write(0x80 | payload.length);
+            } else {
+                frame.write(0x80 | 126);
+                frame.write(payload.length >> 8);
+                frame.write(payload.length & 0xFF);
+            }
+            byte[] mask = {1, 2, 3, 4};
+            frame.write(mask);
+            for (int i = 0; i < payload.length; i++) {
+                frame.write(payload[i] ^ mask[i & 3]);
+            }
+            out.write(frame.toByteArray());
+        }
+
+        String readMessage() throws IOException {
+            ByteArrayOutputStream payload = new ByteArrayOutputStream();
+            int opcode = readFrame(payload);
+            assertEquals("text message", 0x1, opcode);
+            return payload.toString(StandardCharsets.UTF_8.name());
+        }
+
+        private int readFrame(ByteArrayOutputStream payload) throws IOException {
+            int first = in.readUnsignedByte();
+            int length = in.readUnsignedByte();
+            assertEquals("server frames are not masked", 0, length & 0x80);
+            if (length == 126) {
+                length = in.readUnsignedShort();
+            }
+            byte[] data = new byte[length];
+            in.readFully(data);
+            payload.write(data);
+            return first & 0x0F;
+        }
+
+        /**
+         * @return True if the server closed the connection, with or without close frame
+         */
+        boolean isClosedByServer() throws IOException {
+            try {
+                while (in.read() >= 0) {
+                    //close frame, if any
+                }
+                return true;
+            } catch (SocketTimeoutException ex) {
+                return false;
+            } catch (IOException ex) {
+                //reset
+                return true;
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            socket.close();
+        }
+    }
+}
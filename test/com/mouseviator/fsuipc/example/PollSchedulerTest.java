@@ -0,0 +1,40 @@
+package com.mouseviator.fsuipc.example;
+
+import com.mouseviator.fsuipc.FSUIPC;
+import static org.junit.Assert.assertEquals;
+import org.junit.Test;
+
+/**
+ * Which groups are polled when, and the processing period.
+ *
+ * @author Murdock
+ */
+public class PollSchedulerTest {
+
+    private static final long MS = 1_000_000L;
+
+    private final SimRequestRegistry registry = new SimRequestRegistry(FSUIPC.getInstance());
+    private final PollScheduler scheduler = new PollScheduler();
+
+    @Test
+    public void idleProcessingHasGroupDueEveryCycle() {
+        scheduler.reset();
+        int tickMs = scheduler.getTickMs();
+        assertEquals(RateGroup.FAST.getNormalPeriodMs(), tickMs);
+
+        int groups = RateGroup.ALL_MASK;
+        int slowPolls = 0;
+        for (int cycle = 0; cycle < 40; cycle++) {
+            assertEquals("no cycle without a group", RateGroup.FAST.getMask(), groups & RateGroup.FAST.getMask());
+            if ((groups & RateGroup.SLOW.getMask()) != 0) {
+                slowPolls++;
+            }
+            //a millisecond of jitter either way
+            long now = cycle * tickMs * MS + (cycle % 2 == 0 ? MS : -MS);
+            groups = scheduler.onProcessed(registry, groups, now);
+            assertEquals(tickMs, scheduler.getTickMs());
+        }
+        //40 cycles of 250 ms are 10 seconds
+        assertEquals(10, slowPolls);
+    }
+}
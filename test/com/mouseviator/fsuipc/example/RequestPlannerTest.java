@@ -0,0 +1,61 @@
+package com.mouseviator.fsuipc.example;
+
+import com.mouseviator.fsuipc.datarequest.IDataRequest;
+import java.util.List;
+import static org.junit.Assert.assertEquals;
+import org.junit.Test;
+
+/**
+ * Merging of adjacent offsets into block reads.
+ *
+ * @author Murdock
+ */
+public class RequestPlannerTest {
+
+    private final IDataRequest[] requests = new IDataRequest[5];
+
+    public RequestPlannerTest() {
+        requests[0] = new BlockRequest(0x0580, 4);
+        requests[1] = new BlockRequest(0x057C, 4);
+        requests[2] = null;
+        requests[3] = new BlockRequest(0x0BEC, 4);
+        requests[4] = new BlockRequest(0x0578, 4);
+    }
+
+    @Test
+    public void adjacentOffsetsShareBlock() {
+        List<RequestPlanner.Block> blocks = RequestPlanner.plan(requests, RequestPlanner.DEFAULT_MAX_GAP);
+        assertEquals(2, blocks.size());
+
+        RequestPlanner.Block first = blocks.get(0);
+        assertEquals(0x0578, first.getRequest().getOffset());
+        assertEquals(12, first.getRequest().getSize());
+        assertEquals(3, first.getMemberCount());
+        //by offset, with the index the request had
+        assertEquals(4, first.getIndex(0));
+        assertEquals(0, first.getPosition(0));
+        assertEquals(1, first.getIndex(1));
+        assertEquals(4, first.getPosition(1));
+        assertEquals(0, first.getIndex(2));
+        assertEquals(8, first.getPosition(2));
+
+        RequestPlanner.Block second = blocks.get(1);
+        assertEquals(1, second.getMemberCount());
+        assertEquals(3, second.getIndex(0));
+        assertEquals(0, second.getPosition(0));
+    }
+
+    @Test
+    public void blockDataIsLittleEndianViewOfRequest() {
+        RequestPlanner.Block block = RequestPlanner.plan(requests, RequestPlanner.DEFAULT_MAX_GAP).get(1);
+        byte[] bytes = block.getRequest().getDataBuffer();
+        bytes[0] = (byte) 0xFF;
+        bytes[1] = 0x3F;
+        assertEquals(16383, block.getData().getInt(0));
+    }
+
+    @Test
+    public void noMergingGivesBlockPerRequest() {
+        assertEquals(4, RequestPlanner.plan(requests, RequestPlanner.NO_MERGING).size());
+    }
+}
@@ -0,0 +1,88 @@
+package com.mouseviator.fsuipc.example;
+
+import java.io.IOException;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * Recording and playback of sim data logs.
+ *
+ * @author Murdock
+ */
+public class SimDataRecorderTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void closedRecordingIsTrimmedAndPlaysBack() throws IOException {
+        Path file = folder.getRoot().toPath().resolve("flight.fsr");
+        SimSample sample = new SimSample();
+        long fileSize;
+        try (SimDataRecorder recorder = new SimDataRecorder(file)) {
+            for (int i = 0; i < 1000; i++) {
+                sample.clear();
+                sample.setTimeNanos(1_000_000_000L + i * 20_000_000L);
+                sample.set(SimField.HEADING, i * 0.5);
+                if (i % 10 == 0) {
+                    sample.set(SimField.COM1_FREQUENCY_HZ, 118_000_000 + i * 1000);
+                }
+                recorder.record(sample);
+            }
+            fileSize = recorder.getFileSize();
+        }
+        assertEquals("file size after close", fileSize, Files.size(file));
+
+        List<SimSample> played = new ArrayList<>();
+        try (SimDataReplay replay = new SimDataReplay(file, SimDataReplay.MAX_SPEED)) {
+            replay.addSampleListener(playedSample -> {
+                SimSample copy = new SimSample();
+                copy.copyFrom(playedSample);
+                played.add(copy);
+            });
+            replay.run();
+        }
+        assertEquals(1000, played.size());
+        assertEquals(499.5, played.get(999).getDouble(SimField.HEADING), 0);
+        assertEquals(118_990_000, played.get(990).getInt(SimField.COM1_FREQUENCY_HZ));
+        assertFalse(played.get(991).has(SimField.COM1_FREQUENCY_HZ));
+    }
+
+    @Test(expected = FileAlreadyExistsException.class)
+    public void existingRecordingIsNotOverwritten() throws IOException {
+        Path file = folder.getRoot().toPath().resolve("flight.fsr");
+        new SimDataRecorder(file).close();
+        new SimDataRecorder(file).close();
+    }
+
+    @Test
+    public void samplesAfterCloseAreIgnored() throws IOException {
+        Path file = folder.getRoot().toPath().resolve("flight.fsr");
+        SimDataRecorder recorder = new SimDataRecorder(file);
+        SimSample sample = new SimSample();
+        sample.set(SimField.HEADING, 90);
+        recorder.onSample(sample);
+        recorder.close();
+        //late sample of the source, the buffers are unmapped by now
+        recorder.onSample(sample);
+        assertEquals(1, recorder.getRecordCount());
+        assertEquals(recorder.getFileSize(), Files.size(file));
+    }
+
+    @Test
+    public void sessionFileHasConnectionTime() {
+        LocalDateTime time = LocalDateTime.of(2020, 10, 25, 18, 30, 5);
+        assertEquals(Paths.get("logs", "flight-20201025-183005.fsr"), SimDataRecorder.sessionFile(Paths.get("logs", "flight.fsr"), time));
+        assertEquals(Paths.get("flight-20201025-183005"), SimDataRecorder.sessionFile(Paths.get("flight"), time));
+    }
+}
@@ -0,0 +1,66 @@
+package com.mouseviator.fsuipc.example;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import static org.junit.Assert.assertEquals;
+import org.junit.Test;
+
+/**
+ * Decoding of raw FSUIPC offsets to primitive values.
+ *
+ * @author Murdock
+ */
+public class SimRequestRegistryTest {
+
+    private final ByteBuffer data = ByteBuffer.allocate(16).order(ByteOrder.LITTLE_ENDIAN);
+
+    private double decode(SimField field) {
+        return SimRequestRegistry.decode(field, data, 4);
+    }
+
+    @Test
+    public void headingIsUnsignedFractionOfCircle() {
+        data.putInt(4, 0xC0000000);
+        assertEquals(270, decode(SimField.HEADING), 1e-9);
+    }
+
+    @Test
+    public void westVariationIsNegative() {
+        data.putShort(4, (short) -1820);
+        assertEquals(-9.997, decode(SimField.MAGNETIC_VARIATION), 1e-3);
+    }
+
+    @Test
+    public void comFrequencyIsBcd() {
+        data.putShort(4, (short) 0x2345);
+        assertEquals(123.45, decode(SimField.COM1_FREQUENCY), 1e-9);
+        data.putInt(4, 118025000);
+        assertEquals(118025000, decode(SimField.COM1_FREQUENCY_HZ), 0);
+    }
+
+    @Test
+    public void positionIsScaledToDegrees() {
+        data.putLong(4, (long) (48.5 / 90 * 10001750.0 * 65536.0 * 65536.0));
+        assertEquals(48.5, decode(SimField.LATITUDE), 1e-6);
+        data.putLong(4, Long.MIN_VALUE / 2);
+        assertEquals(-90, decode(SimField.LONGITUDE), 1e-9);
+    }
+
+    @Test
+    public void speedsAndEngineValues() {
+        data.putInt(4, 120 * 128);
+        assertEquals(120, decode(SimField.IAS), 0);
+        data.putInt(4, 256);
+        assertEquals(196.85, decode(SimField.VERTICAL_SPEED), 1e-2);
+        data.putShort(4, (short) 0x8000);
+        assertEquals(110, decode(SimField.ENG1_OIL_PRESSURE), 1e-9);
+        data.putShort(4, (short) 8192);
+        assertEquals(70, decode(SimField.ENG2_OIL_TEMPERATURE), 1e-9);
+        data.putShort(4, (short) 1024);
+        assertEquals(32, decode(SimField.FRAME_RATE), 1e-9);
+        data.putShort(4, (short) -4096);
+        assertEquals(-4096, decode(SimField.ENG1_THROTTLE_LEVER), 0);
+        data.putInt(4, 16383);
+        assertEquals(16383, decode(SimField.GEAR_NOSE), 0);
+    }
+}
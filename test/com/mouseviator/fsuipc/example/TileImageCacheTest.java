@@ -0,0 +1,71 @@
+package com.mouseviator.fsuipc.example;
+
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import javax.imageio.ImageIO;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import org.junit.Test;
+
+/**
+ * Memory and store reads of the tile cache.
+ *
+ * @author Murdock
+ */
+public class TileImageCacheTest {
+
+    private static final int TILE_SIZE = 16;
+
+    /**
+     * Has tile 5/1/1 only, counts the reads
+     */
+    private static class CountingStore implements TileStore {
+
+        private final byte[] tile;
+        private int reads = 0;
+
+        CountingStore() throws IOException {
+            ByteArrayOutputStream png = new ByteArrayOutputStream();
+            ImageIO.write(new BufferedImage(TILE_SIZE, TILE_SIZE, BufferedImage.TYPE_INT_RGB), "png", png);
+            tile = png.toByteArray();
+        }
+
+        @Override
+        public synchronized byte[] read(int zoom, int x, int y) {
+            reads++;
+            return zoom == 5 && x == 1 && y == 1 ? tile : null;
+        }
+    }
+
+    @Test
+    public void missingTilesAreReadOnce() throws IOException {
+        CountingStore store = new CountingStore();
+        TileImageCache cache = new TileImageCache(store, TileImageCache.DEFAULT_MAX_BYTES, TILE_SIZE);
+
+        BufferedImage blank = cache.get(5, 2, 2);
+        for (int i = 0; i < 10; i++) {
+            assertSame(blank, cache.get(5, 2, 2));
+            cache.prefetch(5, 2, 2);
+        }
+        assertEquals(1, store.reads);
+        assertEquals("blank tiles take no bytes", 0, cache.getBytes());
+
+        assertNotSame(blank, cache.get(5, 1, 1));
+        cache.get(5, 1, 1);
+        assertEquals(2, store.reads);
+        assertEquals(4L * TILE_SIZE * TILE_SIZE, cache.getBytes());
+    }
+
+    @Test
+    public void blankTilesAreLimitedToo() throws IOException {
+        //room for 4 real tiles, so 16 entries
+        TileImageCache cache = new TileImageCache(new CountingStore(), 4 * 4L * TILE_SIZE * TILE_SIZE, TILE_SIZE);
+        for (int x = 0; x < 1000; x++) {
+            cache.get(10, x, 0);
+        }
+        assertEquals(16, cache.getSize());
+        assertEquals(1000 - 16, cache.getEvictions());
+    }
+}